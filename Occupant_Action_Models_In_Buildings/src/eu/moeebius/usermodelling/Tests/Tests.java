@@ -19,15 +19,92 @@
 
 package eu.moeebius.usermodelling.Tests;
 
-import eu.moeebius.usermodelling.systems.blinds.haldirobinson2008.HaldiRobinson2008IndoorOutdoorTemp;
+import eu.moeebius.usermodelling.actor.RoomActorSystem;
+import eu.moeebius.usermodelling.actor.RoomMessage;
+import eu.moeebius.usermodelling.actor.RoomStateListener;
+import eu.moeebius.usermodelling.analysis.FirstActionAnalysis;
+import eu.moeebius.usermodelling.analysis.PortfolioForecast;
+import eu.moeebius.usermodelling.analysis.PortfolioForecaster;
+import eu.moeebius.usermodelling.analysis.SurvivalResult;
+import eu.moeebius.usermodelling.batch.LogisticBatchEvaluator;
+import eu.moeebius.usermodelling.batch.UserModelGroup;
+import eu.moeebius.usermodelling.cache.CachedUserModel;
+import eu.moeebius.usermodelling.cosim.SocketCoSimulationClient;
+import eu.moeebius.usermodelling.cosim.SocketCoSimulationServer;
+import eu.moeebius.usermodelling.cosim.UserModelCoSimulation;
+import eu.moeebius.usermodelling.ensemble.EnsembleEstimate;
+import eu.moeebius.usermodelling.ensemble.WeightedEstimate;
+import eu.moeebius.usermodelling.ensemble.WindowEnsemble;
+import eu.moeebius.usermodelling.events.UserModellingEvents;
+import eu.moeebius.usermodelling.flyweight.SharedUserModelPool;
+import eu.moeebius.usermodelling.flyweight.UserModelHandle;
+import eu.moeebius.usermodelling.interfaces.ControlledSystem;
+import eu.moeebius.usermodelling.interfaces.DescribedUserModel;
+import eu.moeebius.usermodelling.interfaces.DifferentiableUserModel;
 import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
 import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
+import eu.moeebius.usermodelling.interfaces.UserModel;
 import eu.moeebius.usermodelling.interfaces.UserType;
+import eu.moeebius.usermodelling.metrics.InstrumentedUserModel;
+import eu.moeebius.usermodelling.metrics.UserModelMetrics;
+import eu.moeebius.usermodelling.population.PopulationStore;
+import eu.moeebius.usermodelling.population.SystemStateBits;
+import eu.moeebius.usermodelling.random.SobolSource;
+import eu.moeebius.usermodelling.random.SplitMix64Source;
+import eu.moeebius.usermodelling.registry.UserModelDescriptor;
+import eu.moeebius.usermodelling.registry.UserModelRegistry;
+import eu.moeebius.usermodelling.server.PredictionServer;
+import eu.moeebius.usermodelling.sharding.ShardCoordinator;
+import eu.moeebius.usermodelling.sharding.ShardResult;
+import eu.moeebius.usermodelling.sharding.ShardWorker;
+import eu.moeebius.usermodelling.sharding.ShardedSimulationSpec;
+import eu.moeebius.usermodelling.simulation.AdaptiveStepSimulation;
+import eu.moeebius.usermodelling.simulation.ClosedLoopSimulation;
+import eu.moeebius.usermodelling.simulation.PartitionedScheduler;
+import eu.moeebius.usermodelling.simulation.SimulationCheckpointer;
+import eu.moeebius.usermodelling.stream.DriveUpdate;
+import eu.moeebius.usermodelling.stream.RoomProbability;
+import eu.moeebius.usermodelling.stream.UserModelProcessor;
+import eu.moeebius.usermodelling.systems.blinds.haldirobinson2008.HaldiRobinson2008IndoorOutdoorTemp;
+import eu.moeebius.usermodelling.systems.blinds.haldirobinson2008.HaldiRobinson2008IndoorTemp;
+import eu.moeebius.usermodelling.systems.windows.haldirobinson2009.HaldiRobinson2009Params;
+import eu.moeebius.usermodelling.systems.windows.rijaetal2007.RijalEtAl2007GlobeOutdoorTemp;
+import eu.moeebius.usermodelling.systems.windows.rijaetal2007.RijalEtAl2007GlobeTemp;
+import eu.moeebius.usermodelling.systems.windows.yunsummers2008.YunSteemers2008IndoorTempNoNightVentilation;
 import eu.moeebius.usermodelling.systems.windows.yunsummers2008.YunSteemers2008OutdoorTempNoNightVentilation;
+import eu.moeebius.usermodelling.tables.ProbabilityTable;
+import eu.moeebius.usermodelling.tables.ProbabilityTableCompiler;
+import eu.moeebius.usermodelling.thermal.RcZoneNetwork;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 /**
- * Code Tests
+ * Code Tests. Besides the sample probabilities, main runs behaviour checks of the extensions (fast paths against their
+ * reference implementations, simulations against exact results) and fails if any of them does not hold.
  * @author Georgios D. Kontes
  */
 public class Tests {
@@ -53,5 +130,1151 @@ public class Tests {
                 TransitionOccupantState.TRANSITION_STATES.ALL_STATES, TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN, temps));
         System.out.println("Probability of action: " + yunSteemers2008OutdoorTempNoNightVentilation.calculateActionProbability(UserType.USER_TYPES.UNKNOWN,
                 TransitionOccupantState.TRANSITION_STATES.PRESENSE, TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN, temps));
+
+        int failures = 0;
+        failures += checkGradients();
+        failures += checkProbabilityTable();
+        failures += checkCachedUserModel();
+        failures += checkUserModelGroup();
+        failures += checkRegistry();
+        failures += checkBatchEvaluator();
+        failures += checkPopulationStore();
+        failures += checkSystemStateBits();
+        failures += checkSharedUserModelPool();
+        failures += checkClosedLoopSimulation();
+        failures += checkCoSimulation();
+        failures += checkPredictionServer();
+        failures += checkUserModelProcessor();
+        failures += checkRoomActors();
+        failures += checkInstrumentation();
+        failures += checkFlightRecorderEvents();
+        failures += checkCheckpointRestore();
+        failures += checkShardedSimulation();
+        failures += checkPartitionedScheduler();
+        failures += checkAdaptiveStepSimulation();
+        failures += checkControlVariate();
+        failures += checkSobolSource();
+        failures += checkImportanceSampling();
+        failures += checkFirstActionAnalysis();
+        failures += checkPortfolioForecast();
+        if (failures > 0) {
+            throw new IllegalStateException(failures + " checks failed");
+        }
+        System.out.println("All checks passed");
+    }
+
+    /**
+     * Compares the analytic gradients of all differentiable models with central differences, in every supported combination
+     * of states; points where the one-sided differences disagree (a threshold of the model) are skipped
+     * @return	The number of failed checks
+     */
+    private static int checkGradients() {
+        Random random = new Random(1);
+        double step = 1e-6;
+        int failures = 0;
+        for (UserModelDescriptor descriptor : UserModelRegistry.discover().getDescriptors()) {
+            UserModel instance = descriptor.newInstance();
+            if (!(instance instanceof DifferentiableUserModel)) {
+                continue;
+            }
+            DifferentiableUserModel model = (DifferentiableUserModel) instance;
+            RealMatrix parameters = model.getParameters().copy();
+            int driveCount = descriptor.getDriveCount();
+            double[] driveGradient = new double[driveCount];
+            double[] parameterGradient = new double[parameters.getRowDimension() * parameters.getColumnDimension()];
+            double maximumError = 0;
+            for (UserType.USER_TYPES userType : UserType.USER_TYPES.values()) {
+                for (TransitionOccupantState.TRANSITION_STATES transitionState : TransitionOccupantState.TRANSITION_STATES.values()) {
+                    for (TransitionSystemState.TRANSITION_STATES transitionSystemState : TransitionSystemState.TRANSITION_STATES.values()) {
+                        if (!descriptor.isSupported(userType, transitionState, transitionSystemState)) {
+                            continue;
+                        }
+                        for (int sample = 0; sample < 20; sample++) {
+                            Array2DRowRealMatrix drives = new Array2DRowRealMatrix(driveCount, 1);
+                            for (int i = 0; i < driveCount; i++) {
+                                drives.setEntry(i, 0, 10 + 25 * random.nextDouble());
+                            }
+                            model.calculateActionProbabilityGradient(userType, transitionState, transitionSystemState, drives, driveGradient, parameterGradient);
+                            for (int i = 0; i < driveCount; i++) {
+                                double value = drives.getEntry(i, 0);
+                                double centre = model.calculateActionProbability(userType, transitionState, transitionSystemState, drives);
+                                drives.setEntry(i, 0, value + step);
+                                double up = model.calculateActionProbability(userType, transitionState, transitionSystemState, drives);
+                                drives.setEntry(i, 0, value - step);
+                                double down = model.calculateActionProbability(userType, transitionState, transitionSystemState, drives);
+                                drives.setEntry(i, 0, value);
+                                maximumError = Math.max(maximumError, differenceError(driveGradient[i], up, centre, down, step));
+                            }
+                            for (int k = 0; k < parameterGradient.length; k++) {
+                                int row = k / parameters.getColumnDimension();
+                                int column = k % parameters.getColumnDimension();
+                                double value = parameters.getEntry(row, column);
+                                double centre = model.calculateActionProbability(userType, transitionState, transitionSystemState, drives);
+                                RealMatrix perturbed = parameters.copy();
+                                perturbed.setEntry(row, column, value + step);
+                                model.setParameters(perturbed);
+                                double up = model.calculateActionProbability(userType, transitionState, transitionSystemState, drives);
+                                perturbed.setEntry(row, column, value - step);
+                                model.setParameters(perturbed);
+                                double down = model.calculateActionProbability(userType, transitionState, transitionSystemState, drives);
+                                model.setParameters(parameters.copy());
+                                maximumError = Math.max(maximumError, differenceError(parameterGradient[k], up, centre, down, step));
+                            }
+                        }
+                    }
+                }
+            }
+            failures += report("Gradient of " + descriptor.getId() + " vs finite differences, max error " + maximumError, maximumError < 1e-5);
+        }
+        return failures;
+    }
+
+    private static double differenceError(double gradient, double up, double centre, double down, double step) {
+        double forward = (up - centre) / step;
+        double backward = (centre - down) / step;
+        if (Math.abs(forward - backward) > 1e-3 * Math.max(1, Math.abs(forward))) {
+            return 0;
+        }
+        return Math.abs(gradient - (up - down) / (2 * step));
+    }
+
+    /**
+     * Compares a compiled two-drive table with its source model inside the sampled domain, and checks that a written and
+     * read table answers identically
+     * @return	The number of failed checks
+     */
+    private static int checkProbabilityTable() {
+        Random random = new Random(5);
+        RijalEtAl2007GlobeOutdoorTemp model = new RijalEtAl2007GlobeOutdoorTemp();
+        UserModelDescriptor descriptor = new UserModelDescriptor(model);
+        ProbabilityTable table = new ProbabilityTableCompiler(10, 35, 101, -5, 30, 141, 1e-3).compile(model);
+        ProbabilityTable copy;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            table.write(bytes);
+            copy = ProbabilityTable.read(new ByteArrayInputStream(bytes.toByteArray()));
+        } catch (IOException e) {
+            return report("Probability table round trip failed with " + e, false);
+        }
+        Array2DRowRealMatrix drives = new Array2DRowRealMatrix(2, 1);
+        double maximumError = 0;
+        int mismatches = 0;
+        for (UserType.USER_TYPES userType : UserType.USER_TYPES.values()) {
+            for (TransitionOccupantState.TRANSITION_STATES transitionState : TransitionOccupantState.TRANSITION_STATES.values()) {
+                for (TransitionSystemState.TRANSITION_STATES transitionSystemState : TransitionSystemState.TRANSITION_STATES.values()) {
+                    if (!descriptor.isSupported(userType, transitionState, transitionSystemState)) {
+                        continue;
+                    }
+                    for (int sample = 0; sample < 200; sample++) {
+                        drives.setEntry(0, 0, 10 + 25 * random.nextDouble());
+                        drives.setEntry(1, 0, -5 + 35 * random.nextDouble());
+                        double probability = table.calculateActionProbability(userType, transitionState, transitionSystemState, drives);
+                        maximumError = Math.max(maximumError, Math.abs(probability
+                                - model.calculateActionProbability(userType, transitionState, transitionSystemState, drives)));
+                        if (probability != copy.calculateActionProbability(userType, transitionState, transitionSystemState, drives)) {
+                            mismatches++;
+                        }
+                    }
+                }
+            }
+        }
+        return report("Probability table vs model, max error " + maximumError, maximumError <= 1e-3)
+                + report("Probability table round trip, " + mismatches + " mismatches", mismatches == 0);
+    }
+
+    /**
+     * Checks that the cached model answers with the model at the quantized drives, whether or not the cache is in use, that
+     * settled drives hit the cache, and that a cache with a poor hit rate is bypassed and later re-enabled
+     * @return	The number of failed checks
+     */
+    private static int checkCachedUserModel() {
+        Random random = new Random(6);
+        UserModel model = new YunSteemers2008IndoorTempNoNightVentilation();
+        CachedUserModel cached = new CachedUserModel(new YunSteemers2008IndoorTempNoNightVentilation(), 1, 0.1, 1 << 12);
+        cached.setBypassPolicy(1000, 0.5, 500);
+        Array2DRowRealMatrix drives = new Array2DRowRealMatrix(1, 1);
+        Array2DRowRealMatrix quantized = new Array2DRowRealMatrix(1, 1);
+        int mismatches = 0;
+        boolean[] bypassed = new boolean[3];
+        double[] ranges = {10, 1e4, 1e4};
+        int[] calls = {2000, 1000, 500};
+        for (int phase = 0; phase < ranges.length; phase++) {
+            for (int call = 0; call < calls[phase]; call++) {
+                drives.setEntry(0, 0, 20 + ranges[phase] * random.nextDouble());
+                quantized.setEntry(0, 0, Math.round(drives.getEntry(0, 0) / 0.1) * 0.1);
+                if (cached.calculateActionProbability(UserType.USER_TYPES.UNKNOWN, TransitionOccupantState.TRANSITION_STATES.PRESENSE,
+                        TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN, drives) != model.calculateActionProbability(UserType.USER_TYPES.UNKNOWN,
+                        TransitionOccupantState.TRANSITION_STATES.PRESENSE, TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN, quantized)) {
+                    mismatches++;
+                }
+            }
+            bypassed[phase] = cached.isBypassed();
+            if (phase == 0) {
+                cached.reset();
+            }
+        }
+        return report("Cached vs quantized model, " + mismatches + " mismatches", mismatches == 0)
+                + report("Cache bypassed on a poor hit rate and re-enabled after " + calls[2] + " calls", !bypassed[0] && bypassed[1] && !bypassed[2]);
+    }
+
+    /**
+     * Checks that a group of batched and scalar models over shared drive columns returns the scalar probability of every
+     * model, also after the parameters of a batched model have changed
+     * @return	The number of failed checks
+     */
+    private static int checkUserModelGroup() {
+        Random random = new Random(7);
+        int rooms = 100;
+        HaldiRobinson2009Params haldiRobinson = new HaldiRobinson2009Params();
+        int haldiRobinsonDrives = new UserModelDescriptor(haldiRobinson).getDriveCount();
+        int[] haldiRobinsonColumns = new int[haldiRobinsonDrives];
+        for (int i = 0; i < haldiRobinsonDrives; i++) {
+            haldiRobinsonColumns[i] = i;
+        }
+        UserModel[] models = {new RijalEtAl2007GlobeOutdoorTemp(), new RijalEtAl2007GlobeTemp(), new YunSteemers2008IndoorTempNoNightVentilation(), haldiRobinson};
+        int[][] columns = {{0, 1}, {0}, {2}, haldiRobinsonColumns};
+        UserModelGroup group = new UserModelGroup();
+        for (int m = 0; m < models.length; m++) {
+            group.addModel(models[m], columns[m], UserType.USER_TYPES.UNKNOWN, TransitionOccupantState.TRANSITION_STATES.ALL_STATES,
+                    TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN);
+        }
+        double[][] driveColumns = new double[Math.max(3, haldiRobinsonDrives)][rooms];
+        for (double[] column : driveColumns) {
+            for (int room = 0; room < rooms; room++) {
+                column[room] = 10 + 25 * random.nextDouble();
+            }
+        }
+        double[] probabilities = new double[rooms * models.length];
+        int mismatches = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            if (pass == 1) {
+                models[0].setParameters(models[0].getParameters().scalarMultiply(1.1));
+            }
+            group.calculateActionProbabilities(driveColumns, 0, rooms, probabilities);
+            for (int room = 0; room < rooms; room++) {
+                for (int m = 0; m < models.length; m++) {
+                    Array2DRowRealMatrix drives = new Array2DRowRealMatrix(columns[m].length, 1);
+                    for (int i = 0; i < columns[m].length; i++) {
+                        drives.setEntry(i, 0, driveColumns[columns[m][i]][room]);
+                    }
+                    if (probabilities[room * models.length + m] != models[m].calculateActionProbability(UserType.USER_TYPES.UNKNOWN,
+                            TransitionOccupantState.TRANSITION_STATES.ALL_STATES, TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN, drives)) {
+                        mismatches++;
+                    }
+                }
+            }
+        }
+        return report("Model group vs scalar models, " + mismatches + " mismatches", mismatches == 0);
+    }
+
+    /**
+     * Checks that the service registry discovers all window and blinds models and describes their drives
+     * @return	The number of failed checks
+     */
+    private static int checkRegistry() {
+        UserModelRegistry registry = UserModelRegistry.discover();
+        int windows = registry.getDescriptors(ControlledSystem.SYSTEMS.WINDOW).size();
+        int blinds = registry.getDescriptors(ControlledSystem.SYSTEMS.BLINDS).size();
+        UserModelDescriptor descriptor = registry.getDescriptor("RijalEtAl2007GlobeTemp");
+        return report("Registry discovered " + windows + " window and " + blinds + " blinds models", windows == 9 && blinds == 3)
+                + report("Registry describes RijalEtAl2007GlobeTemp", descriptor != null && descriptor.getDriveCount() == 1
+                && registry.newInstance("RijalEtAl2007GlobeTemp") instanceof RijalEtAl2007GlobeTemp);
+    }
+
+    /**
+     * Checks that the batch evaluator returns exactly the scalar probabilities of every supported model, in every combination
+     * of states
+     * @return	The number of failed checks
+     */
+    private static int checkBatchEvaluator() {
+        Random random = new Random(2);
+        int rooms = 64;
+        int failures = 0;
+        for (UserModelDescriptor descriptor : UserModelRegistry.discover().getDescriptors()) {
+            UserModel model = descriptor.newInstance();
+            int driveCount = descriptor.getDriveCount();
+            double[][] driveColumns = new double[driveCount][rooms];
+            for (double[] column : driveColumns) {
+                for (int room = 0; room < rooms; room++) {
+                    column[room] = 10 + 25 * random.nextDouble();
+                }
+            }
+            double[] probabilities = new double[rooms];
+            Array2DRowRealMatrix drives = new Array2DRowRealMatrix(driveCount, 1);
+            int mismatches = 0;
+            try {
+                for (UserType.USER_TYPES userType : UserType.USER_TYPES.values()) {
+                    for (TransitionOccupantState.TRANSITION_STATES transitionState : TransitionOccupantState.TRANSITION_STATES.values()) {
+                        for (TransitionSystemState.TRANSITION_STATES transitionSystemState : TransitionSystemState.TRANSITION_STATES.values()) {
+                            LogisticBatchEvaluator.forModel(model, userType, transitionState, transitionSystemState)
+                                    .calculateActionProbabilities(driveColumns, 0, rooms, probabilities);
+                            for (int room = 0; room < rooms; room++) {
+                                for (int i = 0; i < driveCount; i++) {
+                                    drives.setEntry(i, 0, driveColumns[i][room]);
+                                }
+                                if (probabilities[room] != model.calculateActionProbability(userType, transitionState, transitionSystemState, drives)) {
+                                    mismatches++;
+                                }
+                            }
+                        }
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            failures += report("Batch vs scalar " + descriptor.getId() + ", " + mismatches + " mismatches", mismatches == 0);
+        }
+        return failures;
+    }
+
+    /**
+     * Checks that a file-mapped population store keeps its occupants when it is reopened
+     * @return	The number of failed checks
+     */
+    private static int checkPopulationStore() {
+        int occupants = 1000;
+        Path file = null;
+        try {
+            file = Files.createTempFile("population", ".bin");
+            Files.delete(file);
+            PopulationStore store = PopulationStore.map(file, occupants, 2);
+            for (int occupant = 0; occupant < occupants; occupant += 7) {
+                store.setUserType(occupant, UserType.USER_TYPES.ACTIVE);
+                store.setOccupancyState(occupant, TransitionOccupantState.TRANSITION_STATES.ARRIVAL);
+                store.setWindowOpen(occupant, true);
+                store.setDrive(occupant, 1, occupant + 0.5);
+            }
+            store.force();
+            PopulationStore reopened = PopulationStore.map(file, occupants, 2);
+            int mismatches = 0;
+            for (int occupant = 0; occupant < occupants; occupant++) {
+                boolean set = occupant % 7 == 0;
+                if (reopened.getUserType(occupant) != (set ? UserType.USER_TYPES.ACTIVE : UserType.USER_TYPES.UNKNOWN)
+                        || reopened.getOccupancyState(occupant) != (set ? TransitionOccupantState.TRANSITION_STATES.ARRIVAL : TransitionOccupantState.TRANSITION_STATES.ALL_STATES)
+                        || reopened.isWindowOpen(occupant) != set || reopened.isBlindsLowered(occupant)
+                        || reopened.getDrive(occupant, 0) != 0 || reopened.getDrive(occupant, 1) != (set ? occupant + 0.5 : 0)) {
+                    mismatches++;
+                }
+            }
+            return report("Population store reopened, " + mismatches + " mismatches", mismatches == 0);
+        } catch (IOException e) {
+            return report("Population store failed with " + e, false);
+        } finally {
+            if (file != null) {
+                file.toFile().delete();
+            }
+        }
+    }
+
+    /**
+     * Compares the transitions and zone counts of the bit-packed state with a plain boolean array over a few random steps
+     * @return	The number of failed checks
+     */
+    private static int checkSystemStateBits() {
+        Random random = new Random(8);
+        int rooms = 1000;
+        int[] zoneStarts = {0, 63, 64, 500, 999};
+        SystemStateBits state = new SystemStateBits(rooms);
+        boolean[] open = new boolean[rooms];
+        boolean[] previous = new boolean[rooms];
+        int[] counts = new int[zoneStarts.length];
+        long[] mask = new long[state.getWords()];
+        int mismatches = 0;
+        for (int step = 0; step < 10; step++) {
+            for (int room = 0; room < rooms; room++) {
+                boolean action = random.nextInt(4) == 0;
+                state.recordAction(room, action ? 1 : 0);
+                previous[room] = open[room];
+                open[room] ^= action;
+            }
+            state.step();
+            int[] expected = new int[zoneStarts.length];
+            int closeOpen = 0;
+            for (int room = 0; room < rooms; room++) {
+                int zone = zoneStarts.length - 1;
+                while (zoneStarts[zone] > room) {
+                    zone--;
+                }
+                expected[zone] += open[room] ? 1 : 0;
+                closeOpen += !previous[room] && open[room] ? 1 : 0;
+                TransitionSystemState.TRANSITION_STATES transition = state.getTransition(room);
+                if (state.isOpen(room) != open[room] || (transition == TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN) != (!previous[room] && open[room])) {
+                    mismatches++;
+                }
+            }
+            state.countOpenPerZone(zoneStarts, counts);
+            if (!Arrays.equals(counts, expected) || state.transitionMask(TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN, mask) != closeOpen) {
+                mismatches++;
+            }
+        }
+        return report("Bit-packed system state vs boolean state, " + mismatches + " mismatches", mismatches == 0);
+    }
+
+    /**
+     * Checks that handles share one model per parameter set, keep the interfaces of the model, and that re-parameterising
+     * one handle leaves the others unchanged
+     * @return	The number of failed checks
+     */
+    private static int checkSharedUserModelPool() {
+        SharedUserModelPool pool = new SharedUserModelPool();
+        UserModelHandle[] handles = new UserModelHandle[1000];
+        for (int i = 0; i < handles.length; i++) {
+            handles[i] = pool.newHandle(RijalEtAl2007GlobeTemp.class);
+        }
+        int shared = pool.size();
+        UserModel reference = new RijalEtAl2007GlobeTemp();
+        RealMatrix parameters = reference.getParameters().scalarMultiply(1.1);
+        handles[0].setParameters(parameters);
+        UserModel changed = new RijalEtAl2007GlobeTemp();
+        changed.setParameters(parameters);
+        Array2DRowRealMatrix drives = new Array2DRowRealMatrix(new double[] {28});
+        UserType.USER_TYPES userType = UserType.USER_TYPES.UNKNOWN;
+        TransitionOccupantState.TRANSITION_STATES transitionState = TransitionOccupantState.TRANSITION_STATES.ALL_STATES;
+        TransitionSystemState.TRANSITION_STATES transitionSystemState = TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN;
+        double probability = handles[1].calculateActionProbability(userType, transitionState, transitionSystemState, drives);
+        double changedProbability = handles[0].calculateActionProbability(userType, transitionState, transitionSystemState, drives);
+        return report("Shared model pool, " + shared + " model for " + handles.length + " handles", shared == 1
+                && handles[1] instanceof DescribedUserModel && handles[1] instanceof DifferentiableUserModel)
+                + report("Re-parameterised handle, " + pool.size() + " models", pool.size() == 2 && changedProbability != probability
+                && probability == reference.calculateActionProbability(userType, transitionState, transitionSystemState, drives)
+                && changedProbability == changed.calculateActionProbability(userType, transitionState, transitionSystemState, drives));
+    }
+
+    /**
+     * Checks that the exact RC integration does not depend on the step size, that the closed loop rejects blinds models, and
+     * that two closed-loop runs with the same seed open the same windows
+     * @return	The number of failed checks
+     */
+    private static int checkClosedLoopSimulation() {
+        SystemStateBits closed = new SystemStateBits(1);
+        RcZoneNetwork fine = new RcZoneNetwork(1, 20, 5e6, 100, 200, 500);
+        RcZoneNetwork coarse = new RcZoneNetwork(1, 20, 5e6, 100, 200, 500);
+        for (int step = 0; step < 12; step++) {
+            fine.step(300, 5, closed, 0, 1);
+        }
+        coarse.step(3600, 5, closed, 0, 1);
+        double difference = Math.abs(fine.getTemperature(0) - coarse.getTemperature(0));
+        int failures = report("RC zone over 12 x 300 s vs 3600 s, difference " + difference, difference < 1e-9);
+        try {
+            new ClosedLoopSimulation(new HaldiRobinson2008IndoorTemp(), fine, 300, 1);
+            failures += report("Closed loop rejects a blinds model", false);
+        } catch (IllegalArgumentException e) {
+            failures += report("Closed loop rejects a blinds model", true);
+        }
+        int zones = 200;
+        double[] outdoorTemperatures = new double[288];
+        for (int step = 0; step < outdoorTemperatures.length; step++) {
+            outdoorTemperatures[step] = 24 + 6 * Math.sin(2 * Math.PI * step / outdoorTemperatures.length);
+        }
+        int[][] openSteps = new int[2][zones];
+        for (int run = 0; run < openSteps.length; run++) {
+            ClosedLoopSimulation simulation = new ClosedLoopSimulation(new RijalEtAl2007GlobeTemp(), new RcZoneNetwork(zones, 22, 5e6, 100, 200, 800), 300, 9);
+            simulation.run(outdoorTemperatures);
+            for (int zone = 0; zone < zones; zone++) {
+                openSteps[run][zone] = simulation.getOpenSteps(zone);
+            }
+        }
+        return failures + report("Closed loop reproduced with the same seed, " + Arrays.stream(openSteps[0]).sum() + " open steps",
+                Arrays.equals(openSteps[0], openSteps[1]) && Arrays.stream(openSteps[0]).sum() > 0);
+    }
+
+    /**
+     * Checks that a slave served over the loopback socket steps like a local one, that a rejected step leaves the connection
+     * usable, and that restoring a saved state reproduces the outputs
+     * @return	The number of failed checks
+     */
+    private static int checkCoSimulation() {
+        UserModelCoSimulation local = newCoSimulation();
+        UserModelCoSimulation served = newCoSimulation();
+        int steps = 40;
+        double[] inputs = new double[local.getInputSize()];
+        double[][] localOutputs = new double[steps][local.getOutputSize()];
+        double[][] remoteOutputs = new double[steps][local.getOutputSize()];
+        int failures = 0;
+        try (SocketCoSimulationServer server = new SocketCoSimulationServer(served, 0)) {
+            server.start();
+            try (SocketCoSimulationClient client = new SocketCoSimulationClient(server.getPort())) {
+                local.initialize(0, 11);
+                client.initialize(0, 11);
+                byte[] state = null;
+                for (int step = 0; step < steps; step++) {
+                    if (step == steps / 2) {
+                        state = client.getState();
+                    }
+                    coSimulationInputs(step, inputs);
+                    local.setInputs(inputs);
+                    local.doStep(step * 600.0, 600);
+                    local.getOutputs(localOutputs[step]);
+                    client.setInputs(inputs);
+                    client.doStep(step * 600.0, 600);
+                    client.getOutputs(remoteOutputs[step]);
+                }
+                failures += report("Co-simulation over the socket vs local slave", Arrays.deepEquals(localOutputs, remoteOutputs));
+                inputs[0] = 0.5;
+                client.setInputs(inputs);
+                try {
+                    client.doStep(steps * 600.0, 600);
+                    failures += report("Co-simulation rejects an invalid occupancy", false);
+                } catch (IOException e) {
+                    failures += report("Co-simulation rejects an invalid occupancy", true);
+                }
+                client.setState(state);
+                int mismatches = 0;
+                double[] outputs = new double[local.getOutputSize()];
+                for (int step = steps / 2; step < steps; step++) {
+                    coSimulationInputs(step, inputs);
+                    client.setInputs(inputs);
+                    client.doStep(step * 600.0, 600);
+                    client.getOutputs(outputs);
+                    if (!Arrays.equals(outputs, remoteOutputs[step])) {
+                        mismatches++;
+                    }
+                }
+                failures += report("Co-simulation rollback, " + mismatches + " mismatches", mismatches == 0);
+            }
+        } catch (IOException e) {
+            failures += report("Co-simulation failed with " + e, false);
+        }
+        return failures;
+    }
+
+    private static UserModelCoSimulation newCoSimulation() {
+        UserModelCoSimulation coSimulation = new UserModelCoSimulation();
+        coSimulation.addUnit(new RijalEtAl2007GlobeTemp(), 1, UserType.USER_TYPES.UNKNOWN);
+        coSimulation.addUnit(new RijalEtAl2007GlobeOutdoorTemp(), 2, UserType.USER_TYPES.UNKNOWN);
+        return coSimulation;
+    }
+
+    private static void coSimulationInputs(int step, double[] inputs) {
+        double temperature = 24 + 6 * Math.sin(2 * Math.PI * step / 24);
+        inputs[0] = TransitionOccupantState.TRANSITION_STATES.ALL_STATES.ordinal();
+        inputs[1] = temperature;
+        inputs[2] = TransitionOccupantState.TRANSITION_STATES.ALL_STATES.ordinal();
+        inputs[3] = temperature;
+        inputs[4] = temperature - 4;
+    }
+
+    /**
+     * Checks that the prediction server answers with the probability of the model, and rejects unknown models and
+     * probabilities that are not finite
+     * @return	The number of failed checks
+     */
+    private static int checkPredictionServer() {
+        double expected = new RijalEtAl2007GlobeTemp().calculateActionProbability(UserType.USER_TYPES.UNKNOWN,
+                TransitionOccupantState.TRANSITION_STATES.ALL_STATES, TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN, new Array2DRowRealMatrix(new double[] {28}));
+        String query = "/predict?userType=UNKNOWN&transitionState=ALL_STATES&systemState=CLOSE_OPEN";
+        PredictionServer server = null;
+        try {
+            server = new PredictionServer(UserModelRegistry.discover(), 0, 200, 64);
+            server.start();
+            String base = "http://localhost:" + server.getPort();
+            String[] answer = httpGet(base + query + "&model=RijalEtAl2007GlobeTemp&drives=28");
+            return report("Prediction server " + answer[1] + " vs model " + expected,
+                    answer[0].equals("200") && answer[1].equals("{\"probability\":" + expected + "}"))
+                    + report("Prediction server rejects an unknown model", httpGet(base + query + "&model=Unknown&drives=28")[0].equals("400"))
+                    + report("Prediction server fails a non-finite probability", httpGet(base + query + "&model=RijalEtAl2007GlobeTemp&drives=NaN")[0].equals("500"));
+        } catch (IOException e) {
+            return report("Prediction server failed with " + e, false);
+        } finally {
+            if (server != null) {
+                server.stop(0);
+            }
+        }
+    }
+
+    private static String[] httpGet(String url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            int status = connection.getResponseCode();
+            try (InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                return new String[] {String.valueOf(status), new String(body.readAllBytes(), StandardCharsets.UTF_8)};
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Checks that the streaming stage emits the probability of the latest reading of every room, and that a reading for an
+     * unknown room fails the stream
+     * @return	The number of failed checks
+     */
+    private static int checkUserModelProcessor() {
+        int rooms = 10;
+        RijalEtAl2007GlobeTemp model = new RijalEtAl2007GlobeTemp();
+        double[][] latest = new double[2][rooms];
+        Throwable[] error = new Throwable[2];
+        boolean completed = true;
+        for (int run = 0; run < 2; run++) {
+            UserModelProcessor processor = new UserModelProcessor(new RijalEtAl2007GlobeTemp(), rooms, 1);
+            for (int room = 0; room < rooms; room++) {
+                processor.setRoomState(room, UserType.USER_TYPES.UNKNOWN, TransitionOccupantState.TRANSITION_STATES.ALL_STATES,
+                        TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN);
+            }
+            CountDownLatch done = new CountDownLatch(1);
+            int currentRun = run;
+            processor.subscribe(new Flow.Subscriber<RoomProbability>() {
+                @Override
+                public void onSubscribe(Flow.Subscription subscription) {
+                    subscription.request(Long.MAX_VALUE);
+                }
+
+                @Override
+                public void onNext(RoomProbability item) {
+                    latest[currentRun][item.getRoom()] = item.getProbability();
+                }
+
+                @Override
+                public void onError(Throwable throwable) {
+                    error[currentRun] = throwable;
+                    done.countDown();
+                }
+
+                @Override
+                public void onComplete() {
+                    done.countDown();
+                }
+            });
+            try (SubmissionPublisher<DriveUpdate> publisher = new SubmissionPublisher<>()) {
+                publisher.subscribe(processor);
+                for (int reading = 0; reading < 50; reading++) {
+                    publisher.submit(new DriveUpdate(reading % rooms, 0, 20 + reading * 0.2));
+                }
+                if (run == 1) {
+                    publisher.submit(new DriveUpdate(rooms, 0, 20));
+                }
+            }
+            try {
+                completed &= done.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                completed = false;
+            }
+        }
+        int mismatches = 0;
+        for (int room = 0; room < rooms; room++) {
+            double expected = model.calculateActionProbability(UserType.USER_TYPES.UNKNOWN, TransitionOccupantState.TRANSITION_STATES.ALL_STATES,
+                    TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN, new Array2DRowRealMatrix(new double[] {20 + (40 + room) * 0.2}));
+            if (latest[0][room] != expected) {
+                mismatches++;
+            }
+        }
+        return report("Streamed probabilities of the latest readings, " + mismatches + " mismatches", completed && error[0] == null && mismatches == 0)
+                + report("Stream failed by a reading for an unknown room", error[1] instanceof IllegalArgumentException);
+    }
+
+    /**
+     * Checks that every room actor evaluates its model at its latest drive, that reported actions match the room states,
+     * and that a failing message is skipped
+     * @return	The number of failed checks
+     */
+    private static int checkRoomActors() {
+        int rooms = 500;
+        RijalEtAl2007GlobeTemp model = new RijalEtAl2007GlobeTemp();
+        AtomicIntegerArray actions = new AtomicIntegerArray(rooms);
+        int[] failedRooms = new int[1];
+        boolean idle;
+        try (RoomActorSystem system = new RoomActorSystem(new RoomStateListener() {
+            @Override
+            public void onAction(int room, TransitionSystemState.TRANSITION_STATES transition) {
+                actions.incrementAndGet(room);
+            }
+
+            @Override
+            public void onFailure(int room, RoomMessage message, RuntimeException failure) {
+                failedRooms[0] = room;
+            }
+        })) {
+            for (int room = 0; room < rooms; room++) {
+                system.addRoom(new RijalEtAl2007GlobeTemp(), 1, UserType.USER_TYPES.UNKNOWN);
+                system.tell(room, RoomMessage.occupancy(TransitionOccupantState.TRANSITION_STATES.ALL_STATES));
+                system.tell(room, RoomMessage.drive(0, 15));
+                system.tell(room, RoomMessage.drive(0, 20 + room * 0.02));
+            }
+            system.tell(7, RoomMessage.drive(1, 0));
+            system.evaluateAll();
+            try {
+                idle = system.awaitIdle(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                idle = false;
+            }
+            int mismatches = 0;
+            for (int room = 0; room < rooms; room++) {
+                double expected = model.calculateActionProbability(UserType.USER_TYPES.UNKNOWN, TransitionOccupantState.TRANSITION_STATES.ALL_STATES,
+                        TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN, new Array2DRowRealMatrix(new double[] {20 + room * 0.02}));
+                if (system.getRoom(room).getLastProbability() != expected || system.getRoom(room).isOpen() != (actions.get(room) == 1)) {
+                    mismatches++;
+                }
+            }
+            return report("Room actors, " + mismatches + " mismatches", idle && mismatches == 0 && system.getActionCount() > 0)
+                    + report("Room actors skip a failing message", system.getFailureCount() == 1 && failedRooms[0] == 7);
+        }
+    }
+
+    /**
+     * Checks that an instrumented model records nothing while disabled, and counts evaluations, unsupported combinations of
+     * states and NaN results once enabled, as read over JMX
+     * @return	The number of failed checks
+     */
+    private static int checkInstrumentation() {
+        UserModelMetrics metrics = new UserModelMetrics("Tests");
+        InstrumentedUserModel model = new InstrumentedUserModel(new RijalEtAl2007GlobeTemp(), metrics);
+        Array2DRowRealMatrix drives = new Array2DRowRealMatrix(new double[] {25});
+        for (int call = 0; call < 100; call++) {
+            model.calculateActionProbability(UserType.USER_TYPES.UNKNOWN, TransitionOccupantState.TRANSITION_STATES.ALL_STATES,
+                    TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN, drives);
+        }
+        long disabled = metrics.getEvaluationCount();
+        metrics.setEnabled(true);
+        metrics.setSamplingInterval(1);
+        for (int call = 0; call < 100; call++) {
+            model.calculateActionProbability(UserType.USER_TYPES.UNKNOWN, TransitionOccupantState.TRANSITION_STATES.ALL_STATES,
+                    TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN, drives);
+        }
+        for (int call = 0; call < 10; call++) {
+            model.calculateActionProbability(UserType.USER_TYPES.UNKNOWN, TransitionOccupantState.TRANSITION_STATES.ALL_STATES,
+                    TransitionSystemState.TRANSITION_STATES.OPEN_CLOSE, drives);
+        }
+        drives.setEntry(0, 0, Double.NaN);
+        model.calculateActionProbability(UserType.USER_TYPES.UNKNOWN, TransitionOccupantState.TRANSITION_STATES.ALL_STATES,
+                TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN, drives);
+        try {
+            ObjectName name = metrics.register();
+            Object evaluations = ManagementFactory.getPlatformMBeanServer().getAttribute(name, "EvaluationCount");
+            metrics.unregister();
+            return report("Instrumented model, " + disabled + " evaluations while disabled, " + evaluations + " over JMX",
+                    disabled == 0 && Long.valueOf(111).equals(evaluations) && metrics.getUnsupportedCount() == 10
+                    && metrics.getNaNCount() == 1 && metrics.getLatencySampleCount() == 111);
+        } catch (JMException e) {
+            return report("Instrumented model failed with " + e, false);
+        }
+    }
+
+    /**
+     * Checks that a recording with the library events enabled holds one simulation step event per step
+     * @return	The number of failed checks
+     */
+    private static int checkFlightRecorderEvents() {
+        ClosedLoopSimulation simulation = new ClosedLoopSimulation(new RijalEtAl2007GlobeTemp(), new RcZoneNetwork(10, 22, 5e6, 100, 200, 800), 300, 12);
+        Path file = null;
+        try (Recording recording = new Recording()) {
+            UserModellingEvents.enableAll(recording);
+            recording.start();
+            simulation.run(new double[] {20, 21, 22, 23, 24});
+            recording.stop();
+            file = Files.createTempFile("usermodelling", ".jfr");
+            recording.dump(file);
+            int steps = 0;
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                if (event.getEventType().getName().equals("eu.moeebius.usermodelling.SimulationStep")
+                        && event.getString("simulation").equals("ClosedLoopSimulation")) {
+                    steps++;
+                }
+            }
+            return report("Flight recorder, " + steps + " simulation step events for 5 steps", steps == 5);
+        } catch (IOException e) {
+            return report("Flight recorder failed with " + e, false);
+        } finally {
+            if (file != null) {
+                file.toFile().delete();
+            }
+        }
+    }
+
+    /**
+     * Checks that a run resumed from incremental checkpoints continues exactly like the uninterrupted run
+     * @return	The number of failed checks
+     */
+    private static int checkCheckpointRestore() {
+        int zones = 5000;
+        ClosedLoopSimulation original = new ClosedLoopSimulation(new RijalEtAl2007GlobeTemp(), new RcZoneNetwork(zones, 22, 5e6, 100, 200, 800), 300, 13);
+        ClosedLoopSimulation resumed = new ClosedLoopSimulation(new RijalEtAl2007GlobeTemp(), new RcZoneNetwork(zones, 22, 5e6, 100, 200, 800), 300, 14);
+        Path file = null;
+        try {
+            file = Files.createTempFile("checkpoint", ".bin");
+            try (SimulationCheckpointer checkpointer = new SimulationCheckpointer(original, file, 4)) {
+                for (int step = 0; step < 100; step++) {
+                    original.setOutdoorTemperature(24 + 6 * Math.sin(2 * Math.PI * step / 288));
+                    original.step();
+                    if (step % 10 == 9) {
+                        checkpointer.checkpoint();
+                    }
+                }
+            }
+            long restoredStep = SimulationCheckpointer.restore(file, resumed);
+            for (int step = 100; step < 150; step++) {
+                double outdoorTemperature = 24 + 6 * Math.sin(2 * Math.PI * step / 288);
+                original.setOutdoorTemperature(outdoorTemperature);
+                original.step();
+                resumed.setOutdoorTemperature(outdoorTemperature);
+                resumed.step();
+            }
+            int mismatches = 0;
+            for (int zone = 0; zone < zones; zone++) {
+                if (original.getOpenSteps(zone) != resumed.getOpenSteps(zone) || original.getActions(zone) != resumed.getActions(zone)
+                        || original.getNetwork().getTemperature(zone) != resumed.getNetwork().getTemperature(zone)) {
+                    mismatches++;
+                }
+            }
+            return report("Resumed from the checkpoint of step " + restoredStep + ", " + mismatches + " mismatches", restoredStep == 100 && mismatches == 0);
+        } catch (IOException e) {
+            return report("Checkpointing failed with " + e, false);
+        } finally {
+            if (file != null) {
+                file.toFile().delete();
+            }
+        }
+    }
+
+    /**
+     * Checks that a simulation sharded over two worker processes gives the per-zone results of a single in-process run
+     * @return	The number of failed checks
+     */
+    private static int checkShardedSimulation() {
+        int zones = 1000;
+        ShardedSimulationSpec spec = new ShardedSimulationSpec("RijalEtAl2007GlobeTemp", zones, 15);
+        double[] outdoorTemperatures = new double[96];
+        for (int step = 0; step < outdoorTemperatures.length; step++) {
+            outdoorTemperatures[step] = 24 + 6 * Math.sin(2 * Math.PI * step / outdoorTemperatures.length);
+        }
+        ShardResult single = ShardWorker.run(spec, outdoorTemperatures, 0, zones);
+        Path directory = null;
+        try {
+            directory = Files.createTempDirectory("shards");
+            ShardResult sharded = new ShardCoordinator(directory, 2).run(spec, outdoorTemperatures);
+            int mismatches = 0;
+            for (int zone = 0; zone < zones; zone++) {
+                if (sharded.getOpenSteps(zone) != single.getOpenSteps(zone) || sharded.getActions(zone) != single.getActions(zone)) {
+                    mismatches++;
+                }
+            }
+            for (int step = 0; step < outdoorTemperatures.length; step++) {
+                if (sharded.getOpenCount(step) != single.getOpenCount(step)
+                        || Math.abs(sharded.getMeanTemperature(step) - single.getMeanTemperature(step)) > 1e-9) {
+                    mismatches++;
+                }
+            }
+            return report("Two shards vs single run, " + mismatches + " mismatches", mismatches == 0);
+        } catch (IOException e) {
+            return report("Sharded simulation failed with " + e, false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return report("Sharded simulation interrupted", false);
+        } finally {
+            if (directory != null) {
+                for (File file : directory.toFile().listFiles()) {
+                    file.delete();
+                }
+                directory.toFile().delete();
+            }
+        }
+    }
+
+    /**
+     * Checks that stepping with partitioned worker threads gives the results of stepping on a single thread
+     * @return	The number of failed checks
+     */
+    private static int checkPartitionedScheduler() {
+        int zones = 3000;
+        double[] outdoorTemperatures = new double[96];
+        for (int step = 0; step < outdoorTemperatures.length; step++) {
+            outdoorTemperatures[step] = 24 + 6 * Math.sin(2 * Math.PI * step / outdoorTemperatures.length);
+        }
+        ClosedLoopSimulation sequential = new ClosedLoopSimulation(new RijalEtAl2007GlobeTemp(), new RcZoneNetwork(zones, 22, 5e6, 100, 200, 800), 300, 16);
+        ClosedLoopSimulation partitioned = new ClosedLoopSimulation(new RijalEtAl2007GlobeTemp(), new RcZoneNetwork(zones, 22, 5e6, 100, 200, 800), 300, 16);
+        sequential.run(outdoorTemperatures);
+        int[] openCounts = new int[outdoorTemperatures.length];
+        try (PartitionedScheduler scheduler = new PartitionedScheduler(partitioned, 4)) {
+            scheduler.run(outdoorTemperatures, openCounts, null);
+        }
+        int mismatches = 0;
+        int openSteps = 0;
+        for (int zone = 0; zone < zones; zone++) {
+            if (sequential.getOpenSteps(zone) != partitioned.getOpenSteps(zone) || sequential.getActions(zone) != partitioned.getActions(zone)
+                    || sequential.getNetwork().getTemperature(zone) != partitioned.getNetwork().getTemperature(zone)) {
+                mismatches++;
+            }
+            openSteps += sequential.getOpenSteps(zone);
+        }
+        return report("Partitioned vs sequential stepping, " + mismatches + " mismatches", mismatches == 0
+                && Arrays.stream(openCounts).sum() == openSteps);
+    }
+
+    /**
+     * Compares the mean open time of the adaptive-step simulation when every block is refined and when every block is thinned
+     * @return	The number of failed checks
+     */
+    private static int checkAdaptiveStepSimulation() {
+        int rooms = 2000;
+        int steps = 288;
+        AdaptiveStepSimulation.Inputs inputs = new AdaptiveStepSimulation.Inputs() {
+            @Override
+            public double getDrive(int room, int drive, int step) {
+                return 24 + 6 * Math.sin(2 * Math.PI * step / steps) + (room % 7) * 0.25;
+            }
+
+            @Override
+            public TransitionOccupantState.TRANSITION_STATES getOccupancy(int room, int step) {
+                return TransitionOccupantState.TRANSITION_STATES.PRESENSE;
+            }
+        };
+        double[][] openSteps = new double[2][rooms];
+        double[] thresholds = {0, 1};
+        for (int run = 0; run < thresholds.length; run++) {
+            AdaptiveStepSimulation simulation = new AdaptiveStepSimulation(new YunSteemers2008IndoorTempNoNightVentilation(), 1,
+                    UserType.USER_TYPES.UNKNOWN, rooms, 300, 3600, 12, thresholds[run], 10 + run);
+            simulation.run(inputs, steps);
+            for (int room = 0; room < rooms; room++) {
+                openSteps[run][room] = simulation.getOpenSteps(room);
+            }
+        }
+        double refined = mean(openSteps[0]);
+        double thinned = mean(openSteps[1]);
+        double standardError = Math.sqrt((variance(openSteps[0]) + variance(openSteps[1])) / rooms);
+        return report("Adaptive steps, mean open steps refined " + refined + " vs thinned " + thinned,
+                Math.abs(refined - thinned) < 4 * standardError);
+    }
+
+    /**
+     * Checks that the control variates remove all variance of the expected open time when the drives are known exactly
+     * @return	The number of failed checks
+     */
+    private static int checkControlVariate() {
+        int steps = 144;
+        double[][] drives = new double[steps][1];
+        TransitionOccupantState.TRANSITION_STATES[] occupancy = new TransitionOccupantState.TRANSITION_STATES[steps];
+        for (int step = 0; step < steps; step++) {
+            drives[step][0] = 24 + 6 * Math.sin(2 * Math.PI * step / steps);
+            occupancy[step] = TransitionOccupantState.TRANSITION_STATES.PRESENSE;
+        }
+        WindowEnsemble ensemble = new WindowEnsemble(drives, occupancy, UserType.USER_TYPES.UNKNOWN, false);
+        UserModel model = new YunSteemers2008IndoorTempNoNightVentilation();
+        EnsembleEstimate plain = ensemble.estimate(model, new SplitMix64Source(ensemble.getDimension(), 3), 1000);
+        ensemble.setControlVariate(true);
+        EnsembleEstimate controlled = ensemble.estimate(model, new SplitMix64Source(ensemble.getDimension(), 3), 1000);
+        return report("Control variates, standard error " + plain.getStandardError() + " -> " + controlled.getStandardError(),
+                controlled.getStandardError() < 1e-6 * Math.max(1, plain.getStandardError()));
+    }
+
+    /**
+     * Checks that the shifted Sobol points of a long horizon stay in the unit interval, and that the first 1024 points put
+     * exactly one coordinate into every 1/1024 stratum of each sequence dimension
+     * @return	The number of failed checks
+     */
+    private static int checkSobolSource() {
+        int dimension = 1200;
+        int points = 1024;
+        SobolSource source = new SobolSource(dimension, 17);
+        int[][] strata = new int[SobolSource.MAXIMUM_SEQUENCE_DIMENSION][points];
+        double[] point = new double[dimension];
+        int outside = 0;
+        for (int i = 0; i < points; i++) {
+            source.nextPoint(point);
+            for (int d = 0; d < dimension; d++) {
+                if (!(point[d] >= 0 && point[d] < 1)) {
+                    outside++;
+                } else if (d < strata.length) {
+                    strata[d][(int) (point[d] * points)]++;
+                }
+            }
+        }
+        int unstratified = 0;
+        for (int[] dimensionStrata : strata) {
+            for (int count : dimensionStrata) {
+                if (count != 1) {
+                    unstratified++;
+                    break;
+                }
+            }
+        }
+        return report("Sobol points of dimension " + dimension + ", " + outside + " coordinates outside [0, 1), "
+                + unstratified + " dimensions not stratified", outside == 0 && unstratified == 0);
+    }
+
+    /**
+     * Compares the importance-sampling estimate of a rare late opening with the exact probability of the Markov chain
+     * @return	The number of failed checks
+     */
+    private static int checkImportanceSampling() {
+        int steps = 144;
+        int from = 108;
+        double[][] drives = new double[steps][1];
+        TransitionOccupantState.TRANSITION_STATES[] occupancy = new TransitionOccupantState.TRANSITION_STATES[steps];
+        UserModel model = new RijalEtAl2007GlobeTemp();
+        Array2DRowRealMatrix actionDrives = new Array2DRowRealMatrix(1, 1);
+        double closedBefore = 1;
+        double closedDuring = 1;
+        for (int step = 0; step < steps; step++) {
+            drives[step][0] = 4 + 3 * Math.sin((step / 6.0 - 9) / 24 * 2 * Math.PI);
+            occupancy[step] = TransitionOccupantState.TRANSITION_STATES.ALL_STATES;
+            actionDrives.setEntry(0, 0, drives[step][0]);
+            double actionProbability = model.calculateActionProbability(UserType.USER_TYPES.UNKNOWN, occupancy[step],
+                    TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN, actionDrives);
+            if (step < from) {
+                closedBefore *= 1 - actionProbability;
+            } else {
+                closedDuring *= 1 - actionProbability;
+            }
+        }
+        double exact = closedBefore * (1 - closedDuring);
+        WindowEnsemble ensemble = new WindowEnsemble(drives, occupancy, UserType.USER_TYPES.UNKNOWN, false);
+        WeightedEstimate estimate = ensemble.estimateOpeningProbability(model, new SplitMix64Source(ensemble.getDimension(), 4), 20000,
+                from, steps, ensemble.suggestTilt(model, from, steps));
+        return report("Importance sampling " + estimate.getMean() + " +- " + estimate.getStandardError() + " vs exact " + exact,
+                Math.abs(estimate.getMean() - exact) < 4 * estimate.getStandardError());
+    }
+
+    /**
+     * Compares the exact early survival and expected number of actions with a Monte Carlo simulation of the Markov chain, checks
+     * that zone survival is the product of the survival of its rooms, and that unordered zone starts are rejected
+     * @return	The number of failed checks
+     */
+    private static int checkFirstActionAnalysis() {
+        Random random = new Random(18);
+        int rooms = 100;
+        int steps = 48;
+        int trajectories = 200;
+        int horizon = 3;
+        int[] zoneStarts = {0, 40};
+        UserModel model = new YunSteemers2008IndoorTempNoNightVentilation();
+        double[][] driveColumns = new double[1][rooms * steps];
+        for (int index = 0; index < driveColumns[0].length; index++) {
+            driveColumns[0][index] = 20 + 12 * random.nextDouble();
+        }
+        byte[] occupancy = new byte[rooms * steps];
+        Arrays.fill(occupancy, (byte) TransitionOccupantState.TRANSITION_STATES.PRESENSE.ordinal());
+        boolean[] initiallyOpen = new boolean[rooms];
+        for (int room = 0; room < rooms; room += 2) {
+            initiallyOpen[room] = true;
+        }
+        SurvivalResult result = new FirstActionAnalysis(model, 1, UserType.USER_TYPES.UNKNOWN, rooms, zoneStarts)
+                .analyse(driveColumns, occupancy, initiallyOpen, steps);
+        Array2DRowRealMatrix drives = new Array2DRowRealMatrix(1, 1);
+        double[] survived = new double[rooms * trajectories];
+        double[] actions = new double[rooms * trajectories];
+        double exactSurvival = 0;
+        double exactActions = 0;
+        for (int room = 0; room < rooms; room++) {
+            exactSurvival += result.getSurvival()[room * (steps + 1) + horizon] / rooms;
+            exactActions += result.getExpectedActions()[room] / rooms;
+            for (int trajectory = 0; trajectory < trajectories; trajectory++) {
+                boolean open = initiallyOpen[room];
+                int count = 0;
+                int survivedSteps = steps;
+                for (int step = 0; step < steps; step++) {
+                    drives.setEntry(0, 0, driveColumns[0][step * rooms + room]);
+                    double actionProbability = model.calculateActionProbability(UserType.USER_TYPES.UNKNOWN, TransitionOccupantState.TRANSITION_STATES.PRESENSE,
+                            open ? TransitionSystemState.TRANSITION_STATES.OPEN_CLOSE : TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN, drives);
+                    if (random.nextDouble() <= actionProbability) {
+                        open = !open;
+                        survivedSteps = Math.min(survivedSteps, step);
+                        count++;
+                    }
+                }
+                survived[room * trajectories + trajectory] = survivedSteps >= horizon ? 1 : 0;
+                actions[room * trajectories + trajectory] = count;
+            }
+        }
+        double survivalError = Math.sqrt(variance(survived) / survived.length);
+        double actionsError = Math.sqrt(variance(actions) / actions.length);
+        double zoneSurvival = 1;
+        for (int room = zoneStarts[0]; room < zoneStarts[1]; room++) {
+            zoneSurvival *= result.getSurvival()[room * (steps + 1) + 1];
+        }
+        double zoneError = Math.abs(result.getZoneSurvival()[1] / zoneSurvival - 1);
+        int failures = report("Exact survival over " + horizon + " steps " + exactSurvival + " vs simulated " + mean(survived), Math.abs(exactSurvival - mean(survived)) < 4 * survivalError)
+                + report("Exact expected actions " + exactActions + " vs simulated " + mean(actions), Math.abs(exactActions - mean(actions)) < 4 * actionsError)
+                + report("Zone survival vs product of room survivals " + zoneSurvival + ", relative difference " + zoneError, zoneError < 1e-5);
+        try {
+            new FirstActionAnalysis(model, 1, UserType.USER_TYPES.UNKNOWN, rooms, new int[] {0, 40, 40});
+            failures += report("First-action analysis rejects unordered zone starts", false);
+        } catch (IllegalArgumentException e) {
+            failures += report("First-action analysis rejects unordered zone starts", true);
+        }
+        return failures;
+    }
+
+    /**
+     * Checks that a portfolio forecast over two segments and several chunks gives the room results of one analysis per model,
+     * and that the expected numbers and medians of open rooms per zone agree with the room probabilities
+     * @return	The number of failed checks
+     */
+    private static int checkPortfolioForecast() {
+        Random random = new Random(19);
+        int rooms = 3000;
+        int split = 1800;
+        int steps = 24;
+        int[] zoneStarts = {0, 1000, 2500};
+        UserModel[] models = {new RijalEtAl2007GlobeTemp(), new YunSteemers2008IndoorTempNoNightVentilation()};
+        double[][] driveColumns = new double[1][rooms * steps];
+        byte[] occupancy = new byte[rooms * steps];
+        for (int index = 0; index < driveColumns[0].length; index++) {
+            driveColumns[0][index] = 20 + 12 * random.nextDouble();
+            occupancy[index] = (byte) (index % rooms < split ? TransitionOccupantState.TRANSITION_STATES.ALL_STATES : TransitionOccupantState.TRANSITION_STATES.PRESENSE).ordinal();
+        }
+        SystemStateBits state = new SystemStateBits(rooms);
+        boolean[] initiallyOpen = new boolean[rooms];
+        for (int room = 0; room < rooms; room += 3) {
+            state.setOpen(room, true);
+            initiallyOpen[room] = true;
+        }
+        PortfolioForecast forecast;
+        try (PortfolioForecaster forecaster = new PortfolioForecaster(rooms, zoneStarts, 4)) {
+            forecaster.addSegment(models[0], new int[] {0}, UserType.USER_TYPES.UNKNOWN, 0, split);
+            forecaster.addSegment(models[1], new int[] {0}, UserType.USER_TYPES.UNKNOWN, split, rooms);
+            forecast = forecaster.forecast(driveColumns, occupancy, state, steps, new double[] {0.5});
+        }
+        float[] open = forecast.getRooms().getOpenProbabilities();
+        int mismatches = 0;
+        for (int m = 0; m < models.length; m++) {
+            SurvivalResult reference = new FirstActionAnalysis(models[m], 1, UserType.USER_TYPES.UNKNOWN, rooms, zoneStarts)
+                    .analyse(driveColumns, occupancy, initiallyOpen, steps);
+            for (int room = m == 0 ? 0 : split; room < (m == 0 ? split : rooms); room++) {
+                for (int t = 0; t <= steps; t++) {
+                    if (open[room * (steps + 1) + t] != reference.getOpenProbabilities()[room * (steps + 1) + t]) {
+                        mismatches++;
+                    }
+                }
+            }
+        }
+        int inconsistent = 0;
+        for (int zone = 0; zone < zoneStarts.length; zone++) {
+            int end = zone + 1 < zoneStarts.length ? zoneStarts[zone + 1] : rooms;
+            for (int t = 0; t <= steps; t++) {
+                double expected = 0;
+                for (int room = zoneStarts[zone]; room < end; room++) {
+                    expected += open[room * (steps + 1) + t];
+                }
+                double forecastExpected = forecast.getZoneExpectedOpen()[zone * (steps + 1) + t];
+                if (Math.abs(forecastExpected - expected) > 1e-3 || Math.abs(forecast.getZoneOpenQuantile(zone, t, 0) - expected) > 1) {
+                    inconsistent++;
+                }
+            }
+        }
+        return report("Portfolio forecast vs analysis per model, " + mismatches + " mismatches", mismatches == 0)
+                + report("Zone expected and median open rooms, " + inconsistent + " inconsistent", inconsistent == 0);
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    private static double variance(double[] values) {
+        double mean = mean(values);
+        double sum = 0;
+        for (double value : values) {
+            sum += (value - mean) * (value - mean);
+        }
+        return sum / (values.length - 1);
+    }
+
+    private static int report(String check, boolean passed) {
+        System.out.println((passed ? "OK      " : "FAILED  ") + check);
+        return passed ? 0 : 1;
     }
 }
@@ -0,0 +1,165 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.actor;
+
+import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
+import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
+import eu.moeebius.usermodelling.interfaces.UserModel;
+import eu.moeebius.usermodelling.interfaces.UserType;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A room as an actor: it owns the User Model, the drives and the system state of the room, and processes its messages one
+ * at a time from a lock-free mailbox. The actor is scheduled on the executor of its system only while it has messages,
+ * and yields after a bounded number of them so that busy rooms do not starve the others. A message whose processing fails
+ * (e.g. a drive index out of range, or an exception of the model) is reported to the listener and skipped.
+ * @author Georgios D. Kontes
+ */
+public class RoomActor implements Runnable {
+
+    private static final int THROUGHPUT = 64;
+
+    private final RoomActorSystem system;
+    private final int room;
+    private final UserModel model;
+    private final UserType.USER_TYPES userType;
+    private final Array2DRowRealMatrix actionDrives;
+    private final double[][] actionDriveData;
+    private final Queue<RoomMessage> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private TransitionOccupantState.TRANSITION_STATES transitionState = TransitionOccupantState.TRANSITION_STATES.PRESENSE;
+    private volatile TransitionSystemState.TRANSITION_STATES transitionSystemState = TransitionSystemState.TRANSITION_STATES.CLOSE_CLOSE;
+    private volatile double lastProbability = Double.NaN;
+
+    RoomActor(RoomActorSystem system, int room, UserModel model, int driveCount, UserType.USER_TYPES userType) {
+        this.system = system;
+        this.room = room;
+        this.model = model;
+        this.userType = userType;
+        this.actionDrives = new Array2DRowRealMatrix(driveCount, 1);
+        this.actionDriveData = this.actionDrives.getDataRef();
+    }
+
+    /**
+     * Returns the room index
+     * @return	The room index
+     */
+    public int getRoom() {
+        return this.room;
+    }
+
+    /**
+     * Returns the last system state transition of the room: CLOSE_CLOSE or OPEN_OPEN if the occupant did not act at the
+     * last evaluation, CLOSE_OPEN or OPEN_CLOSE if they did (or the state was observed to change)
+     * @return	The current transition state
+     */
+    public TransitionSystemState.TRANSITION_STATES getTransitionSystemState() {
+        return this.transitionSystemState;
+    }
+
+    /**
+     * Returns true if the system of the room is open
+     * @return	true if open
+     */
+    public boolean isOpen() {
+        return isOpen(this.transitionSystemState);
+    }
+
+    /**
+     * Returns the probability of action of the last evaluation
+     * @return	The probability, or NaN before the first evaluation
+     */
+    public double getLastProbability() {
+        return this.lastProbability;
+    }
+
+    void tell(RoomMessage message) {
+        this.mailbox.offer(message);
+        if (this.scheduled.compareAndSet(false, true)) {
+            this.system.schedule(this);
+        }
+    }
+
+    @Override
+    public void run() {
+        int count = 0;
+        try {
+            RoomMessage message;
+            while (count < THROUGHPUT && (message = this.mailbox.poll()) != null) {
+                count++;
+                try {
+                    this.process(message);
+                } catch (RuntimeException e) {
+                    this.system.failed(this.room, message, e);
+                }
+            }
+        } finally {
+            this.system.processed(count);
+            this.scheduled.set(false);
+            if (!this.mailbox.isEmpty() && this.scheduled.compareAndSet(false, true)) {
+                this.system.schedule(this);
+            }
+        }
+    }
+
+    private void process(RoomMessage message) {
+        switch (message.getKind()) {
+            case DRIVE: {
+                this.actionDriveData[message.getDrive()][0] = message.getValue();
+                break;
+            }
+            case OCCUPANCY: {
+                this.transitionState = message.getTransitionState();
+                break;
+            }
+            case SYSTEM_STATE: {
+                boolean open = message.getValue() != 0;
+                boolean wasOpen = this.isOpen();
+                if (open != wasOpen) {
+                    this.transitionSystemState = open ? TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN : TransitionSystemState.TRANSITION_STATES.OPEN_CLOSE;
+                }
+                break;
+            }
+            case EVALUATE: {
+                boolean open = this.isOpen();
+                TransitionSystemState.TRANSITION_STATES transition = open ? TransitionSystemState.TRANSITION_STATES.OPEN_CLOSE : TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN;
+                double actionProbability = this.model.calculateActionProbability(this.userType, this.transitionState, transition, this.actionDrives);
+                this.lastProbability = actionProbability;
+                if (ThreadLocalRandom.current().nextDouble() <= actionProbability) {
+                    this.transitionSystemState = transition;
+                    this.system.emit(this.room, transition);
+                } else {
+                    this.transitionSystemState = open ? TransitionSystemState.TRANSITION_STATES.OPEN_OPEN : TransitionSystemState.TRANSITION_STATES.CLOSE_CLOSE;
+                }
+                break;
+            }
+        }
+    }
+
+    private static boolean isOpen(TransitionSystemState.TRANSITION_STATES transitionSystemState) {
+        return transitionSystemState == TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN || transitionSystemState == TransitionSystemState.TRANSITION_STATES.OPEN_OPEN;
+    }
+}
@@ -0,0 +1,199 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.actor;
+
+import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
+import eu.moeebius.usermodelling.interfaces.UserModel;
+import eu.moeebius.usermodelling.interfaces.UserType;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs one {@link RoomActor} per room on a shared executor: by default an asynchronous work-stealing pool, or any other
+ * executor such as a virtual-thread-per-task one. Rooms share no locks; messages to a room are processed in the order sent
+ * by any one sender, and rooms without messages cost no thread.
+ * <p>
+ * Rooms are added before messages are sent. State changes are reported to the listener from the actors' threads.
+ * @author Georgios D. Kontes
+ */
+public class RoomActorSystem implements AutoCloseable {
+
+    private final Executor executor;
+    private final ForkJoinPool ownedPool;
+    private final RoomStateListener listener;
+    private final List<RoomActor> actors = new ArrayList<>();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder actions = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * Creates a system on an asynchronous work-stealing pool with one worker per processor, owned by the system and shut
+     * down by {@link #close()}
+     * @param listener	The listener of state changes, or null
+     */
+    public RoomActorSystem(RoomStateListener listener) {
+        this(new ForkJoinPool(Runtime.getRuntime().availableProcessors(), ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true), listener, true);
+    }
+
+    /**
+     * Creates a system on an executor
+     * @param executor	The executor running the actors
+     * @param listener	The listener of state changes, or null
+     */
+    public RoomActorSystem(Executor executor, RoomStateListener listener) {
+        this(executor, listener, false);
+    }
+
+    private RoomActorSystem(Executor executor, RoomStateListener listener, boolean owned) {
+        this.executor = executor;
+        this.ownedPool = owned ? (ForkJoinPool) executor : null;
+        this.listener = listener;
+    }
+
+    /**
+     * Adds a room
+     * @param model	        The User Model of the room (owned by the room)
+     * @param driveCount	The number of action drives of the model
+     * @param userType	    The user type of the room's occupant
+     * @return	The room index
+     */
+    public int addRoom(UserModel model, int driveCount, UserType.USER_TYPES userType) {
+        RoomActor actor = new RoomActor(this, this.actors.size(), model, driveCount, userType);
+        this.actors.add(actor);
+        return actor.getRoom();
+    }
+
+    /**
+     * Returns the actor of a room, e.g. to read its state
+     * @param room	The room index
+     * @return	The actor
+     */
+    public RoomActor getRoom(int room) {
+        return this.actors.get(room);
+    }
+
+    /**
+     * Returns the number of rooms
+     * @return	The number of rooms
+     */
+    public int getRoomCount() {
+        return this.actors.size();
+    }
+
+    /**
+     * Sends a message to a room
+     * @param room	    The room index
+     * @param message	The message
+     */
+    public void tell(int room, RoomMessage message) {
+        this.sent.increment();
+        this.actors.get(room).tell(message);
+    }
+
+    /**
+     * Sends an evaluation request to every room
+     */
+    public void evaluateAll() {
+        for (int room = 0; room < this.actors.size(); room++) {
+            this.tell(room, RoomMessage.evaluate());
+        }
+    }
+
+    /**
+     * Waits until all sent messages have been processed
+     * @param timeout	The maximum time to wait
+     * @param unit	    The unit of the timeout
+     * @return	true if all messages were processed, false on timeout
+     * @throws InterruptedException	If the thread is interrupted
+     */
+    public boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (this.processed.sum() < this.sent.sum()) {
+            if (System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of actions performed in all rooms
+     * @return	The number of actions
+     */
+    public long getActionCount() {
+        return this.actions.sum();
+    }
+
+    /**
+     * Returns the number of messages processed by all rooms
+     * @return	The number of messages
+     */
+    public long getProcessedCount() {
+        return this.processed.sum();
+    }
+
+    /**
+     * Returns the number of messages whose processing failed
+     * @return	The number of failed messages
+     */
+    public long getFailureCount() {
+        return this.failures.sum();
+    }
+
+    /**
+     * Shuts down the pool created by the system, if any; an executor passed to the constructor is left running
+     */
+    @Override
+    public void close() {
+        if (this.ownedPool != null) {
+            this.ownedPool.shutdown();
+        }
+    }
+
+    void schedule(RoomActor actor) {
+        this.executor.execute(actor);
+    }
+
+    void processed(int count) {
+        this.processed.add(count);
+    }
+
+    void failed(int room, RoomMessage message, RuntimeException failure) {
+        this.failures.increment();
+        if (this.listener != null) {
+            this.listener.onFailure(room, message, failure);
+        }
+    }
+
+    void emit(int room, TransitionSystemState.TRANSITION_STATES transition) {
+        this.actions.increment();
+        if (this.listener != null) {
+            this.listener.onAction(room, transition);
+        }
+    }
+}
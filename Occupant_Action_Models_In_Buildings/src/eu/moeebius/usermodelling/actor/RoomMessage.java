@@ -0,0 +1,136 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.actor;
+
+import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
+
+/**
+ * A message to a room actor. Messages are immutable and may be sent from any thread.
+ * @author Georgios D. Kontes
+ */
+public final class RoomMessage {
+
+    /**
+     * The kinds of messages
+     */
+    public enum KINDS {
+        /**
+         * A sensor reading of one action drive
+         */
+        DRIVE,
+        /**
+         * An occupancy transition
+         */
+        OCCUPANCY,
+        /**
+         * An externally observed system state, e.g. from a window contact
+         */
+        SYSTEM_STATE,
+        /**
+         * A request to run the User Model for the current state of the room
+         */
+        EVALUATE
+    }
+
+    private static final RoomMessage EVALUATE = new RoomMessage(KINDS.EVALUATE, 0, 0, null);
+    private static final RoomMessage OPENED = new RoomMessage(KINDS.SYSTEM_STATE, 0, 1, null);
+    private static final RoomMessage CLOSED = new RoomMessage(KINDS.SYSTEM_STATE, 0, 0, null);
+
+    private final KINDS kind;
+    private final int drive;
+    private final double value;
+    private final TransitionOccupantState.TRANSITION_STATES transitionState;
+
+    private RoomMessage(KINDS kind, int drive, double value, TransitionOccupantState.TRANSITION_STATES transitionState) {
+        this.kind = kind;
+        this.drive = drive;
+        this.value = value;
+        this.transitionState = transitionState;
+    }
+
+    /**
+     * Creates a sensor reading
+     * @param drive	    The index of the action drive, in the order expected by the User Model
+     * @param value	    The value of the drive
+     * @return	The message
+     */
+    public static RoomMessage drive(int drive, double value) {
+        return new RoomMessage(KINDS.DRIVE, drive, value, null);
+    }
+
+    /**
+     * Creates an occupancy transition
+     * @param transitionState	The Markov transition for occupancy status the room is evaluated for from now on
+     * @return	The message
+     */
+    public static RoomMessage occupancy(TransitionOccupantState.TRANSITION_STATES transitionState) {
+        return new RoomMessage(KINDS.OCCUPANCY, 0, 0, transitionState);
+    }
+
+    /**
+     * Creates an observed system state
+     * @param open	true if the system is open
+     * @return	The message
+     */
+    public static RoomMessage systemState(boolean open) {
+        return open ? OPENED : CLOSED;
+    }
+
+    /**
+     * Returns the evaluation request
+     * @return	The message
+     */
+    public static RoomMessage evaluate() {
+        return EVALUATE;
+    }
+
+    /**
+     * Returns the kind of the message
+     * @return	The kind
+     */
+    public KINDS getKind() {
+        return this.kind;
+    }
+
+    /**
+     * Returns the drive index of a DRIVE message
+     * @return	The drive index
+     */
+    public int getDrive() {
+        return this.drive;
+    }
+
+    /**
+     * Returns the value of a DRIVE message, or 1/0 (open/closed) for a SYSTEM_STATE message
+     * @return	The value
+     */
+    public double getValue() {
+        return this.value;
+    }
+
+    /**
+     * Returns the occupancy transition of an OCCUPANCY message
+     * @return	The Markov transition for occupancy status
+     */
+    public TransitionOccupantState.TRANSITION_STATES getTransitionState() {
+        return this.transitionState;
+    }
+}
@@ -0,0 +1,46 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.actor;
+
+import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
+
+/**
+ * Receives the state changes emitted by room actors. It is called from the thread running the actor, one call at a time
+ * per room but concurrently across rooms.
+ * @author Georgios D. Kontes
+ */
+public interface RoomStateListener {
+
+    /**
+     * Called when the occupant of a room acts on the system
+     * @param room	        The room index
+     * @param transition	The transition performed (CLOSE_OPEN or OPEN_CLOSE)
+     */
+    void onAction(int room, TransitionSystemState.TRANSITION_STATES transition);
+
+    /**
+     * Called when a room fails to process a message; the message is skipped and the room goes on with the next one
+     * @param room	    The room index
+     * @param message	The message that failed
+     * @param failure	The exception thrown while processing it
+     */
+    default void onFailure(int room, RoomMessage message, RuntimeException failure) {}
+}
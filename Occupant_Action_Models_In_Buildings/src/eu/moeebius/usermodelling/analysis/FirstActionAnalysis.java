@@ -0,0 +1,207 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.analysis;
+
+import eu.moeebius.usermodelling.batch.LogisticBatchEvaluator;
+import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
+import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
+import eu.moeebius.usermodelling.interfaces.UserModel;
+import eu.moeebius.usermodelling.interfaces.UserType;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+
+/**
+ * Computes, without Monte Carlo, when rooms and zones are expected to see their first window action over a drive forecast.
+ * The probabilities of action of every step are hazards: as long as no action has happened the system stays in its initial
+ * state, so the survival function (probability of no action before a step) is the running product of one minus the hazard
+ * of leaving the initial state, and the distribution of the time to the first action follows from it. The expected number
+ * of actions is obtained by propagating the probability of the open state through the two-state Markov chain. Rooms are
+ * independent, so the survival of a zone is the product of the survival of its rooms.
+ * <p>
+ * The forecast is passed step-major: drive column k holds the value of room r in step t at index t * rooms + r, so every step
+ * is a contiguous range of rooms. For models supported by {@link LogisticBatchEvaluator} the probabilities of a step are
+ * evaluated over that range at once, for every occupancy state present in the step, with the model's parameters at the
+ * start of each analysis; other models are evaluated room by room.
+ * Instances keep reusable buffers and must not be shared between threads.
+ * @author Georgios D. Kontes
+ */
+public class FirstActionAnalysis {
+
+    private static final TransitionOccupantState.TRANSITION_STATES[] OCCUPANT_STATES = TransitionOccupantState.TRANSITION_STATES.values();
+
+    private final UserModel model;
+    private final UserType.USER_TYPES userType;
+    private final int rooms;
+    private final int[] zoneStarts;
+    private final boolean batched;
+    private LogisticBatchEvaluator[][] evaluators;
+    private final Array2DRowRealMatrix actionDrives;
+    private final double[][] actionDriveData;
+    private double[][] batchProbabilities = new double[0][];
+
+    /**
+     * Creates the analysis
+     * @param model	        The window (or blinds) model
+     * @param driveCount	The number of action drives of the model
+     * @param userType	    The user type of all occupants
+     * @param rooms	        The number of rooms of the forecast
+     * @param zoneStarts	The first room of every zone; zone z covers rooms zoneStarts[z] up to the next zone start (or the last room)
+     * @throws IllegalArgumentException	If the zone starts are not strictly increasing rooms
+     */
+    public FirstActionAnalysis(UserModel model, int driveCount, UserType.USER_TYPES userType, int rooms, int[] zoneStarts) {
+        this.model = model;
+        this.userType = userType;
+        this.rooms = rooms;
+        this.zoneStarts = checkZoneStarts(zoneStarts, rooms);
+        this.batched = LogisticBatchEvaluator.supports(model);
+        this.actionDrives = new Array2DRowRealMatrix(driveCount, 1);
+        this.actionDriveData = this.actionDrives.getDataRef();
+    }
+
+    /**
+     * Analyses all rooms and zones
+     * @param driveColumns	    The forecast drives, one array per drive holding the value of room r in step t at t * rooms + r
+     * @param occupancy	        The ordinal of the occupancy transition of room r in step t at t * rooms + r
+     * @param initiallyOpen	    true for rooms whose system is open before the first step
+     * @param steps	            The number of forecast steps
+     * @return	The survival functions and expected numbers of actions
+     */
+    public SurvivalResult analyse(double[][] driveColumns, byte[] occupancy, boolean[] initiallyOpen, int steps) {
+        SurvivalResult result = new SurvivalResult(this.rooms, steps, this.zoneStarts);
+        this.analyseRooms(driveColumns, occupancy, initiallyOpen, 0, this.rooms, result);
+        result.computeZones();
+        return result;
+    }
+
+    /**
+     * Analyses a range of rooms into a result, e.g. when rooms are split between threads with one analysis per thread; zone
+     * results are completed once all rooms are done
+     * @param driveColumns	    The forecast drives, one array per drive holding the value of room r in step t at t * rooms + r
+     * @param occupancy	        The ordinal of the occupancy transition of room r in step t at t * rooms + r
+     * @param initiallyOpen	    true for rooms whose system is open before the first step
+     * @param fromRoom	        The first room (inclusive)
+     * @param toRoom	        The last room (exclusive)
+     * @param result	        Receives the room results
+     */
+    void analyseRooms(double[][] driveColumns, byte[] occupancy, boolean[] initiallyOpen, int fromRoom, int toRoom, SurvivalResult result) {
+        if (this.batched) {
+            this.evaluators = this.createEvaluators();
+        }
+        int count = toRoom - fromRoom;
+        int steps = result.getSteps();
+        double[] survival = new double[count];
+        double[] cumulativeHazard = new double[count];
+        double[] open = new double[count];
+        double[] expectedActions = new double[count];
+        double[] opening = new double[count];
+        double[] closing = new double[count];
+        float[] survivalOut = result.survival;
+        float[] cumulativeHazardOut = result.cumulativeHazard;
+        float[] firstActionOut = result.firstAction;
+        float[] openOut = result.openProbability;
+        for (int i = 0; i < count; i++) {
+            survival[i] = 1;
+            open[i] = initiallyOpen[fromRoom + i] ? 1 : 0;
+            survivalOut[(fromRoom + i) * (steps + 1)] = 1;
+            openOut[(fromRoom + i) * (steps + 1)] = (float) open[i];
+        }
+        for (int step = 0; step < steps; step++) {
+            this.calculateProbabilities(driveColumns, occupancy, step, fromRoom, toRoom, opening, closing);
+            for (int i = 0; i < count; i++) {
+                int room = fromRoom + i;
+                double hazard = initiallyOpen[room] ? closing[i] : opening[i];
+                double first = survival[i] * hazard;
+                survival[i] -= first;
+                cumulativeHazard[i] -= Math.log1p(-hazard);
+                double p = open[i];
+                double opened = (1 - p) * opening[i];
+                double closed = p * closing[i];
+                expectedActions[i] += opened + closed;
+                open[i] = p + opened - closed;
+                firstActionOut[room * steps + step] = (float) first;
+                survivalOut[room * (steps + 1) + step + 1] = (float) survival[i];
+                cumulativeHazardOut[room * (steps + 1) + step + 1] = (float) cumulativeHazard[i];
+                openOut[room * (steps + 1) + step + 1] = (float) open[i];
+            }
+        }
+        System.arraycopy(expectedActions, 0, result.expectedActions, fromRoom, count);
+    }
+
+    private void calculateProbabilities(double[][] driveColumns, byte[] occupancy, int step, int fromRoom, int toRoom, double[] opening, double[] closing) {
+        int count = toRoom - fromRoom;
+        int base = step * this.rooms;
+        if (this.batched) {
+            int present = 0;
+            for (int i = 0; i < count; i++) {
+                present |= 1 << occupancy[base + fromRoom + i];
+            }
+            if (this.batchProbabilities.length == 0 || this.batchProbabilities[0].length < count) {
+                this.batchProbabilities = new double[2 * OCCUPANT_STATES.length][count];
+            }
+            for (int state = 0; state < OCCUPANT_STATES.length; state++) {
+                if ((present & (1 << state)) != 0) {
+                    this.evaluators[state][0].calculateActionProbabilities(driveColumns, base + fromRoom, base + toRoom, this.batchProbabilities[2 * state]);
+                    this.evaluators[state][1].calculateActionProbabilities(driveColumns, base + fromRoom, base + toRoom, this.batchProbabilities[2 * state + 1]);
+                }
+            }
+            for (int i = 0; i < count; i++) {
+                int state = occupancy[base + fromRoom + i];
+                opening[i] = this.batchProbabilities[2 * state][i];
+                closing[i] = this.batchProbabilities[2 * state + 1][i];
+            }
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            int index = base + fromRoom + i;
+            for (int drive = 0; drive < this.actionDriveData.length; drive++) {
+                this.actionDriveData[drive][0] = driveColumns[drive][index];
+            }
+            TransitionOccupantState.TRANSITION_STATES state = OCCUPANT_STATES[occupancy[index]];
+            opening[i] = this.model.calculateActionProbability(this.userType, state, TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN, this.actionDrives);
+            closing[i] = this.model.calculateActionProbability(this.userType, state, TransitionSystemState.TRANSITION_STATES.OPEN_CLOSE, this.actionDrives);
+        }
+    }
+
+    /**
+     * Checks that zone starts are strictly increasing rooms
+     * @param zoneStarts	The first room of every zone
+     * @param rooms	        The number of rooms
+     * @return	A copy of the zone starts
+     * @throws IllegalArgumentException	If a zone start is out of range or not above the previous one
+     */
+    static int[] checkZoneStarts(int[] zoneStarts, int rooms) {
+        for (int zone = 0; zone < zoneStarts.length; zone++) {
+            if (zoneStarts[zone] < 0 || zoneStarts[zone] >= rooms || (zone > 0 && zoneStarts[zone] <= zoneStarts[zone - 1])) {
+                throw new IllegalArgumentException("Zone " + zone + " starts at room " + zoneStarts[zone]
+                        + "; zone starts must be strictly increasing rooms below " + rooms);
+            }
+        }
+        return zoneStarts.clone();
+    }
+
+    private LogisticBatchEvaluator[][] createEvaluators() {
+        LogisticBatchEvaluator[][] evaluators = new LogisticBatchEvaluator[OCCUPANT_STATES.length][2];
+        for (int state = 0; state < OCCUPANT_STATES.length; state++) {
+            evaluators[state][0] = LogisticBatchEvaluator.forModel(this.model, this.userType, OCCUPANT_STATES[state], TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN);
+            evaluators[state][1] = LogisticBatchEvaluator.forModel(this.model, this.userType, OCCUPANT_STATES[state], TransitionSystemState.TRANSITION_STATES.OPEN_CLOSE);
+        }
+        return evaluators;
+    }
+}
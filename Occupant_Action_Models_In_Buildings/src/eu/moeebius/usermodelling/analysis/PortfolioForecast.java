@@ -0,0 +1,135 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.analysis;
+
+/**
+ * A portfolio forecast computed by {@link PortfolioForecaster}: the per-room results of the exact propagation and, per zone
+ * and step boundary, the expected number of open rooms and quantiles of that number. The quantiles are exact: the number
+ * of open rooms of a zone follows a Poisson-binomial distribution, which is built room by room with tails below 1e-16
+ * dropped.
+ * @author Georgios D. Kontes
+ */
+public class PortfolioForecast {
+
+    private static final double NEGLIGIBLE = 1e-16;
+
+    private final SurvivalResult rooms;
+    private final double[] quantileLevels;
+    private final float[] zoneExpectedOpen;
+    private final int[] zoneOpenQuantiles;
+
+    PortfolioForecast(SurvivalResult rooms, double[] quantileLevels) {
+        this.rooms = rooms;
+        this.quantileLevels = quantileLevels;
+        int boundaries = rooms.getSteps() + 1;
+        this.zoneExpectedOpen = new float[rooms.getZones() * boundaries];
+        this.zoneOpenQuantiles = new int[rooms.getZones() * boundaries * quantileLevels.length];
+    }
+
+    void computeZone(int zone, int[] zoneStarts) {
+        int boundaries = this.rooms.getSteps() + 1;
+        int from = zoneStarts[zone];
+        int to = zone + 1 < zoneStarts.length ? zoneStarts[zone + 1] : this.rooms.getRooms();
+        float[] open = this.rooms.getOpenProbabilities();
+        double[] distribution = new double[to - from + 1];
+        for (int t = 0; t < boundaries; t++) {
+            distribution[0] = 1;
+            int low = 0;
+            int high = 0;
+            double expected = 0;
+            for (int room = from; room < to; room++) {
+                double p = open[room * boundaries + t];
+                expected += p;
+                distribution[high + 1] = 0;
+                for (int k = high + 1; k > low; k--) {
+                    distribution[k] = distribution[k] * (1 - p) + distribution[k - 1] * p;
+                }
+                distribution[low] *= 1 - p;
+                high++;
+                while (low < high && distribution[low] < NEGLIGIBLE) {
+                    low++;
+                }
+                while (high > low && distribution[high] < NEGLIGIBLE) {
+                    high--;
+                }
+            }
+            int index = zone * boundaries + t;
+            this.zoneExpectedOpen[index] = (float) expected;
+            int base = index * this.quantileLevels.length;
+            for (int q = 0; q < this.quantileLevels.length; q++) {
+                double cumulative = 0;
+                int k = low;
+                for (; k < high; k++) {
+                    cumulative += distribution[k];
+                    if (cumulative >= this.quantileLevels[q]) {
+                        break;
+                    }
+                }
+                this.zoneOpenQuantiles[base + q] = k;
+            }
+        }
+    }
+
+    /**
+     * Returns the per-room results: open probabilities, survival and first-action distributions and expected actions
+     * @return	The room results
+     */
+    public SurvivalResult getRooms() {
+        return this.rooms;
+    }
+
+    /**
+     * Returns the probability levels of the zone quantiles
+     * @return	The quantile levels
+     */
+    public double[] getQuantileLevels() {
+        return this.quantileLevels.clone();
+    }
+
+    /**
+     * Returns the expected numbers of open rooms of all zones; the value of zone z at the start of step t is at
+     * z * (steps + 1) + t
+     * @return	The expected numbers of open rooms (not a copy)
+     */
+    public float[] getZoneExpectedOpen() {
+        return this.zoneExpectedOpen;
+    }
+
+    /**
+     * Returns the quantiles of the numbers of open rooms of all zones; quantile q of zone z at the start of step t is at
+     * (z * (steps + 1) + t) * levels + q
+     * @return	The quantiles (not a copy)
+     */
+    public int[] getZoneOpenQuantiles() {
+        return this.zoneOpenQuantiles;
+    }
+
+    /**
+     * Returns one quantile of the number of open rooms of a zone
+     * @param zone	    The zone index
+     * @param step	    The step boundary (0 is the start of the forecast)
+     * @param level	    The index of the quantile level
+     * @return	The smallest number of open rooms whose cumulative probability reaches the level
+     */
+    public int getZoneOpenQuantile(int zone, int step, int level) {
+        return this.zoneOpenQuantiles[(zone * (this.rooms.getSteps() + 1) + step) * this.quantileLevels.length + level];
+    }
+}
@@ -0,0 +1,177 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.analysis;
+
+import eu.moeebius.usermodelling.interfaces.UserModel;
+import eu.moeebius.usermodelling.interfaces.UserType;
+import eu.moeebius.usermodelling.population.SystemStateBits;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Day-ahead forecasts of window states for a whole portfolio of rooms from a weather (drive) forecast and the current
+ * system state of every room. Rooms are assigned to segments, each with its own User Model and user type, and are propagated
+ * exactly by {@link FirstActionAnalysis} (no Monte Carlo) in chunks spread over a pool of threads. The result holds per room
+ * the probability of the open state at every step and the first-action statistics, and per zone the expected number of open
+ * rooms together with quantiles of that number, which follows a Poisson-binomial distribution because rooms are
+ * independent.
+ * <p>
+ * The forecast step must equal the interval the model probabilities refer to.
+ * @author Georgios D. Kontes
+ */
+public class PortfolioForecaster implements AutoCloseable {
+
+    private static final int CHUNK_ROOMS = 1024;
+
+    private final int rooms;
+    private final int[] zoneStarts;
+    private final ForkJoinPool pool;
+    private final List<Segment> segments = new ArrayList<>();
+    private final boolean[] assigned;
+
+    /**
+     * Creates the forecaster
+     * @param rooms	        The number of rooms of the portfolio
+     * @param zoneStarts	The first room of every zone; zone z covers rooms zoneStarts[z] up to the next zone start (or the last room)
+     * @param threads	    The number of threads
+     * @throws IllegalArgumentException	If the zone starts are not strictly increasing rooms
+     */
+    public PortfolioForecaster(int rooms, int[] zoneStarts, int threads) {
+        this.rooms = rooms;
+        this.zoneStarts = FirstActionAnalysis.checkZoneStarts(zoneStarts, rooms);
+        this.pool = new ForkJoinPool(threads);
+        this.assigned = new boolean[rooms];
+    }
+
+    /**
+     * Assigns a range of rooms to a model
+     * @param model	            The window model
+     * @param driveColumns	    For every action drive of the model, the index of the forecast drive column holding it
+     * @param userType	        The user type of the occupants
+     * @param fromRoom	        The first room (inclusive)
+     * @param toRoom	        The last room (exclusive)
+     * @throws IllegalArgumentException	If a room is already assigned
+     */
+    public void addSegment(UserModel model, int[] driveColumns, UserType.USER_TYPES userType, int fromRoom, int toRoom) {
+        for (int room = fromRoom; room < toRoom; room++) {
+            if (this.assigned[room]) {
+                throw new IllegalArgumentException("Room " + room + " is already assigned");
+            }
+            this.assigned[room] = true;
+        }
+        this.segments.add(new Segment(model, driveColumns.clone(), userType, fromRoom, toRoom));
+    }
+
+    /**
+     * Computes the forecast
+     * @param driveColumns	    The forecast drives, one array per column holding the value of room r in step t at t * rooms + r
+     * @param occupancy	        The ordinal of the occupancy transition of room r in step t at t * rooms + r
+     * @param state	            The current system state of every room
+     * @param steps	            The number of forecast steps
+     * @param quantileLevels	The probability levels of the zone quantiles, e.g. {0.05, 0.5, 0.95}
+     * @return	The forecast
+     * @throws IllegalStateException	If a room has no model, or a thread failed
+     */
+    public PortfolioForecast forecast(double[][] driveColumns, byte[] occupancy, SystemStateBits state, int steps, double[] quantileLevels) {
+        for (int room = 0; room < this.rooms; room++) {
+            if (!this.assigned[room]) {
+                throw new IllegalStateException("Room " + room + " has no model");
+            }
+        }
+        boolean[] initiallyOpen = new boolean[this.rooms];
+        for (int room = 0; room < this.rooms; room++) {
+            initiallyOpen[room] = state.isOpen(room);
+        }
+        SurvivalResult result = new SurvivalResult(this.rooms, steps, this.zoneStarts);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (Segment segment : this.segments) {
+            double[][] columns = new double[segment.driveColumns.length][];
+            for (int drive = 0; drive < columns.length; drive++) {
+                columns[drive] = driveColumns[segment.driveColumns[drive]];
+            }
+            for (int from = segment.fromRoom; from < segment.toRoom; from += CHUNK_ROOMS) {
+                int chunkFrom = from;
+                int chunkTo = Math.min(from + CHUNK_ROOMS, segment.toRoom);
+                tasks.add(() -> {
+                    FirstActionAnalysis analysis = new FirstActionAnalysis(segment.model, columns.length, segment.userType, this.rooms, this.zoneStarts);
+                    analysis.analyseRooms(columns, occupancy, initiallyOpen, chunkFrom, chunkTo, result);
+                    return null;
+                });
+            }
+        }
+        this.invokeAll(tasks);
+        result.computeZones();
+        PortfolioForecast forecast = new PortfolioForecast(result, quantileLevels.clone());
+        tasks.clear();
+        for (int zone = 0; zone < this.zoneStarts.length; zone++) {
+            int forecastZone = zone;
+            tasks.add(() -> {
+                forecast.computeZone(forecastZone, this.zoneStarts);
+                return null;
+            });
+        }
+        this.invokeAll(tasks);
+        return forecast;
+    }
+
+    /**
+     * Shuts the thread pool down
+     */
+    @Override
+    public void close() {
+        this.pool.shutdown();
+    }
+
+    private void invokeAll(List<Callable<Void>> tasks) {
+        for (Future<Void> future : this.pool.invokeAll(tasks)) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Forecast interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Forecast task failed", e.getCause());
+            }
+        }
+    }
+
+    private static final class Segment {
+
+        private final UserModel model;
+        private final int[] driveColumns;
+        private final UserType.USER_TYPES userType;
+        private final int fromRoom;
+        private final int toRoom;
+
+        private Segment(UserModel model, int[] driveColumns, UserType.USER_TYPES userType, int fromRoom, int toRoom) {
+            this.model = model;
+            this.driveColumns = driveColumns;
+            this.userType = userType;
+            this.fromRoom = fromRoom;
+            this.toRoom = toRoom;
+        }
+    }
+}
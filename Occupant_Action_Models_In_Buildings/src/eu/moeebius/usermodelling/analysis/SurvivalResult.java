@@ -0,0 +1,190 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.analysis;
+
+import java.util.Arrays;
+
+/**
+ * The result of a {@link FirstActionAnalysis}: per room and per zone the survival function (probability that no action
+ * happened before a step), the distribution of the step of the first action and the expected number of actions, plus per
+ * room the probability that the system is open. Step-indexed results are stored in flat float arrays, room (or zone) major:
+ * functions of a step boundary have steps + 1 entries per room (index 0 is the start of the forecast), distributions over
+ * steps have steps entries per room.
+ * @author Georgios D. Kontes
+ */
+public class SurvivalResult {
+
+    private final int rooms;
+    private final int steps;
+    private final int[] zoneStarts;
+    final float[] survival;
+    final float[] cumulativeHazard;
+    final float[] firstAction;
+    final float[] openProbability;
+    final double[] expectedActions;
+    private final float[] zoneSurvival;
+    private final float[] zoneFirstAction;
+    private final double[] zoneExpectedActions;
+
+    SurvivalResult(int rooms, int steps, int[] zoneStarts) {
+        this.rooms = rooms;
+        this.steps = steps;
+        this.zoneStarts = zoneStarts;
+        this.survival = new float[rooms * (steps + 1)];
+        this.cumulativeHazard = new float[rooms * (steps + 1)];
+        this.firstAction = new float[rooms * steps];
+        this.openProbability = new float[rooms * (steps + 1)];
+        this.expectedActions = new double[rooms];
+        this.zoneSurvival = new float[zoneStarts.length * (steps + 1)];
+        this.zoneFirstAction = new float[zoneStarts.length * steps];
+        this.zoneExpectedActions = new double[zoneStarts.length];
+    }
+
+    /**
+     * Derives the zone results from the results of all rooms; zone survival is summed from the cumulative hazards
+     * (-ln survival) of the rooms, which keep their precision where survival is close to 1
+     */
+    void computeZones() {
+        double[] logSurvival = new double[this.steps + 1];
+        for (int zone = 0; zone < this.zoneStarts.length; zone++) {
+            int end = zone + 1 < this.zoneStarts.length ? this.zoneStarts[zone + 1] : this.rooms;
+            Arrays.fill(logSurvival, 0);
+            double expected = 0;
+            for (int room = this.zoneStarts[zone]; room < end; room++) {
+                int offset = room * (this.steps + 1);
+                for (int t = 1; t <= this.steps; t++) {
+                    logSurvival[t] -= this.cumulativeHazard[offset + t];
+                }
+                expected += this.expectedActions[room];
+            }
+            int offset = zone * (this.steps + 1);
+            for (int t = 0; t <= this.steps; t++) {
+                this.zoneSurvival[offset + t] = (float) Math.exp(logSurvival[t]);
+            }
+            for (int t = 0; t < this.steps; t++) {
+                this.zoneFirstAction[zone * this.steps + t] = (float) (Math.exp(logSurvival[t]) - Math.exp(logSurvival[t + 1]));
+            }
+            this.zoneExpectedActions[zone] = expected;
+        }
+    }
+
+    /**
+     * Returns the number of rooms
+     * @return	The number of rooms
+     */
+    public int getRooms() {
+        return this.rooms;
+    }
+
+    /**
+     * Returns the number of forecast steps
+     * @return	The number of steps
+     */
+    public int getSteps() {
+        return this.steps;
+    }
+
+    /**
+     * Returns the number of zones
+     * @return	The number of zones
+     */
+    public int getZones() {
+        return this.zoneStarts.length;
+    }
+
+    /**
+     * Returns the survival functions of all rooms; the probability that room r saw no action before step t is at
+     * r * (steps + 1) + t
+     * @return	The survival functions (not a copy)
+     */
+    public float[] getSurvival() {
+        return this.survival;
+    }
+
+    /**
+     * Returns the distributions of the step of the first action of all rooms; the probability that the first action of room
+     * r happens in step t is at r * steps + t. The probability of no action within the forecast is the final survival.
+     * @return	The first-action distributions (not a copy)
+     */
+    public float[] getFirstActionProbabilities() {
+        return this.firstAction;
+    }
+
+    /**
+     * Returns the probabilities that the systems are open; the value of room r at the start of step t is at
+     * r * (steps + 1) + t, the final entry being the end of the forecast
+     * @return	The open probabilities (not a copy)
+     */
+    public float[] getOpenProbabilities() {
+        return this.openProbability;
+    }
+
+    /**
+     * Returns the expected number of actions of every room over the forecast
+     * @return	The expected numbers of actions (not a copy)
+     */
+    public double[] getExpectedActions() {
+        return this.expectedActions;
+    }
+
+    /**
+     * Returns the survival functions of all zones (probability that no room of the zone saw an action), laid out like
+     * {@link #getSurvival()}
+     * @return	The zone survival functions (not a copy)
+     */
+    public float[] getZoneSurvival() {
+        return this.zoneSurvival;
+    }
+
+    /**
+     * Returns the distributions of the step of the first action in every zone, laid out like
+     * {@link #getFirstActionProbabilities()}
+     * @return	The zone first-action distributions (not a copy)
+     */
+    public float[] getZoneFirstActionProbabilities() {
+        return this.zoneFirstAction;
+    }
+
+    /**
+     * Returns the expected number of actions of every zone over the forecast
+     * @return	The expected numbers of actions (not a copy)
+     */
+    public double[] getZoneExpectedActions() {
+        return this.zoneExpectedActions;
+    }
+
+    /**
+     * Returns the first step by whose end the first action of a zone has happened with at least a given probability, e.g.
+     * 0.5 for the median time to the first window action
+     * @param zone	        The zone index
+     * @param probability	The probability
+     * @return	The step, or -1 if the probability is not reached within the forecast
+     */
+    public int getZoneQuantileStep(int zone, double probability) {
+        int offset = zone * (this.steps + 1);
+        for (int t = 1; t <= this.steps; t++) {
+            if (1 - this.zoneSurvival[offset + t] >= probability) {
+                return t - 1;
+            }
+        }
+        return -1;
+    }
+}
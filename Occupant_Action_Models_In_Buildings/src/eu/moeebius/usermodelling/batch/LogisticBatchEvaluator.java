@@ -0,0 +1,237 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.batch;
+
+import eu.moeebius.usermodelling.events.BatchEvaluationEvent;
+import eu.moeebius.usermodelling.flyweight.UserModelHandle;
+import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
+import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
+import eu.moeebius.usermodelling.interfaces.UserModel;
+import eu.moeebius.usermodelling.interfaces.UserType;
+import eu.moeebius.usermodelling.systems.blinds.haldirobinson2008.HaldiRobinson2008IndoorOutdoorTemp;
+import eu.moeebius.usermodelling.systems.blinds.haldirobinson2008.HaldiRobinson2008IndoorTemp;
+import eu.moeebius.usermodelling.systems.blinds.haldirobinson2008.HaldiRobinson2008OutdoorTemp;
+import eu.moeebius.usermodelling.systems.windows.haldirobinson2009.HaldiRobinson2009Params;
+import eu.moeebius.usermodelling.systems.windows.rijaetal2007.RijalEtAl2007GlobeOutdoorTemp;
+import eu.moeebius.usermodelling.systems.windows.rijaetal2007.RijalEtAl2007GlobeTemp;
+import eu.moeebius.usermodelling.systems.windows.rijaetal2007.RijalEtAl2007OutdoorTemp;
+import eu.moeebius.usermodelling.systems.windows.rijaetal2008.RijalEtAl2008GlobeOutdoorTemp;
+import org.apache.commons.math3.linear.RealMatrix;
+
+import java.util.Arrays;
+
+/**
+ * Evaluates one logistic regression equation of a User Model over a batch of rooms. The coefficients are read from the model
+ * once, the action drives are given column-wise (one array per drive, one entry per room), and the logit is accumulated one
+ * drive column at a time over the whole batch. These loops are plain multiply-adds over primitive arrays with no calls or
+ * branches, which the JIT compiler turns into SIMD code; drives with a zero coefficient are skipped. The terms are summed in
+ * the same order as in the models, so the results are identical to calculateActionProbability.
+ * Supported are the 9-term equations of HaldiRobinson2009Params and the 2- and 3-term equations of the HaldiRobinson2008
+ * and RijalEtAl2007/2008 models, also when shared through a {@link UserModelHandle}.
+ * @author Georgios D. Kontes
+ */
+public class LogisticBatchEvaluator {
+
+    private final int[] drives;
+    private final double[] coefficients;
+    private final double intercept;
+    private final boolean supported;
+    private String modelName = "logistic equation";
+
+    /**
+     * Creates an evaluator for an explicit equation p = exp(z) / (1 + exp(z)), z = sum(coefficients[k] * drive k) + intercept
+     * @param coefficients	The coefficient of every drive column
+     * @param intercept	    The intercept
+     */
+    public LogisticBatchEvaluator(double[] coefficients, double intercept) {
+        this(coefficients, intercept, true);
+    }
+
+    private LogisticBatchEvaluator(double[] coefficients, double intercept, boolean supported) {
+        int used = 0;
+        for (double coefficient : coefficients) {
+            if (coefficient != 0) {
+                used++;
+            }
+        }
+        this.drives = new int[used];
+        this.coefficients = new double[used];
+        for (int k = 0, i = 0; k < coefficients.length; k++) {
+            if (coefficients[k] != 0) {
+                this.drives[i] = k;
+                this.coefficients[i++] = coefficients[k];
+            }
+        }
+        this.intercept = intercept;
+        this.supported = supported;
+    }
+
+    /**
+     * Creates an evaluator for the equation a model uses in a combination of states, with the model's current parameters.
+     * For combinations the model does not cover the evaluator returns 0, like the model itself.
+     * @param model	                    A HaldiRobinson2009Params, HaldiRobinson2008 or RijalEtAl2007/2008 model
+     * @param userType	                The user type
+     * @param transitionState	        Markov transitions for occupancy status
+     * @param transitionSystemState	    Markov transitions for controllable system status
+     * @return	The evaluator
+     * @throws IllegalArgumentException	If the model is not one of the supported models
+     */
+    public static LogisticBatchEvaluator forModel(UserModel model, UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                                                  TransitionSystemState.TRANSITION_STATES transitionSystemState) {
+        LogisticBatchEvaluator evaluator = create(model, userType, transitionState, transitionSystemState);
+        evaluator.modelName = model.getName();
+        return evaluator;
+    }
+
+    /**
+     * Checks whether {@link #forModel} can create an evaluator for a model
+     * @param model	The User Model
+     * @return	true if the model is one of the supported models
+     */
+    public static boolean supports(UserModel model) {
+        Class<? extends UserModel> type = model instanceof UserModelHandle ? ((UserModelHandle) model).getModelClass() : model.getClass();
+        return HaldiRobinson2009Params.class.isAssignableFrom(type) || modelledTransition(type) != null;
+    }
+
+    private static TransitionSystemState.TRANSITION_STATES modelledTransition(Class<? extends UserModel> type) {
+        if (HaldiRobinson2008IndoorOutdoorTemp.class.isAssignableFrom(type) || HaldiRobinson2008IndoorTemp.class.isAssignableFrom(type)
+                || HaldiRobinson2008OutdoorTemp.class.isAssignableFrom(type)) {
+            return TransitionSystemState.TRANSITION_STATES.OPEN_CLOSE;
+        } else if (RijalEtAl2007GlobeOutdoorTemp.class.isAssignableFrom(type) || RijalEtAl2007GlobeTemp.class.isAssignableFrom(type)
+                || RijalEtAl2007OutdoorTemp.class.isAssignableFrom(type) || RijalEtAl2008GlobeOutdoorTemp.class.isAssignableFrom(type)) {
+            return TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN;
+        }
+        return null;
+    }
+
+    private static LogisticBatchEvaluator create(UserModel model, UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                                                 TransitionSystemState.TRANSITION_STATES transitionSystemState) {
+        RealMatrix parameters = model.getParameters();
+        Class<? extends UserModel> type = model instanceof UserModelHandle ? ((UserModelHandle) model).getModelClass() : model.getClass();
+        if (HaldiRobinson2009Params.class.isAssignableFrom(type)) {
+            int row = haldiRobinson2009Row(userType, transitionState, transitionSystemState);
+            if (row < 0) {
+                return new LogisticBatchEvaluator(new double[0], 0, false);
+            }
+            int columns = parameters.getColumnDimension();
+            double[] coefficients = new double[columns - 1];
+            for (int k = 0; k < columns - 1; k++) {
+                coefficients[k] = parameters.getEntry(row, k);
+            }
+            return new LogisticBatchEvaluator(coefficients, parameters.getEntry(row, columns - 1));
+        }
+        TransitionSystemState.TRANSITION_STATES modelledTransition = modelledTransition(type);
+        if (modelledTransition == null) {
+            throw new IllegalArgumentException("No batch evaluator for " + type.getSimpleName());
+        }
+        if (transitionSystemState != modelledTransition || transitionState != TransitionOccupantState.TRANSITION_STATES.ALL_STATES
+                || userType != UserType.USER_TYPES.UNKNOWN) {
+            return new LogisticBatchEvaluator(new double[0], 0, false);
+        }
+        int rows = parameters.getRowDimension();
+        double[] coefficients = new double[rows - 1];
+        for (int k = 0; k < rows - 1; k++) {
+            coefficients[k] = parameters.getEntry(k, 0);
+        }
+        return new LogisticBatchEvaluator(coefficients, parameters.getEntry(rows - 1, 0));
+    }
+
+    private static int haldiRobinson2009Row(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                                            TransitionSystemState.TRANSITION_STATES transitionSystemState) {
+        if (userType != UserType.USER_TYPES.UNKNOWN || transitionState == TransitionOccupantState.TRANSITION_STATES.ALL_STATES) {
+            return -1;
+        }
+        switch (transitionSystemState) {
+            case CLOSE_OPEN:
+                return transitionState.ordinal();
+            case OPEN_CLOSE:
+                return 3 + transitionState.ordinal();
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Calculates the probability of action of one room, with the same terms in the same order as the batch
+     * @param roomDrives	The drives of the room, indexed by column
+     * @param columns	    The column of every drive of the model
+     * @return	The probability of action
+     */
+    double calculateActionProbability(double[] roomDrives, int[] columns) {
+        if (!this.supported) {
+            return 0;
+        }
+        double logit = 0;
+        if (this.drives.length > 0) {
+            logit = this.coefficients[0] * roomDrives[columns[this.drives[0]]];
+        }
+        for (int k = 1; k < this.drives.length; k++) {
+            logit += this.coefficients[k] * roomDrives[columns[this.drives[k]]];
+        }
+        double odds = Math.exp(logit + this.intercept);
+        return odds / (1 + odds);
+    }
+
+    /**
+     * Calculates the probabilities of action for a range of rooms
+     * @param driveColumns	    The action drives, one array per drive (in the model's drive order) holding one value per room
+     * @param from	            The first room (inclusive)
+     * @param to	            The last room (exclusive)
+     * @param probabilities	    Receives the probability of room r at index r - from
+     */
+    public void calculateActionProbabilities(double[][] driveColumns, int from, int to, double[] probabilities) {
+        int length = to - from;
+        if (!this.supported) {
+            Arrays.fill(probabilities, 0, length, 0);
+            return;
+        }
+        BatchEvaluationEvent event = new BatchEvaluationEvent();
+        event.begin();
+        if (this.drives.length == 0) {
+            Arrays.fill(probabilities, 0, length, 0);
+        } else {
+            double coefficient = this.coefficients[0];
+            double[] column = driveColumns[this.drives[0]];
+            for (int i = 0; i < length; i++) {
+                probabilities[i] = coefficient * column[from + i];
+            }
+        }
+        for (int k = 1; k < this.drives.length; k++) {
+            double coefficient = this.coefficients[k];
+            double[] column = driveColumns[this.drives[k]];
+            for (int i = 0; i < length; i++) {
+                probabilities[i] += coefficient * column[from + i];
+            }
+        }
+        double intercept = this.intercept;
+        for (int i = 0; i < length; i++) {
+            double odds = Math.exp(probabilities[i] + intercept);
+            probabilities[i] = odds / (1 + odds);
+        }
+        if (event.shouldCommit()) {
+            event.evaluator = "LogisticBatchEvaluator";
+            event.model = this.modelName;
+            event.batchSize = length;
+            event.models = 1;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.batch;
+
+import eu.moeebius.usermodelling.events.BatchEvaluationEvent;
+import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
+import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
+import eu.moeebius.usermodelling.interfaces.UserModel;
+import eu.moeebius.usermodelling.interfaces.UserType;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+
+import java.util.Arrays;
+
+/**
+ * Evaluates several User Models side by side over one batch of rooms that share the same action drives (e.g. a window model
+ * and a blinds model driven by the same indoor and outdoor temperatures). The drives are given column-wise, one array per
+ * drive with one entry per room; every column is read once per room and the probabilities of all models are written as an
+ * N-wide block per room. Each model is evaluated for a fixed combination of states and picks its own drives from the shared
+ * columns. Models supported by {@link LogisticBatchEvaluator} are evaluated inline from their coefficients, which are read
+ * when the model is added and read again whenever its parameters differ from them at the start of a call; the others are
+ * called through calculateActionProbability.
+ * Instances keep reusable buffers and must not be shared between threads.
+ * @author Georgios D. Kontes
+ */
+public class UserModelGroup {
+
+    private UserModel[] models = new UserModel[0];
+    private int[][] driveColumns = new int[0][];
+    private UserType.USER_TYPES[] userTypes = new UserType.USER_TYPES[0];
+    private TransitionOccupantState.TRANSITION_STATES[] transitionStates = new TransitionOccupantState.TRANSITION_STATES[0];
+    private TransitionSystemState.TRANSITION_STATES[] transitionSystemStates = new TransitionSystemState.TRANSITION_STATES[0];
+    private Array2DRowRealMatrix[] actionDrives = new Array2DRowRealMatrix[0];
+    private LogisticBatchEvaluator[] evaluators = new LogisticBatchEvaluator[0];
+    private RealMatrix[] evaluatorParameters = new RealMatrix[0];
+    private double[] roomDrives = new double[0];
+    private int columnCount = 0;
+
+    /**
+     * Adds a model to the group
+     * @param model	                    The User Model
+     * @param driveColumns	            For every action drive of the model, the index of the shared column holding it
+     * @param userType	                The user type the model is evaluated for
+     * @param transitionState	        Markov transitions for occupancy status
+     * @param transitionSystemState	    Markov transitions for controllable system status
+     * @return	The position of the model within each room's block of probabilities
+     */
+    public int addModel(UserModel model, int[] driveColumns, UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                        TransitionSystemState.TRANSITION_STATES transitionSystemState) {
+        for (int column : driveColumns) {
+            this.columnCount = Math.max(this.columnCount, column + 1);
+        }
+        int index = this.models.length;
+        this.models = append(this.models, model);
+        this.driveColumns = append(this.driveColumns, driveColumns.clone());
+        this.userTypes = append(this.userTypes, userType);
+        this.transitionStates = append(this.transitionStates, transitionState);
+        this.transitionSystemStates = append(this.transitionSystemStates, transitionSystemState);
+        this.actionDrives = append(this.actionDrives, new Array2DRowRealMatrix(driveColumns.length, 1));
+        this.evaluators = append(this.evaluators, null);
+        this.evaluatorParameters = append(this.evaluatorParameters, null);
+        this.roomDrives = new double[this.columnCount];
+        if (LogisticBatchEvaluator.supports(model)) {
+            this.buildEvaluator(index);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the number of models in the group, i.e. the width of each room's block of probabilities
+     * @return	The number of models
+     */
+    public int size() {
+        return this.models.length;
+    }
+
+    /**
+     * Returns a model of the group
+     * @param index	    The position of the model
+     * @return	The User Model
+     */
+    public UserModel getModel(int index) {
+        return this.models[index];
+    }
+
+    /**
+     * Calculates the probabilities of action of all models for a range of rooms
+     * @param driveColumns	    The shared action drives, one array per drive holding one value per room
+     * @param from	            The first room (inclusive)
+     * @param to	            The last room (exclusive)
+     * @param probabilities	    Receives the probabilities; the value of model m for room r is stored at (r - from) * size() + m
+     */
+    public void calculateActionProbabilities(double[][] driveColumns, int from, int to, double[] probabilities) {
+        BatchEvaluationEvent event = new BatchEvaluationEvent();
+        event.begin();
+        int width = this.models.length;
+        for (int m = 0; m < width; m++) {
+            if (this.evaluators[m] != null && !this.models[m].getParameters().equals(this.evaluatorParameters[m])) {
+                this.buildEvaluator(m);
+            }
+        }
+        double[] roomDrives = this.roomDrives;
+        for (int room = from; room < to; room++) {
+            for (int column = 0; column < this.columnCount; column++) {
+                roomDrives[column] = driveColumns[column][room];
+            }
+            int block = (room - from) * width;
+            for (int m = 0; m < width; m++) {
+                int[] columns = this.driveColumns[m];
+                LogisticBatchEvaluator evaluator = this.evaluators[m];
+                if (evaluator != null) {
+                    probabilities[block + m] = evaluator.calculateActionProbability(roomDrives, columns);
+                    continue;
+                }
+                double[][] modelDrives = this.actionDrives[m].getDataRef();
+                for (int i = 0; i < columns.length; i++) {
+                    modelDrives[i][0] = roomDrives[columns[i]];
+                }
+                probabilities[block + m] = this.models[m].calculateActionProbability(this.userTypes[m], this.transitionStates[m],
+                        this.transitionSystemStates[m], this.actionDrives[m]);
+            }
+        }
+        if (event.shouldCommit()) {
+            StringBuilder names = new StringBuilder();
+            for (UserModel model : this.models) {
+                names.append(names.length() == 0 ? "" : ",").append(model.getName());
+            }
+            event.evaluator = "UserModelGroup";
+            event.model = names.toString();
+            event.batchSize = to - from;
+            event.models = width;
+            event.commit();
+        }
+    }
+
+    private void buildEvaluator(int index) {
+        UserModel model = this.models[index];
+        this.evaluatorParameters[index] = model.getParameters().copy();
+        this.evaluators[index] = LogisticBatchEvaluator.forModel(model, this.userTypes[index], this.transitionStates[index],
+                this.transitionSystemStates[index]);
+    }
+
+    private static <T> T[] append(T[] array, T element) {
+        T[] appended = Arrays.copyOf(array, array.length + 1);
+        appended[array.length] = element;
+        return appended;
+    }
+}
@@ -0,0 +1,203 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.cache;
+
+import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
+import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
+import eu.moeebius.usermodelling.interfaces.UserModel;
+import eu.moeebius.usermodelling.interfaces.UserType;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+
+/**
+ * Wraps a User Model with a {@link QuantizedProbabilityCache}. The action drives are quantized to a fixed resolution (e.g.
+ * the 0.1 degC of BMS temperature readings) and the wrapped model is evaluated at the quantized drives, so all calls that
+ * fall in the same quantization cell return the same probability. The cache is chosen per model instance; after a warm-up
+ * number of lookups it is bypassed automatically if its hit rate stays below a threshold (as can happen for models with many
+ * drivers such as HaldiRobinson2009Params). Bypassed calls still evaluate the model at the quantized drives, so results do
+ * not depend on whether the cache is in use, and after a number of bypassed calls the cache is re-enabled to probe the hit
+ * rate again, in case the drives have settled.
+ * @author Georgios D. Kontes
+ */
+public class CachedUserModel implements UserModel {
+
+    private final UserModel model;
+    private final int driveCount;
+    private final double resolution;
+    private final QuantizedProbabilityCache cache;
+    private final ThreadLocal<Scratch> scratch;
+    private long warmUpLookups = 10000;
+    private double minimumHitRate = 0.5;
+    private long reprobeLookups = 1000000;
+    private volatile boolean bypassed = false;
+
+    /**
+     * Wraps a model
+     * @param model	        The User Model to cache
+     * @param driveCount	The number of action drives of the model
+     * @param resolution	The quantization step of the drives (e.g. 0.1 for temperatures in 0.1 degC)
+     * @param capacity	    The maximum number of cached probabilities
+     */
+    public CachedUserModel(UserModel model, int driveCount, double resolution, int capacity) {
+        this.model = model;
+        this.driveCount = driveCount;
+        this.resolution = resolution;
+        this.cache = new QuantizedProbabilityCache(driveCount, capacity);
+        this.scratch = ThreadLocal.withInitial(() -> new Scratch(driveCount));
+    }
+
+    /**
+     * Sets the automatic bypass policy. After the given number of lookups the cache is bypassed if its hit rate is below the
+     * minimum; a minimum hit rate of 0 disables the bypass. Once a thread has made the given number of bypassed calls, the
+     * cache is emptied and re-enabled so that its hit rate is judged again.
+     * @param warmUpLookups	    The number of lookups before the hit rate is judged (default 10000)
+     * @param minimumHitRate	The hit rate below which the cache is bypassed (default 0.5)
+     * @param reprobeLookups	The number of bypassed calls of a thread before the cache is re-enabled (default 1000000),
+     *                          or 0 to bypass it until {@link #reset()}
+     */
+    public void setBypassPolicy(long warmUpLookups, double minimumHitRate, long reprobeLookups) {
+        this.warmUpLookups = warmUpLookups;
+        this.minimumHitRate = minimumHitRate;
+        this.reprobeLookups = reprobeLookups;
+    }
+
+    /**
+     * Returns whether the cache is bypassed because of a poor hit rate
+     * @return	true if calls go directly to the wrapped model (at the quantized drives)
+     */
+    public boolean isBypassed() {
+        return this.bypassed;
+    }
+
+    /**
+     * Returns the cache in front of the model, e.g. to read its hit statistics
+     * @return	The cache
+     */
+    public QuantizedProbabilityCache getCache() {
+        return this.cache;
+    }
+
+    /**
+     * Returns the wrapped model
+     * @return	The User Model
+     */
+    public UserModel getModel() {
+        return this.model;
+    }
+
+    /**
+     * Empties the cache, resets its statistics and re-enables it if it had been bypassed
+     */
+    public void reset() {
+        this.cache.clear();
+        this.bypassed = false;
+    }
+
+    @Override
+    public void setName(String name) {
+        this.model.setName(name);
+    }
+
+    @Override
+    public String getName() {
+        return this.model.getName();
+    }
+
+    @Override
+    public void setParameters(RealMatrix parameters) {
+        this.model.setParameters(parameters);
+        this.reset();
+    }
+
+    @Override
+    public RealMatrix getParameters() {
+        return this.model.getParameters();
+    }
+
+    @Override
+    public double calculateActionProbability(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                                             TransitionSystemState.TRANSITION_STATES transitionSystemState, RealMatrix actionDrives) {
+        Scratch scratch = this.scratch.get();
+        long[] quantized = scratch.quantized;
+        for (int i = 0; i < this.driveCount; i++) {
+            quantized[i] = Math.round(actionDrives.getEntry(i, 0) / this.resolution);
+        }
+        if (this.bypassed) {
+            if (this.reprobeLookups > 0 && ++scratch.bypassedLookups >= this.reprobeLookups) {
+                scratch.bypassedLookups = 0;
+                this.reset();
+            }
+            return this.evaluateQuantized(scratch, userType, transitionState, transitionSystemState);
+        }
+        long state = (transitionSystemState.ordinal() << 16) | (transitionState.ordinal() << 8) | userType.ordinal();
+        double actionProbability = this.cache.get(state, quantized);
+        if (Double.isNaN(actionProbability)) {
+            actionProbability = this.evaluateQuantized(scratch, userType, transitionState, transitionSystemState);
+            this.cache.put(state, quantized, actionProbability);
+            this.checkHitRate();
+        }
+        return actionProbability;
+    }
+
+    @Override
+    public double predictAction(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                                TransitionSystemState.TRANSITION_STATES transitionSystemState, RealMatrix actionDrives) {
+        double actionProbability = this.calculateActionProbability(userType, transitionState, transitionSystemState,actionDrives);
+        double randomDraw = Math.random();
+        double action = 0;
+        if(randomDraw <= actionProbability){
+            action = 1;
+        }
+        return action;
+    }
+
+    private double evaluateQuantized(Scratch scratch, UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                                     TransitionSystemState.TRANSITION_STATES transitionSystemState) {
+        for (int i = 0; i < this.driveCount; i++) {
+            scratch.driveData[i][0] = scratch.quantized[i] * this.resolution;
+        }
+        return this.model.calculateActionProbability(userType, transitionState, transitionSystemState, scratch.drives);
+    }
+
+    private void checkHitRate() {
+        if (this.minimumHitRate > 0 && this.cache.getHits() + this.cache.getMisses() >= this.warmUpLookups
+                && this.cache.getHitRate() < this.minimumHitRate) {
+            this.bypassed = true;
+        }
+    }
+
+    /**
+     * The buffers of one thread, reused across calls
+     */
+    private static final class Scratch {
+
+        final long[] quantized;
+        final Array2DRowRealMatrix drives;
+        final double[][] driveData;
+        long bypassedLookups;
+
+        Scratch(int driveCount) {
+            this.quantized = new long[driveCount];
+            this.drives = new Array2DRowRealMatrix(driveCount, 1);
+            this.driveData = this.drives.getDataRef();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.cache;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A bounded cache of probabilities of action keyed on a state word (the ordinals of the user type and transition states)
+ * plus the quantized action drives. Keys and values are held in primitive arrays (no boxing); each key hashes to a probe
+ * window of {@value #WAYS} consecutive slots, and when the window is full one of its entries is evicted with the CLOCK
+ * (second chance) policy. Lookups use optimistic reads, so any number of concurrent readers proceed without locking;
+ * insertions are serialised.
+ * @author Georgios D. Kontes
+ */
+public class QuantizedProbabilityCache {
+
+    static final int WAYS = 4;
+    private static final long PRESENT = 1L << 62;
+
+    private final int stride;
+    private final int windowMask;
+    private final long[] keys;
+    private final double[] values;
+    private final byte[] referenced;
+    private final int[] clockHands;
+    private final StampedLock lock = new StampedLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates the cache
+     * @param driveCount	The number of quantized drives in every key
+     * @param capacity	    The maximum number of cached probabilities (rounded up to a power of two, at least {@value #WAYS})
+     */
+    public QuantizedProbabilityCache(int driveCount, int capacity) {
+        int slots = Integer.highestOneBit(Math.max(WAYS, capacity) - 1) << 1;
+        this.stride = 1 + driveCount;
+        this.windowMask = slots / WAYS - 1;
+        this.keys = new long[slots * this.stride];
+        this.values = new double[slots];
+        this.referenced = new byte[slots];
+        this.clockHands = new int[slots / WAYS];
+    }
+
+    /**
+     * Returns the number of slots of the cache
+     * @return	The capacity
+     */
+    public int getCapacity() {
+        return this.values.length;
+    }
+
+    /**
+     * Looks up a probability
+     * @param state	        The state word (user type and transition state ordinals); must not use bits 62 and 63
+     * @param quantized	    The quantized drives, one per drive
+     * @return	The cached probability, or NaN if the key is not cached
+     */
+    public double get(long state, long[] quantized) {
+        int window = this.window(state, quantized);
+        long stamp = this.lock.tryOptimisticRead();
+        double value = this.find(window, state, quantized);
+        if (!this.lock.validate(stamp)) {
+            stamp = this.lock.readLock();
+            try {
+                value = this.find(window, state, quantized);
+            } finally {
+                this.lock.unlockRead(stamp);
+            }
+        }
+        if (Double.isNaN(value)) {
+            this.misses.increment();
+        } else {
+            this.hits.increment();
+        }
+        return value;
+    }
+
+    /**
+     * Stores a probability, evicting an entry of the probe window if it is full
+     * @param state	        The state word (user type and transition state ordinals); must not use bits 62 and 63
+     * @param quantized	    The quantized drives, one per drive
+     * @param probability	The probability to cache
+     */
+    public void put(long state, long[] quantized, double probability) {
+        int window = this.window(state, quantized);
+        long stamp = this.lock.writeLock();
+        try {
+            int first = window * WAYS;
+            int slot = -1;
+            for (int way = 0; way < WAYS && slot < 0; way++) {
+                int candidate = first + way;
+                if ((this.keys[candidate * this.stride] & PRESENT) == 0 || this.matches(candidate, state, quantized)) {
+                    slot = candidate;
+                }
+            }
+            if (slot < 0) {
+                int hand = this.clockHands[window];
+                while (this.referenced[first + hand] != 0) {
+                    this.referenced[first + hand] = 0;
+                    hand = (hand + 1) % WAYS;
+                }
+                slot = first + hand;
+                this.clockHands[window] = (hand + 1) % WAYS;
+            }
+            int base = slot * this.stride;
+            this.keys[base] = state | PRESENT;
+            System.arraycopy(quantized, 0, this.keys, base + 1, this.stride - 1);
+            this.values[slot] = probability;
+            this.referenced[slot] = 1;
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes all entries and resets the hit statistics
+     */
+    public void clear() {
+        long stamp = this.lock.writeLock();
+        try {
+            Arrays.fill(this.keys, 0);
+            Arrays.fill(this.referenced, (byte) 0);
+            this.hits.reset();
+            this.misses.reset();
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns the number of lookups that found their key
+     * @return	The number of hits
+     */
+    public long getHits() {
+        return this.hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that did not find their key
+     * @return	The number of misses
+     */
+    public long getMisses() {
+        return this.misses.sum();
+    }
+
+    /**
+     * Returns the fraction of lookups that found their key
+     * @return	The hit rate, or 0 before the first lookup
+     */
+    public double getHitRate() {
+        long hits = this.hits.sum();
+        long lookups = hits + this.misses.sum();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    private double find(int window, long state, long[] quantized) {
+        int first = window * WAYS;
+        for (int way = 0; way < WAYS; way++) {
+            int slot = first + way;
+            if (this.matches(slot, state, quantized)) {
+                double value = this.values[slot];
+                this.referenced[slot] = 1;
+                return value;
+            }
+        }
+        return Double.NaN;
+    }
+
+    private boolean matches(int slot, long state, long[] quantized) {
+        int base = slot * this.stride;
+        if (this.keys[base] != (state | PRESENT)) {
+            return false;
+        }
+        for (int i = 1; i < this.stride; i++) {
+            if (this.keys[base + i] != quantized[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int window(long state, long[] quantized) {
+        long hash = state * 0x9E3779B97F4A7C15L;
+        for (int i = 0; i < this.stride - 1; i++) {
+            hash = (hash ^ quantized[i]) * 0xBF58476D1CE4E5B9L;
+        }
+        hash ^= hash >>> 31;
+        return (int) hash & this.windowMask;
+    }
+}
@@ -0,0 +1,88 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.cosim;
+
+import java.io.IOException;
+
+/**
+ * Defines a co-simulation slave with FMI-like semantics: it is initialized once, then advanced by a master in fixed
+ * communication steps, exchanging values through flat primitive buffers. Its internal state can be saved and restored
+ * (e.g. for rollback by the master).
+ * @author Georgios D. Kontes
+ */
+public interface CoSimulationSlave {
+
+    /**
+     * Returns the number of input values expected by {@link #setInputs(double[])}
+     * @return	The input size
+     */
+    int getInputSize();
+
+    /**
+     * Returns the number of output values written by {@link #getOutputs(double[])}
+     * @return	The output size
+     */
+    int getOutputSize();
+
+    /**
+     * Initializes the slave
+     * @param startTime	    The simulation start time (s)
+     * @param seed	        The seed of the slave's random streams
+     * @throws IOException	If the slave is remote and the transport fails
+     */
+    void initialize(double startTime, long seed) throws IOException;
+
+    /**
+     * Sets the inputs of the next communication step
+     * @param inputs	The input values (at least getInputSize() of them)
+     * @throws IOException	If the slave is remote and the transport fails
+     */
+    void setInputs(double[] inputs) throws IOException;
+
+    /**
+     * Advances the slave by one communication step
+     * @param currentTime	The time at the start of the step (s)
+     * @param stepSize	    The length of the step (s)
+     * @throws IOException	If the slave is remote and the transport fails
+     */
+    void doStep(double currentTime, double stepSize) throws IOException;
+
+    /**
+     * Copies the outputs of the last communication step
+     * @param outputs	Receives the output values (at least getOutputSize() of them)
+     * @throws IOException	If the slave is remote and the transport fails
+     */
+    void getOutputs(double[] outputs) throws IOException;
+
+    /**
+     * Serializes the internal state of the slave
+     * @return	The state
+     * @throws IOException	If the slave is remote and the transport fails
+     */
+    byte[] getState() throws IOException;
+
+    /**
+     * Restores a state obtained from {@link #getState()}
+     * @param state	    The state
+     * @throws IOException	If the slave is remote and the transport fails
+     */
+    void setState(byte[] state) throws IOException;
+}
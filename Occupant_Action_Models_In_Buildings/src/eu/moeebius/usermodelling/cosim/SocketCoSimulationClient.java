@@ -0,0 +1,146 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.cosim;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+
+/**
+ * A {@link CoSimulationSlave} proxy for a slave served by a {@link SocketCoSimulationServer}. Inputs are buffered locally
+ * and sent together with the step command, so a communication step costs one round trip.
+ * @author Georgios D. Kontes
+ */
+public class SocketCoSimulationClient implements CoSimulationSlave, Closeable {
+
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+    private final double[] inputs;
+    private final double[] outputs;
+
+    /**
+     * Connects to a server on the loopback interface
+     * @param port	The server port
+     * @throws IOException	If the connection fails
+     */
+    public SocketCoSimulationClient(int port) throws IOException {
+        this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+        this.socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(this.socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(this.socket.getOutputStream()));
+        this.out.writeByte(SocketCoSimulationServer.DESCRIBE);
+        this.out.flush();
+        this.readStatus();
+        this.inputs = new double[this.in.readInt()];
+        this.outputs = new double[this.in.readInt()];
+    }
+
+    @Override
+    public int getInputSize() {
+        return this.inputs.length;
+    }
+
+    @Override
+    public int getOutputSize() {
+        return this.outputs.length;
+    }
+
+    @Override
+    public void initialize(double startTime, long seed) throws IOException {
+        this.out.writeByte(SocketCoSimulationServer.INITIALIZE);
+        this.out.writeDouble(startTime);
+        this.out.writeLong(seed);
+        this.out.flush();
+        this.readStatus();
+    }
+
+    @Override
+    public void setInputs(double[] inputs) {
+        System.arraycopy(inputs, 0, this.inputs, 0, this.inputs.length);
+    }
+
+    @Override
+    public void doStep(double currentTime, double stepSize) throws IOException {
+        this.out.writeByte(SocketCoSimulationServer.STEP);
+        this.out.writeDouble(currentTime);
+        this.out.writeDouble(stepSize);
+        this.out.writeInt(this.inputs.length);
+        for (int i = 0; i < this.inputs.length; i++) {
+            this.out.writeDouble(this.inputs[i]);
+        }
+        this.out.flush();
+        this.readStatus();
+        for (int i = 0; i < this.outputs.length; i++) {
+            this.outputs[i] = this.in.readDouble();
+        }
+    }
+
+    @Override
+    public void getOutputs(double[] outputs) {
+        System.arraycopy(this.outputs, 0, outputs, 0, this.outputs.length);
+    }
+
+    @Override
+    public byte[] getState() throws IOException {
+        this.out.writeByte(SocketCoSimulationServer.GET_STATE);
+        this.out.flush();
+        this.readStatus();
+        byte[] state = new byte[this.in.readInt()];
+        this.in.readFully(state);
+        return state;
+    }
+
+    @Override
+    public void setState(byte[] state) throws IOException {
+        this.out.writeByte(SocketCoSimulationServer.SET_STATE);
+        this.out.writeInt(state.length);
+        this.out.write(state);
+        this.out.flush();
+        this.readStatus();
+    }
+
+    /**
+     * Terminates the remote session and closes the connection
+     * @throws IOException	If the transport fails
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            this.out.writeByte(SocketCoSimulationServer.TERMINATE);
+            this.out.flush();
+            this.readStatus();
+        } finally {
+            this.socket.close();
+        }
+    }
+
+    private void readStatus() throws IOException {
+        if (this.in.readByte() != SocketCoSimulationServer.OK) {
+            throw new IOException("Remote slave error: " + this.in.readUTF());
+        }
+    }
+}
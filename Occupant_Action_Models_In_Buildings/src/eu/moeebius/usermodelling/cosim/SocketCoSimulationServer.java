@@ -0,0 +1,190 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.cosim;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Serves a {@link CoSimulationSlave} to one master at a time over a TCP socket bound to the loopback interface. Messages
+ * start with a command byte; a communication step (inputs, step and outputs) is a single round trip. Every request is read
+ * completely before it is processed (a step carries the number of its inputs), so a rejected request is answered with an
+ * error and the connection stays in sync. Exchange buffers are allocated once per connection and initialization.
+ * @author Georgios D. Kontes
+ */
+public class SocketCoSimulationServer implements Closeable {
+
+    static final byte INITIALIZE = 1;
+    static final byte STEP = 2;
+    static final byte GET_STATE = 3;
+    static final byte SET_STATE = 4;
+    static final byte DESCRIBE = 5;
+    static final byte TERMINATE = 6;
+    static final byte OK = 0;
+    static final byte ERROR = -1;
+
+    private final CoSimulationSlave slave;
+    private final ServerSocket serverSocket;
+
+    /**
+     * Creates a server on a loopback port
+     * @param slave	The slave to serve
+     * @param port	The port, or 0 for an ephemeral one
+     * @throws IOException	If the port cannot be bound
+     */
+    public SocketCoSimulationServer(CoSimulationSlave slave, int port) throws IOException {
+        this.slave = slave;
+        this.serverSocket = new ServerSocket(port, 1, InetAddress.getLoopbackAddress());
+    }
+
+    /**
+     * Returns the port the server listens to
+     * @return	The port
+     */
+    public int getPort() {
+        return this.serverSocket.getLocalPort();
+    }
+
+    /**
+     * Starts serving on a daemon thread, until the server is closed
+     * @return	The serving thread
+     */
+    public Thread start() {
+        Thread thread = new Thread(() -> {
+            while (!this.serverSocket.isClosed()) {
+                try (Socket socket = this.serverSocket.accept()) {
+                    this.serve(socket);
+                } catch (IOException e) {
+                    // closed server or broken connection: accept the next one, if any
+                }
+            }
+        }, "cosim-server-" + this.getPort());
+        thread.setDaemon(true);
+        thread.start();
+        return thread;
+    }
+
+    /**
+     * Serves one master connection until it terminates or disconnects
+     * @param socket	The connection
+     * @throws IOException	If the transport fails
+     */
+    public void serve(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        double[] inputs = new double[0];
+        double[] outputs = new double[0];
+        boolean initialized = false;
+        while (true) {
+            byte command;
+            try {
+                command = in.readByte();
+            } catch (EOFException e) {
+                return;
+            }
+            try {
+                switch (command) {
+                    case DESCRIBE:
+                        out.writeByte(OK);
+                        out.writeInt(this.slave.getInputSize());
+                        out.writeInt(this.slave.getOutputSize());
+                        break;
+                    case INITIALIZE:
+                        double startTime = in.readDouble();
+                        long seed = in.readLong();
+                        initialized = false;
+                        this.slave.initialize(startTime, seed);
+                        inputs = new double[this.slave.getInputSize()];
+                        outputs = new double[this.slave.getOutputSize()];
+                        initialized = true;
+                        out.writeByte(OK);
+                        break;
+                    case STEP:
+                        double currentTime = in.readDouble();
+                        double stepSize = in.readDouble();
+                        int inputCount = in.readInt();
+                        if (inputCount < 0) {
+                            throw new IOException("Negative input count " + inputCount);
+                        }
+                        if (inputCount != inputs.length) {
+                            for (int i = 0; i < inputCount; i++) {
+                                in.readDouble();
+                            }
+                        } else {
+                            for (int i = 0; i < inputCount; i++) {
+                                inputs[i] = in.readDouble();
+                            }
+                        }
+                        if (!initialized) {
+                            throw new IllegalStateException("Step before initialization");
+                        }
+                        if (inputCount != inputs.length) {
+                            throw new IllegalArgumentException("Expected " + inputs.length + " inputs, received " + inputCount);
+                        }
+                        this.slave.setInputs(inputs);
+                        this.slave.doStep(currentTime, stepSize);
+                        this.slave.getOutputs(outputs);
+                        out.writeByte(OK);
+                        for (int i = 0; i < outputs.length; i++) {
+                            out.writeDouble(outputs[i]);
+                        }
+                        break;
+                    case GET_STATE:
+                        byte[] state = this.slave.getState();
+                        out.writeByte(OK);
+                        out.writeInt(state.length);
+                        out.write(state);
+                        break;
+                    case SET_STATE:
+                        byte[] newState = new byte[in.readInt()];
+                        in.readFully(newState);
+                        this.slave.setState(newState);
+                        out.writeByte(OK);
+                        break;
+                    case TERMINATE:
+                        out.writeByte(OK);
+                        out.flush();
+                        return;
+                    default:
+                        throw new IllegalArgumentException("Unknown command " + command);
+                }
+            } catch (RuntimeException e) {
+                out.writeByte(ERROR);
+                out.writeUTF(String.valueOf(e.getMessage()));
+            }
+            out.flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.serverSocket.close();
+    }
+}
@@ -0,0 +1,141 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.cosim;
+
+import java.io.IOException;
+
+/**
+ * A minimal fixed-step co-simulation master, standing in for the building simulator when testing a
+ * {@link CoSimulationSlave}: per communication step it fills the inputs, steps the slave, reads the outputs and records
+ * the wall-clock cost of the exchange.
+ * @author Georgios D. Kontes
+ */
+public class StandInMaster {
+
+    /**
+     * Provides the slave inputs of each communication step, standing in for the building simulator outputs
+     */
+    public interface InputProvider {
+
+        /**
+         * Fills the inputs of a communication step
+         * @param step	    The step number
+         * @param time	    The time at the start of the step (s)
+         * @param outputs	The slave outputs of the previous step
+         * @param inputs	Receives the slave inputs
+         */
+        void fillInputs(long step, double time, double[] outputs, double[] inputs);
+    }
+
+    private final CoSimulationSlave slave;
+    private final double stepSize;
+    private final double[] inputs;
+    private final double[] outputs;
+    private double time;
+    private long steps;
+    private long totalNanos;
+    private long maxNanos;
+
+    /**
+     * Creates a master for a slave
+     * @param slave	    The slave
+     * @param stepSize	The communication step size (s)
+     */
+    public StandInMaster(CoSimulationSlave slave, double stepSize) {
+        this.slave = slave;
+        this.stepSize = stepSize;
+        this.inputs = new double[slave.getInputSize()];
+        this.outputs = new double[slave.getOutputSize()];
+    }
+
+    /**
+     * Initializes the slave
+     * @param startTime	The simulation start time (s)
+     * @param seed	    The seed of the slave's random streams
+     * @throws IOException	If the transport fails
+     */
+    public void initialize(double startTime, long seed) throws IOException {
+        this.slave.initialize(startTime, seed);
+        this.slave.getOutputs(this.outputs);
+        this.time = startTime;
+    }
+
+    /**
+     * Runs a number of communication steps
+     * @param steps	    The number of steps
+     * @param provider	The input provider
+     * @throws IOException	If the transport fails
+     */
+    public void run(long steps, InputProvider provider) throws IOException {
+        for (long i = 0; i < steps; i++) {
+            provider.fillInputs(this.steps, this.time, this.outputs, this.inputs);
+            long start = System.nanoTime();
+            this.slave.setInputs(this.inputs);
+            this.slave.doStep(this.time, this.stepSize);
+            this.slave.getOutputs(this.outputs);
+            long elapsed = System.nanoTime() - start;
+            this.totalNanos += elapsed;
+            this.maxNanos = Math.max(this.maxNanos, elapsed);
+            this.time += this.stepSize;
+            this.steps++;
+        }
+    }
+
+    /**
+     * Returns the slave outputs of the last step (live buffer)
+     * @return	The outputs
+     */
+    public double[] getOutputs() {
+        return this.outputs;
+    }
+
+    /**
+     * Returns the current simulation time
+     * @return	The time (s)
+     */
+    public double getTime() {
+        return this.time;
+    }
+
+    /**
+     * Returns the number of steps run
+     * @return	The number of steps
+     */
+    public long getSteps() {
+        return this.steps;
+    }
+
+    /**
+     * Returns the mean wall-clock cost of a coupled step
+     * @return	The mean cost (ns)
+     */
+    public double getMeanStepNanos() {
+        return this.steps == 0 ? 0 : (double) this.totalNanos / this.steps;
+    }
+
+    /**
+     * Returns the maximum wall-clock cost of a coupled step
+     * @return	The maximum cost (ns)
+     */
+    public long getMaxStepNanos() {
+        return this.maxNanos;
+    }
+}
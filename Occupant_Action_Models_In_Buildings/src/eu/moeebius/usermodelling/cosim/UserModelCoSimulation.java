@@ -0,0 +1,241 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.cosim;
+
+import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
+import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
+import eu.moeebius.usermodelling.interfaces.UserModel;
+import eu.moeebius.usermodelling.interfaces.UserType;
+import eu.moeebius.usermodelling.random.SplitMix64;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A co-simulation slave over a set of User Models, each one controlling one system (e.g. the window of a room). Per unit
+ * the inputs are the occupancy transition (as the ordinal of TransitionOccupantState.TRANSITION_STATES) followed by the
+ * action drives of the model, and the outputs are the probability of action, the sampled action (1 or 0) and the resulting
+ * system state (1 = open). A closed system is evaluated with the CLOSE_OPEN probability and an open one with OPEN_CLOSE.
+ * A step whose occupancy inputs are not valid ordinals is rejected before any unit is advanced.
+ * All buffers are allocated at initialization, so a communication step allocates nothing. A saved state holds the time,
+ * and per unit the system state, the random stream and the outputs, so a master reads the same outputs after a rollback.
+ * @author Georgios D. Kontes
+ */
+public class UserModelCoSimulation implements CoSimulationSlave {
+
+    /**
+     * Output offset of the probability of action within a unit's outputs
+     */
+    public static final int PROBABILITY = 0;
+    /**
+     * Output offset of the sampled action within a unit's outputs
+     */
+    public static final int ACTION = 1;
+    /**
+     * Output offset of the system state within a unit's outputs
+     */
+    public static final int SYSTEM_OPEN = 2;
+    /**
+     * Number of outputs per unit
+     */
+    public static final int OUTPUTS_PER_UNIT = 3;
+
+    private static final TransitionOccupantState.TRANSITION_STATES[] OCCUPANT_STATES = TransitionOccupantState.TRANSITION_STATES.values();
+
+    private final List<UserModel> modelList = new ArrayList<>();
+    private final List<UserType.USER_TYPES> userTypeList = new ArrayList<>();
+    private final List<Integer> driveCountList = new ArrayList<>();
+    private UserModel[] models;
+    private UserType.USER_TYPES[] userTypes;
+    private int[] inputOffsets;
+    private double[][][] driveData;
+    private Array2DRowRealMatrix[] actionDrives;
+    private boolean[] open;
+    private long[] randomStates;
+    private double[] inputs;
+    private double[] outputs;
+    private double time;
+
+    /**
+     * Creates a slave without units
+     */
+    public UserModelCoSimulation() {}
+
+    /**
+     * Adds a unit; units must be added before initialization
+     * @param model	        The User Model of the unit
+     * @param driveCount	The number of action drives of the model
+     * @param userType	    The user type of the unit's occupant
+     * @return	The unit index
+     */
+    public int addUnit(UserModel model, int driveCount, UserType.USER_TYPES userType) {
+        if (this.models != null) {
+            throw new IllegalStateException("Units must be added before initialization");
+        }
+        this.modelList.add(model);
+        this.driveCountList.add(driveCount);
+        this.userTypeList.add(userType);
+        return this.modelList.size() - 1;
+    }
+
+    /**
+     * Returns the offset of a unit's inputs within the input buffer
+     * @param unit	The unit index
+     * @return	The offset of the unit's occupancy input, followed by its drives
+     */
+    public int getInputOffset(int unit) {
+        int offset = 0;
+        for (int i = 0; i < unit; i++) {
+            offset += 1 + this.driveCountList.get(i);
+        }
+        return offset;
+    }
+
+    /**
+     * Sets the system state of a unit after initialization, e.g. to start from an open window; initialization closes all
+     * systems
+     * @param unit	The unit index
+     * @param open	true if the system is open
+     * @throws IllegalStateException	If the slave is not initialized yet
+     */
+    public void setSystemOpen(int unit, boolean open) {
+        if (this.models == null) {
+            throw new IllegalStateException("System states can only be set after initialization");
+        }
+        this.open[unit] = open;
+        this.outputs[unit * OUTPUTS_PER_UNIT + SYSTEM_OPEN] = open ? 1 : 0;
+    }
+
+    @Override
+    public int getInputSize() {
+        return this.getInputOffset(this.modelList.size());
+    }
+
+    @Override
+    public int getOutputSize() {
+        return this.modelList.size() * OUTPUTS_PER_UNIT;
+    }
+
+    @Override
+    public void initialize(double startTime, long seed) {
+        int units = this.modelList.size();
+        this.models = this.modelList.toArray(new UserModel[units]);
+        this.userTypes = this.userTypeList.toArray(new UserType.USER_TYPES[units]);
+        this.inputOffsets = new int[units];
+        this.driveData = new double[units][][];
+        this.actionDrives = new Array2DRowRealMatrix[units];
+        this.open = new boolean[units];
+        this.randomStates = new long[units];
+        for (int unit = 0; unit < units; unit++) {
+            this.inputOffsets[unit] = this.getInputOffset(unit);
+            this.actionDrives[unit] = new Array2DRowRealMatrix(this.driveCountList.get(unit), 1);
+            this.driveData[unit] = this.actionDrives[unit].getDataRef();
+            this.randomStates[unit] = SplitMix64.seed(seed, unit);
+        }
+        this.inputs = new double[this.getInputSize()];
+        this.outputs = new double[this.getOutputSize()];
+        this.time = startTime;
+    }
+
+    @Override
+    public void setInputs(double[] inputs) {
+        System.arraycopy(inputs, 0, this.inputs, 0, this.inputs.length);
+    }
+
+    @Override
+    public void doStep(double currentTime, double stepSize) {
+        if (this.models == null) {
+            throw new IllegalStateException("Steps can only be taken after initialization");
+        }
+        for (int unit = 0; unit < this.models.length; unit++) {
+            double occupancy = this.inputs[this.inputOffsets[unit]];
+            if (!(occupancy >= 0 && occupancy < OCCUPANT_STATES.length && occupancy == Math.rint(occupancy))) {
+                throw new IllegalArgumentException("Invalid occupancy state " + occupancy + " of unit " + unit);
+            }
+        }
+        for (int unit = 0; unit < this.models.length; unit++) {
+            int offset = this.inputOffsets[unit];
+            double[][] drives = this.driveData[unit];
+            for (int i = 0; i < drives.length; i++) {
+                drives[i][0] = this.inputs[offset + 1 + i];
+            }
+            boolean open = this.open[unit];
+            double actionProbability = this.models[unit].calculateActionProbability(this.userTypes[unit], OCCUPANT_STATES[(int) this.inputs[offset]],
+                    open ? TransitionSystemState.TRANSITION_STATES.OPEN_CLOSE : TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN, this.actionDrives[unit]);
+            boolean action = SplitMix64.nextUniform(this.randomStates, unit) <= actionProbability;
+            if (action) {
+                open = !open;
+                this.open[unit] = open;
+            }
+            int output = unit * OUTPUTS_PER_UNIT;
+            this.outputs[output + PROBABILITY] = actionProbability;
+            this.outputs[output + ACTION] = action ? 1 : 0;
+            this.outputs[output + SYSTEM_OPEN] = open ? 1 : 0;
+        }
+        this.time = currentTime + stepSize;
+    }
+
+    @Override
+    public void getOutputs(double[] outputs) {
+        System.arraycopy(this.outputs, 0, outputs, 0, this.outputs.length);
+    }
+
+    /**
+     * Returns the time reached by the last communication step
+     * @return	The slave time (s)
+     */
+    public double getTime() {
+        return this.time;
+    }
+
+    @Override
+    public byte[] getState() {
+        int units = this.models.length;
+        ByteBuffer state = ByteBuffer.allocate(12 + units * 25);
+        state.putDouble(this.time);
+        state.putInt(units);
+        for (int unit = 0; unit < units; unit++) {
+            state.put((byte) (this.open[unit] ? 1 : 0));
+            state.putLong(this.randomStates[unit]);
+            state.putDouble(this.outputs[unit * OUTPUTS_PER_UNIT + PROBABILITY]);
+            state.putDouble(this.outputs[unit * OUTPUTS_PER_UNIT + ACTION]);
+        }
+        return state.array();
+    }
+
+    @Override
+    public void setState(byte[] state) {
+        ByteBuffer buffer = ByteBuffer.wrap(state);
+        double time = buffer.getDouble();
+        if (buffer.getInt() != this.models.length) {
+            throw new IllegalArgumentException("State belongs to a slave with a different number of units");
+        }
+        this.time = time;
+        for (int unit = 0; unit < this.models.length; unit++) {
+            this.setSystemOpen(unit, buffer.get() != 0);
+            this.randomStates[unit] = buffer.getLong();
+            this.outputs[unit * OUTPUTS_PER_UNIT + PROBABILITY] = buffer.getDouble();
+            this.outputs[unit * OUTPUTS_PER_UNIT + ACTION] = buffer.getDouble();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.ensemble;
+
+/**
+ * The result of an ensemble estimate: the mean, its standard error, and the effective sample size, i.e. the number of
+ * independent plain Monte Carlo trajectories that would give the same standard error.
+ * @author Georgios D. Kontes
+ */
+public class EnsembleEstimate {
+
+    private final double mean;
+    private final double standardError;
+    private final long trajectories;
+    private final double effectiveSampleSize;
+
+    EnsembleEstimate(double mean, double standardError, long trajectories, double effectiveSampleSize) {
+        this.mean = mean;
+        this.standardError = standardError;
+        this.trajectories = trajectories;
+        this.effectiveSampleSize = effectiveSampleSize;
+    }
+
+    /**
+     * Returns the estimated mean
+     * @return	The mean
+     */
+    public double getMean() {
+        return this.mean;
+    }
+
+    /**
+     * Returns the standard error of the mean
+     * @return	The standard error
+     */
+    public double getStandardError() {
+        return this.standardError;
+    }
+
+    /**
+     * Returns the number of simulated trajectories (per model, for comparisons)
+     * @return	The number of trajectories
+     */
+    public long getTrajectories() {
+        return this.trajectories;
+    }
+
+    /**
+     * Returns the number of independent plain Monte Carlo trajectories that would give the same standard error
+     * @return	The effective sample size
+     */
+    public double getEffectiveSampleSize() {
+        return this.effectiveSampleSize;
+    }
+
+    /**
+     * Returns the effective sample size per simulated trajectory; values above 1 mean fewer trajectories are needed than
+     * with plain Monte Carlo for the same confidence interval
+     * @return	The effective sample size gain
+     */
+    public double getEffectiveSampleSizeGain() {
+        return this.effectiveSampleSize / this.trajectories;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.6g +- %.3g (%d trajectories, ESS %.1f)", this.mean, this.standardError, this.trajectories, this.effectiveSampleSize);
+    }
+}
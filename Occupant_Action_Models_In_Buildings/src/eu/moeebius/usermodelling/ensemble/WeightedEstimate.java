@@ -0,0 +1,82 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.ensemble;
+
+/**
+ * An importance sampling estimate, with diagnostics of the likelihood-ratio weights. The mean weight of all trajectories
+ * should be close to 1; a Kish effective sample size far below the number of trajectories, or a single trajectory carrying
+ * a large fraction of the estimate, indicate a tilt that is too strong.
+ * @author Georgios D. Kontes
+ */
+public class WeightedEstimate extends EnsembleEstimate {
+
+    private final int events;
+    private final double meanWeight;
+    private final double kishEffectiveSampleSize;
+    private final double maximumWeightFraction;
+
+    WeightedEstimate(double mean, double standardError, long trajectories, double effectiveSampleSize, int events, double meanWeight,
+                     double kishEffectiveSampleSize, double maximumWeightFraction) {
+        super(mean, standardError, trajectories, effectiveSampleSize);
+        this.events = events;
+        this.meanWeight = meanWeight;
+        this.kishEffectiveSampleSize = kishEffectiveSampleSize;
+        this.maximumWeightFraction = maximumWeightFraction;
+    }
+
+    /**
+     * Returns the number of trajectories in which the event occurred
+     * @return	The number of events
+     */
+    public int getEvents() {
+        return this.events;
+    }
+
+    /**
+     * Returns the mean likelihood-ratio weight of all trajectories, which has an expected value of 1
+     * @return	The mean weight
+     */
+    public double getMeanWeight() {
+        return this.meanWeight;
+    }
+
+    /**
+     * Returns the Kish effective sample size of the weights, (sum of w)^2 / sum of w^2
+     * @return	The Kish effective sample size
+     */
+    public double getKishEffectiveSampleSize() {
+        return this.kishEffectiveSampleSize;
+    }
+
+    /**
+     * Returns the fraction of the estimate contributed by the trajectory with the largest weight
+     * @return	The maximum weight fraction
+     */
+    public double getMaximumWeightFraction() {
+        return this.maximumWeightFraction;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s, %d events, mean weight %.3f, Kish ESS %.1f, max weight fraction %.3g", super.toString(), this.events,
+                this.meanWeight, this.kishEffectiveSampleSize, this.maximumWeightFraction);
+    }
+}
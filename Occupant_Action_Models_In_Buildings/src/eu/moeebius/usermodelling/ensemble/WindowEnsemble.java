@@ -0,0 +1,503 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.ensemble;
+
+import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
+import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
+import eu.moeebius.usermodelling.interfaces.UserModel;
+import eu.moeebius.usermodelling.interfaces.UserType;
+import eu.moeebius.usermodelling.random.RandomizedSequence;
+import eu.moeebius.usermodelling.random.UniformSource;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.RealVector;
+import org.apache.commons.math3.linear.SingularValueDecomposition;
+import org.apache.commons.math3.special.Erf;
+
+import java.util.Arrays;
+
+/**
+ * Ensembles of window trajectories of one room under a given drive and occupancy series, estimating the expected number of
+ * open time-steps. Every trajectory takes one point of a {@link UniformSource}, one coordinate per step deciding the action
+ * in that step exactly like predictAction does (an action if the draw is below the probability of action). Uncertain
+ * drives, e.g. the bias of a forecast, are sampled as one normally distributed offset per drive and trajectory from the
+ * leading coordinates of the point, which are the best distributed ones of quasi-random sequences. Three variance reduction
+ * options are available:
+ * <ul>
+ * <li>common random numbers: {@link #compare} simulates both models with the same points, so the noise in their
+ * difference cancels wherever they act alike;</li>
+ * <li>antithetic draws: every point is also used mirrored (1 - u), and the two trajectories are averaged;</li>
+ * <li>control variates: sums over the steps of w * (action - probability of action) have an expected value of exactly zero
+ * (they are martingales) for any weight w known before the draw. Two are used, with weight 1 and with the effect of the
+ * action on the expected remaining open steps, computed from the exact probabilities by a backward recursion over the
+ * two window states, and subtracted with the regression coefficients estimated from the ensemble. For drive series known
+ * exactly the second control removes all variance; it stays effective when the points also sample uncertain inputs.</li>
+ * </ul>
+ * Points may also come from a {@link RandomizedSequence} (scrambled Sobol or Halton), in which case
+ * {@link #estimateRandomized} estimates the error from independent randomizations of the sequence.
+ * Every estimate reports its effective sample size, estimated from the variance of the individual trajectories.
+ * Not thread-safe; use one ensemble per thread.
+ * @author Georgios D. Kontes
+ */
+public class WindowEnsemble {
+
+    static final int CONTROLS = 2;
+    private static final double MAXIMUM_LOG_TILT = 700;
+
+    private final double[][] drives;
+    private final TransitionOccupantState.TRANSITION_STATES[] occupancy;
+    private final UserType.USER_TYPES userType;
+    private final boolean initiallyOpen;
+    private final Array2DRowRealMatrix actionDrives;
+    private final double[][] actionDriveData;
+    private boolean antithetic = false;
+    private final double[] driveOffsets;
+    private double[] driveDeviations = null;
+    private boolean controlVariate = false;
+
+    /**
+     * Creates the ensemble
+     * @param drives	        The action drives per time-step, in the order expected by the models (steps x drives)
+     * @param occupancy	        The occupancy transition per time-step
+     * @param userType	        The user type
+     * @param initiallyOpen	    true if the window is open before the first step
+     */
+    public WindowEnsemble(double[][] drives, TransitionOccupantState.TRANSITION_STATES[] occupancy, UserType.USER_TYPES userType, boolean initiallyOpen) {
+        if (drives.length != occupancy.length) {
+            throw new IllegalArgumentException("Drive and occupancy series differ in length");
+        }
+        this.drives = drives;
+        this.occupancy = occupancy;
+        this.userType = userType;
+        this.initiallyOpen = initiallyOpen;
+        int driveCount = drives.length == 0 ? 0 : drives[0].length;
+        this.actionDrives = new Array2DRowRealMatrix(driveCount, 1);
+        this.actionDriveData = this.actionDrives.getDataRef();
+        this.driveOffsets = new double[driveCount];
+    }
+
+    /**
+     * Returns the number of time-steps
+     * @return	The number of steps
+     */
+    public int getSteps() {
+        return this.drives.length;
+    }
+
+    /**
+     * Returns the dimension the uniform sources must have: one coordinate per drive if the drives are uncertain, followed by
+     * one per time-step
+     * @return	The dimension
+     */
+    public int getDimension() {
+        return this.drives.length + (this.driveDeviations == null ? 0 : this.driveDeviations.length);
+    }
+
+    /**
+     * Makes the drives uncertain: every trajectory adds to each drive series a normally distributed offset with zero mean
+     * @param standardDeviations	The standard deviation of the offset of every drive, or null for exactly known drives
+     */
+    public void setDriveUncertainty(double[] standardDeviations) {
+        if (standardDeviations != null && standardDeviations.length != this.driveOffsets.length) {
+            throw new IllegalArgumentException("Expected " + this.driveOffsets.length + " standard deviations");
+        }
+        this.driveDeviations = standardDeviations == null ? null : standardDeviations.clone();
+    }
+
+    /**
+     * Enables or disables antithetic draws; with antithetic draws every point yields two trajectories
+     * @param antithetic	true to mirror every point
+     */
+    public void setAntithetic(boolean antithetic) {
+        this.antithetic = antithetic;
+    }
+
+    /**
+     * Enables or disables the martingale control variate
+     * @param controlVariate	true to use the control variate
+     */
+    public void setControlVariate(boolean controlVariate) {
+        this.controlVariate = controlVariate;
+    }
+
+    /**
+     * Estimates the expected number of open time-steps of a model
+     * @param model	    The window model
+     * @param source	The uniform source, of dimension getDimension()
+     * @param points	The number of points to draw
+     * @return	The estimate
+     */
+    public EnsembleEstimate estimate(UserModel model, UniformSource source, int points) {
+        double[] values = new double[points];
+        double[][] controls = new double[points][CONTROLS];
+        double[] moments = new double[2];
+        this.sample(model, source, 0, points, values, controls, moments);
+        long trajectories = (long) points * (this.antithetic ? 2 : 1);
+        return combine(values, this.controlVariate ? controls : null, points, variance(moments[0], moments[1], trajectories), trajectories);
+    }
+
+    /**
+     * Estimates the expected number of open time-steps of a model by randomized quasi-Monte Carlo: the sequence is restarted
+     * with independent random shifts, and the standard error is estimated from the spread of the means of the shifts. The
+     * sequence covers only the leading coordinates of long horizons (1000 for Sobol, 40 for Halton) and pads the rest with
+     * pseudo-random numbers, so the gain over plain Monte Carlo shrinks as the horizon grows past them
+     * @param model	            The window model
+     * @param sequence	        The randomized low-discrepancy sequence, of dimension getDimension()
+     * @param randomizations	The number of independent shifts (at least 2; 10 to 30 give a usable error estimate)
+     * @param points	        The number of points per shift
+     * @param seed	            The seed of the shifts
+     * @return	The estimate
+     */
+    public EnsembleEstimate estimateRandomized(UserModel model, RandomizedSequence sequence, int randomizations, int points, long seed) {
+        int samples = randomizations * points;
+        double[] values = new double[samples];
+        double[][] controls = new double[samples][CONTROLS];
+        double[] moments = new double[2];
+        for (int r = 0; r < randomizations; r++) {
+            sequence.restart(seed + r);
+            this.sample(model, sequence, r * points, points, values, controls, moments);
+        }
+        long trajectories = (long) samples * (this.antithetic ? 2 : 1);
+        return combine(values, this.controlVariate ? controls : null, randomizations, variance(moments[0], moments[1], trajectories), trajectories);
+    }
+
+    private void sample(UserModel model, UniformSource source, int offset, int points, double[] values, double[][] controls, double[] moments) {
+        int copies = this.antithetic ? 2 : 1;
+        double[] point = new double[this.getDimension()];
+        double[] control = new double[CONTROLS];
+        double[][] effects = this.actionEffects(model);
+        for (int i = offset; i < offset + points; i++) {
+            source.nextPoint(point);
+            for (int copy = 0; copy < copies; copy++) {
+                double value = this.simulate(model, effects, point, copy == 1, control);
+                values[i] += value / copies;
+                for (int j = 0; j < CONTROLS; j++) {
+                    controls[i][j] += control[j] / copies;
+                }
+                moments[0] += value;
+                moments[1] += value * value;
+            }
+        }
+    }
+
+    /**
+     * Estimates the expected difference in open time-steps between two models
+     * @param first	                The first window model
+     * @param second	            The second window model
+     * @param source	            The uniform source, of dimension getDimension()
+     * @param points	            The number of points to draw per model
+     * @param commonRandomNumbers	true to simulate both models with the same points, false to draw separate points
+     * @return	The estimate of E[open steps of first] - E[open steps of second]
+     */
+    public EnsembleEstimate compare(UserModel first, UserModel second, UniformSource source, int points, boolean commonRandomNumbers) {
+        int copies = this.antithetic ? 2 : 1;
+        double[] point = new double[this.getDimension()];
+        double[] control = new double[CONTROLS];
+        double[] values = new double[points];
+        double[][] controls = new double[points][2 * CONTROLS];
+        double[][] firstEffects = this.actionEffects(first);
+        double[][] secondEffects = this.actionEffects(second);
+        double[] sums = new double[2];
+        double[] sumsOfSquares = new double[2];
+        for (int i = 0; i < points; i++) {
+            source.nextPoint(point);
+            for (int model = 0; model < 2; model++) {
+                if (model == 1 && !commonRandomNumbers) {
+                    source.nextPoint(point);
+                }
+                for (int copy = 0; copy < copies; copy++) {
+                    double value = this.simulate(model == 0 ? first : second, model == 0 ? firstEffects : secondEffects, point, copy == 1, control);
+                    values[i] += (model == 0 ? value : -value) / copies;
+                    for (int j = 0; j < CONTROLS; j++) {
+                        controls[i][model * CONTROLS + j] += control[j] / copies;
+                    }
+                    sums[model] += value;
+                    sumsOfSquares[model] += value * value;
+                }
+            }
+        }
+        long trajectories = (long) points * copies;
+        double plainVariance = variance(sums[0], sumsOfSquares[0], trajectories) + variance(sums[1], sumsOfSquares[1], trajectories);
+        return combine(values, this.controlVariate ? controls : null, points, plainVariance, trajectories);
+    }
+
+    /**
+     * Simulates one trajectory
+     * @param model	        The window model
+     * @param effects	        The effect of an action on the expected remaining open steps, per step and window state
+     * @param point	        One uniform draw per uncertain drive, followed by one per step
+     * @param mirrored	    true to use 1 - u instead of every draw u
+     * @param control	    Receives the sums of (action - probability of action) over the steps, unweighted and weighted
+     *                      with the effect of the action
+     * @return	The number of open steps
+     */
+    double simulate(UserModel model, double[][] effects, double[] point, boolean mirrored, double[] control) {
+        int steps = this.drives.length;
+        int first = this.sampleDriveOffsets(point, mirrored);
+        boolean open = this.initiallyOpen;
+        int openSteps = 0;
+        double martingale = 0;
+        double weightedMartingale = 0;
+        for (int step = 0; step < steps; step++) {
+            double probability = this.probability(model, step, open);
+            double draw = mirrored ? 1 - point[first + step] : point[first + step];
+            if (open) {
+                openSteps++;
+            }
+            double weight = effects[step][open ? 1 : 0];
+            martingale -= probability;
+            weightedMartingale -= weight * probability;
+            if (draw <= probability) {
+                open = !open;
+                martingale += 1;
+                weightedMartingale += weight;
+            }
+        }
+        Arrays.fill(this.driveOffsets, 0);
+        control[0] = martingale;
+        control[1] = weightedMartingale;
+        return openSteps;
+    }
+
+    /**
+     * Estimates the probability that the window is opened at least once within a range of steps, e.g. overnight, by
+     * importance sampling: within the range the odds of opening a closed window are multiplied by a tilt factor, and every
+     * trajectory carries the likelihood ratio of its decisions under the model and the tilted probabilities. Trajectories
+     * stop at the first opening in the range. The antithetic and control variate options do not apply.
+     * @param model	    The window model
+     * @param source	The uniform source, of dimension getDimension()
+     * @param points	The number of trajectories
+     * @param from	    The first step of the range (inclusive)
+     * @param to	    The last step of the range (exclusive)
+     * @param tilt	    The factor on the odds of opening, 1 for plain Monte Carlo; see {@link #suggestTilt}
+     * @return	The estimate, with weight diagnostics
+     */
+    public WeightedEstimate estimateOpeningProbability(UserModel model, UniformSource source, int points, int from, int to, double tilt) {
+        double[] point = new double[this.getDimension()];
+        double sum = 0;
+        double sumOfSquares = 0;
+        double weightSum = 0;
+        double weightSumOfSquares = 0;
+        double maximumWeight = 0;
+        int events = 0;
+        for (int i = 0; i < points; i++) {
+            source.nextPoint(point);
+            int first = this.sampleDriveOffsets(point, false);
+            boolean open = this.initiallyOpen;
+            boolean opened = false;
+            double logWeight = 0;
+            for (int step = 0; step < to && !opened; step++) {
+                double probability = this.probability(model, step, open);
+                double tilted = probability;
+                if (!open && step >= from) {
+                    tilted = tilt * probability / (1 - probability + tilt * probability);
+                }
+                if (tilted > 0 && point[first + step] <= tilted) {
+                    logWeight += Math.log(probability / tilted);
+                    open = !open;
+                    opened = open && step >= from;
+                } else {
+                    logWeight += Math.log1p(-probability) - Math.log1p(-tilted);
+                }
+            }
+            Arrays.fill(this.driveOffsets, 0);
+            double weight = Math.exp(logWeight);
+            double value = opened ? weight : 0;
+            sum += value;
+            sumOfSquares += value * value;
+            weightSum += weight;
+            weightSumOfSquares += weight * weight;
+            maximumWeight = Math.max(maximumWeight, value);
+            if (opened) {
+                events++;
+            }
+        }
+        double mean = sum / points;
+        double estimatorVariance = variance(sum, sumOfSquares, points) / points;
+        double plainVariance = mean * (1 - mean);
+        double effectiveSampleSize = estimatorVariance > 0 ? plainVariance / estimatorVariance : Double.POSITIVE_INFINITY;
+        return new WeightedEstimate(mean, Math.sqrt(estimatorVariance), points, effectiveSampleSize, events, weightSum / points,
+                weightSum * weightSum / weightSumOfSquares, sum > 0 ? maximumWeight / sum : 0);
+    }
+
+    /**
+     * Suggests a tilt factor for {@link #estimateOpeningProbability}: the factor at which a window kept closed would be
+     * expected to be opened once within the range under the nominal drives
+     * @param model	    The window model
+     * @param from	    The first step of the range (inclusive)
+     * @param to	    The last step of the range (exclusive)
+     * @return	The tilt factor, at least 1 and finite; 1 if no step of the range has a positive probability of opening
+     */
+    public double suggestTilt(UserModel model, int from, int to) {
+        double[] probabilities = new double[to - from];
+        for (int step = from; step < to; step++) {
+            probabilities[step - from] = this.probability(model, step, false);
+        }
+        boolean possible = false;
+        for (double probability : probabilities) {
+            possible |= probability > 0;
+        }
+        if (!possible || expectedOpenings(probabilities, 1) >= 1) {
+            return 1;
+        }
+        double low = 0;
+        double high = 1;
+        while (expectedOpenings(probabilities, Math.exp(high)) < 1 && high < MAXIMUM_LOG_TILT) {
+            low = high;
+            high = Math.min(2 * high, MAXIMUM_LOG_TILT);
+        }
+        for (int i = 0; i < 60; i++) {
+            double middle = (low + high) / 2;
+            if (expectedOpenings(probabilities, Math.exp(middle)) < 1) {
+                low = middle;
+            } else {
+                high = middle;
+            }
+        }
+        return Math.exp(high);
+    }
+
+    private static double expectedOpenings(double[] probabilities, double tilt) {
+        double sum = 0;
+        for (double probability : probabilities) {
+            sum += tilt * probability / (1 - probability + tilt * probability);
+        }
+        return sum;
+    }
+
+    private int sampleDriveOffsets(double[] point, boolean mirrored) {
+        if (this.driveDeviations == null) {
+            return 0;
+        }
+        for (int drive = 0; drive < this.driveOffsets.length; drive++) {
+            double u = Math.max(mirrored ? 1 - point[drive] : point[drive], 0x1.0p-54);
+            this.driveOffsets[drive] = this.driveDeviations[drive] * Math.sqrt(2) * Erf.erfInv(2 * u - 1);
+        }
+        return this.driveOffsets.length;
+    }
+
+    /**
+     * Computes, by a backward recursion over the two window states, how much an action in every step changes the expected
+     * number of open steps after it, for the nominal drives
+     * @param model	The window model
+     * @return	The effect per step, for a closed (index 0) and an open (index 1) window
+     */
+    double[][] actionEffects(UserModel model) {
+        int steps = this.drives.length;
+        double[][] effects = new double[steps][2];
+        double closedValue = 0;
+        double openValue = 0;
+        for (int step = steps - 1; step >= 0; step--) {
+            effects[step][0] = openValue - closedValue;
+            effects[step][1] = closedValue - openValue;
+            double opening = this.probability(model, step, false);
+            double closing = this.probability(model, step, true);
+            double nextClosedValue = closedValue + opening * (openValue - closedValue);
+            double nextOpenValue = 1 + openValue + closing * (closedValue - openValue);
+            closedValue = nextClosedValue;
+            openValue = nextOpenValue;
+        }
+        return effects;
+    }
+
+    double probability(UserModel model, int step, boolean open) {
+        double[] stepDrives = this.drives[step];
+        for (int drive = 0; drive < stepDrives.length; drive++) {
+            this.actionDriveData[drive][0] = stepDrives[drive] + this.driveOffsets[drive];
+        }
+        TransitionSystemState.TRANSITION_STATES transition = open ? TransitionSystemState.TRANSITION_STATES.OPEN_CLOSE : TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN;
+        return model.calculateActionProbability(this.userType, this.occupancy[step], transition, this.actionDrives);
+    }
+
+    /**
+     * Combines samples into an estimate, subtracting zero-mean controls with least-squares coefficients. The samples form
+     * consecutive groups of equal size whose means are independent; within a group they may be dependent (one group per
+     * randomization of a quasi-random sequence) or every sample is a group of its own.
+     * @param values	        One value per sample
+     * @param controls	        The zero-mean controls of every sample, or null
+     * @param groups	        The number of groups
+     * @param plainVariance	    The variance of a single plain Monte Carlo trajectory
+     * @param trajectories	    The number of simulated trajectories
+     * @return	The estimate
+     */
+    static EnsembleEstimate combine(double[] values, double[][] controls, int groups, double plainVariance, long trajectories) {
+        int n = values.length;
+        double[] adjusted = values.clone();
+        if (controls != null && n > controls[0].length + 1) {
+            int k = controls[0].length;
+            double mean = mean(values);
+            double[] controlMeans = new double[k];
+            for (double[] sample : controls) {
+                for (int j = 0; j < k; j++) {
+                    controlMeans[j] += sample[j] / n;
+                }
+            }
+            RealMatrix covariance = new Array2DRowRealMatrix(k, k);
+            RealMatrix crossCovariance = new Array2DRowRealMatrix(k, 1);
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < k; j++) {
+                    double cj = controls[i][j] - controlMeans[j];
+                    crossCovariance.addToEntry(j, 0, cj * (values[i] - mean));
+                    for (int l = 0; l < k; l++) {
+                        covariance.addToEntry(j, l, cj * (controls[i][l] - controlMeans[l]));
+                    }
+                }
+            }
+            RealVector coefficients = new SingularValueDecomposition(covariance).getSolver().solve(crossCovariance).getColumnVector(0);
+            for (int i = 0; i < n; i++) {
+                for (int j = 0; j < k; j++) {
+                    adjusted[i] -= coefficients.getEntry(j) * controls[i][j];
+                }
+            }
+        }
+        int groupSize = n / groups;
+        double sum = 0;
+        double sumOfSquares = 0;
+        for (int group = 0; group < groups; group++) {
+            double groupSum = 0;
+            for (int i = group * groupSize; i < (group + 1) * groupSize; i++) {
+                groupSum += adjusted[i];
+            }
+            double groupMean = groupSum / groupSize;
+            sum += groupMean;
+            sumOfSquares += groupMean * groupMean;
+        }
+        double estimatorVariance = variance(sum, sumOfSquares, groups) / groups;
+        double effectiveSampleSize = estimatorVariance > 0 ? plainVariance / estimatorVariance : Double.POSITIVE_INFINITY;
+        return new EnsembleEstimate(sum / groups, Math.sqrt(estimatorVariance), trajectories, effectiveSampleSize);
+    }
+
+    static double variance(double sum, double sumOfSquares, long count) {
+        if (count < 2) {
+            return 0;
+        }
+        double mean = sum / count;
+        return Math.max(sumOfSquares - count * mean * mean, 0) / (count - 1);
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+}
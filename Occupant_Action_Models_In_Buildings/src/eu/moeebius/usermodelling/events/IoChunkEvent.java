@@ -0,0 +1,57 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JDK Flight Recorder event spanning one chunk of input or output (a table, a population flush, a checkpoint, ...).
+ * Disabled by default; see {@link UserModellingEvents}.
+ * @author Georgios D. Kontes
+ */
+@Name("eu.moeebius.usermodelling.IoChunk")
+@Label("I/O Chunk")
+@Description("Reading or writing one chunk of model or simulation data")
+@Category({"User Modelling", "I/O"})
+@Enabled(false)
+@StackTrace(false)
+public class IoChunkEvent extends Event {
+
+    @Label("Resource")
+    @Description("The kind of data read or written")
+    public String resource;
+
+    @Label("Operation")
+    @Description("read, write or force")
+    public String operation;
+
+    @Label("Bytes")
+    @Description("The size of the chunk")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,58 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A JDK Flight Recorder event spanning one step of a simulation. Disabled by default; see {@link UserModellingEvents}.
+ * @author Georgios D. Kontes
+ */
+@Name("eu.moeebius.usermodelling.SimulationStep")
+@Label("Simulation Step")
+@Description("One time step of a simulation, including thermal and behaviour updates")
+@Category({"User Modelling", "Simulation"})
+@Enabled(false)
+@StackTrace(false)
+public class SimulationStepEvent extends Event {
+
+    @Label("Simulation")
+    @Description("The simulation class")
+    public String simulation;
+
+    @Label("Step")
+    @Description("The number of the step")
+    public long step;
+
+    @Label("Zones")
+    @Description("The number of zones stepped")
+    public int zones;
+
+    @Label("Time Step")
+    @Description("The simulated length of the step (s)")
+    public double timeStep;
+}
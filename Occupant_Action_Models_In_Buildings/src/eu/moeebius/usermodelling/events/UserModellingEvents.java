@@ -0,0 +1,46 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.events;
+
+import jdk.jfr.Recording;
+
+/**
+ * The JDK Flight Recorder events of the library. All events are disabled by default, so that they cost nothing in
+ * production; enable them for a profiling session either programmatically, through {@link #enableAll(Recording)}, or in
+ * a recording settings file (e.g. a copy of default.jfc with
+ * {@code <event name="eu.moeebius.usermodelling.SimulationStep"><setting name="enabled">true</setting></event>} for
+ * every event of interest). Recordings can then be analyzed with standard tooling (jfr print, JDK Mission Control).
+ * @author Georgios D. Kontes
+ */
+public final class UserModellingEvents {
+
+    private UserModellingEvents() {}
+
+    /**
+     * Enables all events of the library in a recording
+     * @param recording	The recording
+     */
+    public static void enableAll(Recording recording) {
+        recording.enable(SimulationStepEvent.class);
+        recording.enable(BatchEvaluationEvent.class);
+        recording.enable(IoChunkEvent.class);
+    }
+}
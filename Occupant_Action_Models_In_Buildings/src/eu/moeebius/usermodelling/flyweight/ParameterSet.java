@@ -0,0 +1,84 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.flyweight;
+
+import eu.moeebius.usermodelling.interfaces.UserModel;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of User Model coefficients, compared by content: two parameter sets are equal if they belong to the
+ * same model class and hold the same coefficients. Used as the interning key of the {@link SharedUserModelPool}.
+ * @author Georgios D. Kontes
+ */
+public final class ParameterSet {
+
+    private final Class<? extends UserModel> modelClass;
+    private final double[][] coefficients;
+    private final int hash;
+
+    /**
+     * Creates a parameter set from a copy of the given coefficients
+     * @param modelClass	The User Model class the coefficients belong to
+     * @param parameters	The coefficients
+     */
+    public ParameterSet(Class<? extends UserModel> modelClass, RealMatrix parameters) {
+        this.modelClass = modelClass;
+        this.coefficients = parameters.getData();
+        this.hash = 31 * modelClass.hashCode() + Arrays.deepHashCode(this.coefficients);
+    }
+
+    /**
+     * Returns the User Model class the coefficients belong to
+     * @return	The model class
+     */
+    public Class<? extends UserModel> getModelClass() {
+        return this.modelClass;
+    }
+
+    /**
+     * Returns a copy of the coefficients
+     * @return	A new matrix holding the coefficients
+     */
+    public RealMatrix toMatrix() {
+        return new Array2DRowRealMatrix(this.coefficients);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ParameterSet)) {
+            return false;
+        }
+        ParameterSet parameterSet = (ParameterSet) other;
+        return this.hash == parameterSet.hash && this.modelClass == parameterSet.modelClass
+                && Arrays.deepEquals(this.coefficients, parameterSet.coefficients);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+}
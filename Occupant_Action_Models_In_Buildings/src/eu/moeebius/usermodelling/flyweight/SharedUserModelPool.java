@@ -0,0 +1,118 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.flyweight;
+
+import eu.moeebius.usermodelling.interfaces.UserModel;
+import org.apache.commons.math3.linear.RealMatrix;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Shares User Model instances between occupants. For every distinct {@link ParameterSet} the pool holds exactly one model
+ * instance, whose parameters are never changed afterwards; occupants refer to it through lightweight
+ * {@link UserModelHandle}s. Memory and start-up cost therefore grow with the number of distinct parameter sets instead of
+ * the number of occupants. The shared instances themselves are never handed out, so their coefficients cannot be changed;
+ * a handle whose parameters are set is re-pointed to the instance for the new parameter set.
+ * The pool is safe for concurrent use.
+ * @author Georgios D. Kontes
+ */
+public class SharedUserModelPool {
+
+    private final ConcurrentMap<ParameterSet, UserModel> models = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Class<? extends UserModel>, UserModel> defaults = new ConcurrentHashMap<>();
+
+    /**
+     * Creates an empty pool
+     */
+    public SharedUserModelPool() {}
+
+    /**
+     * Returns the shared instance of a model class with its default parameters
+     * @param modelClass	The User Model class; it needs a public no-argument constructor
+     * @return	The shared model instance
+     */
+    UserModel acquire(Class<? extends UserModel> modelClass) {
+        UserModel model = this.defaults.get(modelClass);
+        if (model == null) {
+            UserModel prototype = newInstance(modelClass);
+            model = this.acquire(modelClass, prototype.getParameters());
+            this.defaults.putIfAbsent(modelClass, model);
+        }
+        return model;
+    }
+
+    /**
+     * Returns the shared instance of a model class with the given parameters, creating it on first use
+     * @param modelClass	The User Model class; it needs a public no-argument constructor
+     * @param parameters	The parameters of the model
+     * @return	The shared model instance
+     */
+    UserModel acquire(Class<? extends UserModel> modelClass, RealMatrix parameters) {
+        ParameterSet parameterSet = new ParameterSet(modelClass, parameters);
+        UserModel model = this.models.get(parameterSet);
+        if (model == null) {
+            UserModel created = newInstance(modelClass);
+            created.setParameters(parameterSet.toMatrix());
+            model = this.models.putIfAbsent(parameterSet, created);
+            if (model == null) {
+                model = created;
+            }
+        }
+        return model;
+    }
+
+    /**
+     * Creates a handle for one occupant, referring to the shared instance of a model class with its default parameters. The
+     * handle implements DescribedUserModel and DifferentiableUserModel only if the model class does.
+     * @param modelClass	The User Model class
+     * @return	The handle
+     */
+    public UserModelHandle newHandle(Class<? extends UserModel> modelClass) {
+        return UserModelHandle.create(this, this.acquire(modelClass));
+    }
+
+    /**
+     * Creates a handle for one occupant, referring to the shared instance of a model class with the given parameters
+     * @param modelClass	The User Model class
+     * @param parameters	The parameters of the model
+     * @return	The handle
+     */
+    public UserModelHandle newHandle(Class<? extends UserModel> modelClass, RealMatrix parameters) {
+        return UserModelHandle.create(this, this.acquire(modelClass, parameters));
+    }
+
+    /**
+     * Returns the number of distinct parameter sets (and thus model instances) in the pool
+     * @return	The number of shared model instances
+     */
+    public int size() {
+        return this.models.size();
+    }
+
+    private static UserModel newInstance(Class<? extends UserModel> modelClass) {
+        try {
+            return modelClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalArgumentException("Cannot instantiate " + modelClass.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,180 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.flyweight;
+
+import eu.moeebius.usermodelling.interfaces.ActionDrive;
+import eu.moeebius.usermodelling.interfaces.ControlledSystem;
+import eu.moeebius.usermodelling.interfaces.DescribedUserModel;
+import eu.moeebius.usermodelling.interfaces.DifferentiableUserModel;
+import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
+import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
+import eu.moeebius.usermodelling.interfaces.UserModel;
+import eu.moeebius.usermodelling.interfaces.UserType;
+import org.apache.commons.math3.linear.RealMatrix;
+
+/**
+ * A per-occupant User Model that refers to a model instance shared through a {@link SharedUserModelPool}. The handle only
+ * holds its own name; setting parameters re-points it to the shared instance for the new parameter set instead of copying
+ * them, and the parameters it returns are a copy, so the shared coefficients can never be modified through a handle.
+ * The pool creates handles with the capabilities of the shared model: a handle implements DescribedUserModel and/or
+ * DifferentiableUserModel exactly when the shared model does, and delegates those calls to it.
+ * @author Georgios D. Kontes
+ */
+public class UserModelHandle implements UserModel {
+
+    private final SharedUserModelPool pool;
+    private UserModel model;
+    private String name;
+
+    UserModelHandle(SharedUserModelPool pool, UserModel model) {
+        this.pool = pool;
+        this.model = model;
+    }
+
+    /**
+     * Creates a handle whose interfaces match those of the shared model
+     * @param pool	    The pool of the shared model
+     * @param model	    The shared model instance
+     * @return	The handle
+     */
+    static UserModelHandle create(SharedUserModelPool pool, UserModel model) {
+        boolean described = model instanceof DescribedUserModel;
+        boolean differentiable = model instanceof DifferentiableUserModel;
+        if (described && differentiable) {
+            return new DescribedDifferentiable(pool, model);
+        } else if (described) {
+            return new Described(pool, model);
+        } else if (differentiable) {
+            return new Differentiable(pool, model);
+        }
+        return new UserModelHandle(pool, model);
+    }
+
+    /**
+     * Returns the shared model instance the handle currently refers to
+     * @return	The shared User Model
+     */
+    UserModel getSharedModel() {
+        return this.model;
+    }
+
+    /**
+     * Returns the class of the shared model, e.g. to select a batch evaluator for it
+     * @return	The User Model class
+     */
+    public Class<? extends UserModel> getModelClass() {
+        return this.model.getClass();
+    }
+
+    @Override
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return this.name != null ? this.name : this.model.getName();
+    }
+
+    @Override
+    public void setParameters(RealMatrix parameters) {
+        this.model = this.pool.acquire(this.model.getClass(), parameters);
+    }
+
+    @Override
+    public RealMatrix getParameters() {
+        return this.model.getParameters().copy();
+    }
+
+    @Override
+    public double calculateActionProbability(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                                             TransitionSystemState.TRANSITION_STATES transitionSystemState, RealMatrix actionDrives) {
+        return this.model.calculateActionProbability(userType, transitionState, transitionSystemState, actionDrives);
+    }
+
+    @Override
+    public double predictAction(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                                TransitionSystemState.TRANSITION_STATES transitionSystemState, RealMatrix actionDrives) {
+        return this.model.predictAction(userType, transitionState, transitionSystemState, actionDrives);
+    }
+
+    /**
+     * A handle of a shared model that describes itself
+     */
+    static class Described extends UserModelHandle implements DescribedUserModel {
+
+        Described(SharedUserModelPool pool, UserModel model) {
+            super(pool, model);
+        }
+
+        @Override
+        public ControlledSystem.SYSTEMS getControlledSystem() {
+            return ((DescribedUserModel) this.getSharedModel()).getControlledSystem();
+        }
+
+        @Override
+        public ActionDrive.DRIVES[] getActionDrives() {
+            return ((DescribedUserModel) this.getSharedModel()).getActionDrives().clone();
+        }
+
+        @Override
+        public boolean isSupported(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                                   TransitionSystemState.TRANSITION_STATES transitionSystemState) {
+            return ((DescribedUserModel) this.getSharedModel()).isSupported(userType, transitionState, transitionSystemState);
+        }
+    }
+
+    /**
+     * A handle of a shared model with gradients
+     */
+    static final class Differentiable extends UserModelHandle implements DifferentiableUserModel {
+
+        Differentiable(SharedUserModelPool pool, UserModel model) {
+            super(pool, model);
+        }
+
+        @Override
+        public double calculateActionProbabilityGradient(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                                                         TransitionSystemState.TRANSITION_STATES transitionSystemState, RealMatrix actionDrives,
+                                                         double[] driveGradient, double[] parameterGradient) {
+            return ((DifferentiableUserModel) this.getSharedModel()).calculateActionProbabilityGradient(userType, transitionState,
+                    transitionSystemState, actionDrives, driveGradient, parameterGradient);
+        }
+    }
+
+    /**
+     * A handle of a shared model that describes itself and has gradients
+     */
+    static final class DescribedDifferentiable extends Described implements DifferentiableUserModel {
+
+        DescribedDifferentiable(SharedUserModelPool pool, UserModel model) {
+            super(pool, model);
+        }
+
+        @Override
+        public double calculateActionProbabilityGradient(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                                                         TransitionSystemState.TRANSITION_STATES transitionSystemState, RealMatrix actionDrives,
+                                                         double[] driveGradient, double[] parameterGradient) {
+            return ((DifferentiableUserModel) this.getSharedModel()).calculateActionProbabilityGradient(userType, transitionState,
+                    transitionSystemState, actionDrives, driveGradient, parameterGradient);
+        }
+    }
+}
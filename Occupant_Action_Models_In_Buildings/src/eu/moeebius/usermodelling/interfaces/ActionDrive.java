@@ -0,0 +1,71 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.interfaces;
+
+/**
+ * Definition of the action drives (model inputs) used by the User Models
+ * @author Georgios D. Kontes
+ */
+public class ActionDrive {
+
+    /**
+     * The specific action drives
+     * @author Georgios D. Kontes
+     */
+    public enum DRIVES {
+        /**
+         * Indoor air temperature
+         */
+        INDOOR_AIR_TEMPERATURE,
+        /**
+         * Indoor globe temperature
+         */
+        INDOOR_GLOBE_TEMPERATURE,
+        /**
+         * Outdoor air temperature
+         */
+        OUTDOOR_AIR_TEMPERATURE,
+        /**
+         * Daily mean outdoor air temperature
+         */
+        DAILY_MEAN_OUTDOOR_TEMPERATURE,
+        /**
+         * Binary input indicating preceding absences longer than 8 hours (1 = 8-hour absence, 0 = no 8-hour absence)
+         */
+        PRECEDING_ABSENCE,
+        /**
+         * Binary input indicating following absences longer than 8 hours (1 = 8-hour absence, 0 = no 8-hour absence)
+         */
+        FOLLOWING_ABSENCE,
+        /**
+         * Binary input indicating rainfall (1 = rain, 0 = no rain)
+         */
+        RAINFALL,
+        /**
+         * Ongoing presence duration (minutes)
+         */
+        PRESENCE_DURATION,
+        /**
+         * Binary input indicating if an office is on the ground floor (1 = is on the ground floor, 0 = is not on the ground floor)
+         */
+        GROUND_FLOOR,
+    }
+}
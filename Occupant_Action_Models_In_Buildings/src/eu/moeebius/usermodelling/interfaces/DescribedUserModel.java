@@ -0,0 +1,52 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.interfaces;
+
+/**
+ * Defines an interface for User Models that describe their own capabilities: the system they control, the action drives
+ * they expect and the combinations of states they cover. Models return 0 for every combination they do not cover, so
+ * simulation engines can use this description to skip such combinations altogether.
+ * @author Georgios D. Kontes
+ */
+public interface DescribedUserModel extends UserModel {
+
+    /**
+     * Returns the system the User Model acts on
+     * @return	The controlled system
+     */
+    ControlledSystem.SYSTEMS getControlledSystem();
+
+    /**
+     * Returns the action drives of the User Model, in the row order expected by calculateActionProbability
+     * @return	The action drives
+     */
+    ActionDrive.DRIVES[] getActionDrives();
+
+    /**
+     * Checks whether the User Model covers a combination of states
+     * @param userType	                The user type
+     * @param transitionState	        Markov transitions for occupancy status
+     * @param transitionSystemState	    Markov transitions for controllable system status
+     * @return	true if the model defines a probability of action for the combination; false if it always returns 0
+     */
+    boolean isSupported(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                        TransitionSystemState.TRANSITION_STATES transitionSystemState);
+}
@@ -0,0 +1,46 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.interfaces;
+import org.apache.commons.math3.linear.RealMatrix;
+
+/**
+ * Defines an interface for User Models that can also provide the gradient of the probability of action. For the logistic
+ * regression models the gradient is obtained in the same pass as the probability itself (dp/dz = p(1-p)), so optimizers
+ * do not need to estimate it by finite differences.
+ * @author Georgios D. Kontes
+ */
+public interface DifferentiableUserModel extends UserModel {
+
+    /**
+     * Calculates the probability of action together with its gradient with respect to the action drives and the parameters
+     * of the User Model. Both gradient arrays are overwritten; entries that do not influence the probability (e.g. for a
+     * combination of states the model does not cover) are set to 0.
+     * @param actionDrives	            A set of inputs (e.g. indoor temperature) that drives user behavior
+     * @param transitionState	        Markov transitions for occupancy status
+     * @param transitionSystemState	    Markov transitions for controllable system status
+     * @param driveGradient	            Receives dp/d(actionDrives), one entry per row of the action drives
+     * @param parameterGradient	        Receives dp/d(parameters), flattened row by row in the layout of getParameters().getData()
+     * @return	The probability the user will perform an action, identical to calculateActionProbability
+     */
+    double calculateActionProbabilityGradient(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                                              TransitionSystemState.TRANSITION_STATES transitionSystemState, RealMatrix actionDrives,
+                                              double[] driveGradient, double[] parameterGradient);
+}
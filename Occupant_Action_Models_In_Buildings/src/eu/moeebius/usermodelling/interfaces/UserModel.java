@@ -40,6 +40,8 @@ public interface UserModel {
 
     /**
      * Sets the parameters of the User Model. These are e.g. the regression coefficients in logistic regression.
+     * Models precomputed from fixed parameters (such as compiled probability tables) throw an IllegalStateException for any
+     * parameters other than their own.
      * @param parameters	The parameters of the User Model
      */
     void setParameters(RealMatrix parameters);
@@ -0,0 +1,140 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.metrics;
+
+import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
+import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
+import eu.moeebius.usermodelling.interfaces.UserModel;
+import eu.moeebius.usermodelling.interfaces.UserType;
+import eu.moeebius.usermodelling.registry.UserModelDescriptor;
+import org.apache.commons.math3.linear.RealMatrix;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Wraps a User Model to record evaluations, predictions, actions, unsupported combinations of states, NaN and out of range
+ * results and sampled latencies into a {@link UserModelMetrics}. While the metrics are disabled a call costs one volatile
+ * read on top of the wrapped model.
+ * @author Georgios D. Kontes
+ */
+public class InstrumentedUserModel implements UserModel {
+
+    private final UserModel model;
+    private final UserModelMetrics metrics;
+    private final long supportedCombinations;
+
+    /**
+     * Wraps a model
+     * @param model	    The User Model
+     * @param metrics	The metrics to record into
+     */
+    public InstrumentedUserModel(UserModel model, UserModelMetrics metrics) {
+        this.model = model;
+        this.metrics = metrics;
+        this.supportedCombinations = new UserModelDescriptor(model).getSupportedCombinations();
+    }
+
+    /**
+     * Returns the wrapped model
+     * @return	The User Model
+     */
+    public UserModel getModel() {
+        return this.model;
+    }
+
+    /**
+     * Returns the metrics recorded into
+     * @return	The metrics
+     */
+    public UserModelMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    @Override
+    public String getName() {
+        return this.model.getName();
+    }
+
+    @Override
+    public void setName(String name) {
+        this.model.setName(name);
+    }
+
+    @Override
+    public void setParameters(RealMatrix parameters) {
+        this.model.setParameters(parameters);
+    }
+
+    @Override
+    public RealMatrix getParameters() {
+        return this.model.getParameters();
+    }
+
+    @Override
+    public double calculateActionProbability(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                                             TransitionSystemState.TRANSITION_STATES transitionSystemState, RealMatrix actionDrives) {
+        if (!this.metrics.isEnabled()) {
+            return this.model.calculateActionProbability(userType, transitionState, transitionSystemState, actionDrives);
+        }
+        boolean sampled = this.isSampled();
+        long start = sampled ? System.nanoTime() : 0;
+        double actionProbability = this.model.calculateActionProbability(userType, transitionState, transitionSystemState, actionDrives);
+        if (sampled) {
+            this.metrics.recordLatency(System.nanoTime() - start);
+        }
+        int combination = UserModelDescriptor.combinationIndex(userType, transitionState, transitionSystemState);
+        this.metrics.recordEvaluation(combination, (this.supportedCombinations >>> combination & 1) != 0, actionProbability, isFinite(actionDrives));
+        return actionProbability;
+    }
+
+    @Override
+    public double predictAction(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                                TransitionSystemState.TRANSITION_STATES transitionSystemState, RealMatrix actionDrives) {
+        if (!this.metrics.isEnabled()) {
+            return this.model.predictAction(userType, transitionState, transitionSystemState, actionDrives);
+        }
+        boolean sampled = this.isSampled();
+        long start = sampled ? System.nanoTime() : 0;
+        double action = this.model.predictAction(userType, transitionState, transitionSystemState, actionDrives);
+        if (sampled) {
+            this.metrics.recordLatency(System.nanoTime() - start);
+        }
+        int combination = UserModelDescriptor.combinationIndex(userType, transitionState, transitionSystemState);
+        this.metrics.recordPrediction(combination, (this.supportedCombinations >>> combination & 1) != 0, action != 0, isFinite(actionDrives));
+        return action;
+    }
+
+    private boolean isSampled() {
+        int samplingInterval = this.metrics.getSamplingInterval();
+        return samplingInterval == 1 || ThreadLocalRandom.current().nextInt(samplingInterval) == 0;
+    }
+
+    private static boolean isFinite(RealMatrix actionDrives) {
+        for (int i = 0; i < actionDrives.getRowDimension(); i++) {
+            for (int j = 0; j < actionDrives.getColumnDimension(); j++) {
+                if (!Double.isFinite(actionDrives.getEntry(i, j))) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,270 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.metrics;
+
+import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
+import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
+import eu.moeebius.usermodelling.interfaces.UserType;
+import eu.moeebius.usermodelling.registry.UserModelDescriptor;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The metrics of one User Model, recorded by any number of {@link InstrumentedUserModel} instances sharing it (e.g. all
+ * rooms using the same model). Counters are striped LongAdders, one per combination of states, so that concurrent
+ * controllers do not contend; latencies are sampled. Metrics can be exposed as a JMX MBean.
+ * @author Georgios D. Kontes
+ */
+public class UserModelMetrics implements UserModelMetricsMBean {
+
+    private static final int COMBINATIONS = 64;
+
+    private final String name;
+    private final LongAdder[] evaluations = newCounters();
+    private final LongAdder[] predictions = newCounters();
+    private final LongAdder[] actions = newCounters();
+    private final LongAdder unsupported = new LongAdder();
+    private final LongAdder nans = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private volatile boolean enabled;
+    private volatile int samplingInterval = 64;
+    private ObjectName objectName;
+
+    /**
+     * Creates disabled metrics
+     * @param name	The name of the metrics, e.g. the model identifier
+     */
+    public UserModelMetrics(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of the metrics
+     * @return	The name
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return this.enabled;
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @Override
+    public int getSamplingInterval() {
+        return this.samplingInterval;
+    }
+
+    @Override
+    public void setSamplingInterval(int samplingInterval) {
+        if (samplingInterval < 1) {
+            throw new IllegalArgumentException("Sampling interval must be positive");
+        }
+        this.samplingInterval = samplingInterval;
+    }
+
+    @Override
+    public long getEvaluationCount() {
+        return sum(this.evaluations);
+    }
+
+    @Override
+    public long getPredictionCount() {
+        return sum(this.predictions);
+    }
+
+    @Override
+    public long getActionCount() {
+        return sum(this.actions);
+    }
+
+    @Override
+    public double getActionRate() {
+        long predictions = this.getPredictionCount();
+        return predictions == 0 ? 0 : (double) this.getActionCount() / predictions;
+    }
+
+    @Override
+    public long getUnsupportedCount() {
+        return this.unsupported.sum();
+    }
+
+    @Override
+    public long getNaNCount() {
+        return this.nans.sum();
+    }
+
+    @Override
+    public long getOverflowCount() {
+        return this.overflows.sum();
+    }
+
+    @Override
+    public long getLatencySampleCount() {
+        return this.latencies.getCount();
+    }
+
+    @Override
+    public double getLatencyMeanNanos() {
+        return this.latencies.getMean();
+    }
+
+    @Override
+    public long getLatencyP50Nanos() {
+        return this.latencies.getPercentile(50);
+    }
+
+    @Override
+    public long getLatencyP99Nanos() {
+        return this.latencies.getPercentile(99);
+    }
+
+    /**
+     * Returns the number of evaluations for a combination of states
+     * @param userType	                User type
+     * @param transitionState	        Markov transitions for occupancy status
+     * @param transitionSystemState	    Markov transitions for controllable system status
+     * @return	The number of evaluations
+     */
+    public long getEvaluationCount(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                                   TransitionSystemState.TRANSITION_STATES transitionSystemState) {
+        return this.evaluations[UserModelDescriptor.combinationIndex(userType, transitionState, transitionSystemState)].sum();
+    }
+
+    @Override
+    public String[] getCombinationCounts() {
+        List<String> lines = new ArrayList<>();
+        for (TransitionSystemState.TRANSITION_STATES transitionSystemState : TransitionSystemState.TRANSITION_STATES.values()) {
+            for (TransitionOccupantState.TRANSITION_STATES transitionState : TransitionOccupantState.TRANSITION_STATES.values()) {
+                for (UserType.USER_TYPES userType : UserType.USER_TYPES.values()) {
+                    int combination = UserModelDescriptor.combinationIndex(userType, transitionState, transitionSystemState);
+                    long evaluations = this.evaluations[combination].sum();
+                    long predictions = this.predictions[combination].sum();
+                    if (evaluations + predictions > 0) {
+                        lines.add(userType + "/" + transitionState + "/" + transitionSystemState + " evaluations=" + evaluations
+                                + " predictions=" + predictions + " actions=" + this.actions[combination].sum());
+                    }
+                }
+            }
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < COMBINATIONS; i++) {
+            this.evaluations[i].reset();
+            this.predictions[i].reset();
+            this.actions[i].reset();
+        }
+        this.unsupported.reset();
+        this.nans.reset();
+        this.overflows.reset();
+        this.latencies.reset();
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, as eu.moeebius.usermodelling:type=UserModelMetrics,name=...
+     * @return	The object name of the MBean
+     * @throws JMException	If the name is invalid or already registered
+     */
+    public synchronized ObjectName register() throws JMException {
+        if (this.objectName == null) {
+            ObjectName objectName = new ObjectName("eu.moeebius.usermodelling:type=UserModelMetrics,name=" + ObjectName.quote(this.name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+        }
+        return this.objectName;
+    }
+
+    /**
+     * Removes the metrics from the platform MBean server, if registered
+     * @throws JMException	If the MBean cannot be unregistered
+     */
+    public synchronized void unregister() throws JMException {
+        if (this.objectName != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(this.objectName)) {
+                server.unregisterMBean(this.objectName);
+            }
+            this.objectName = null;
+        }
+    }
+
+    void recordEvaluation(int combination, boolean supported, double actionProbability, boolean finiteDrives) {
+        this.evaluations[combination].increment();
+        if (!supported) {
+            this.unsupported.increment();
+        }
+        if (Double.isNaN(actionProbability)) {
+            this.nans.increment();
+        }
+        if (!finiteDrives || actionProbability < 0 || actionProbability > 1) {
+            this.overflows.increment();
+        }
+    }
+
+    void recordPrediction(int combination, boolean supported, boolean action, boolean finiteDrives) {
+        this.predictions[combination].increment();
+        if (!supported) {
+            this.unsupported.increment();
+        }
+        if (action) {
+            this.actions[combination].increment();
+        }
+        if (!finiteDrives) {
+            this.overflows.increment();
+        }
+    }
+
+    void recordLatency(long nanos) {
+        this.latencies.record(nanos);
+    }
+
+    private static LongAdder[] newCounters() {
+        LongAdder[] counters = new LongAdder[COMBINATIONS];
+        for (int i = 0; i < COMBINATIONS; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+
+    private static long sum(LongAdder[] counters) {
+        long sum = 0;
+        for (LongAdder counter : counters) {
+            sum += counter.sum();
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,130 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.metrics;
+
+/**
+ * The JMX management interface of {@link UserModelMetrics}
+ * @author Georgios D. Kontes
+ */
+public interface UserModelMetricsMBean {
+
+    /**
+     * Returns true if instrumented models record metrics
+     * @return	true if enabled
+     */
+    boolean isEnabled();
+
+    /**
+     * Enables or disables recording; disabled models only pay a volatile read per call
+     * @param enabled	true to record metrics
+     */
+    void setEnabled(boolean enabled);
+
+    /**
+     * Returns the mean number of calls per latency sample
+     * @return	The sampling interval
+     */
+    int getSamplingInterval();
+
+    /**
+     * Sets the mean number of calls per latency sample
+     * @param samplingInterval	The sampling interval (1 times every call)
+     */
+    void setSamplingInterval(int samplingInterval);
+
+    /**
+     * Returns the number of calls of calculateActionProbability
+     * @return	The number of evaluations
+     */
+    long getEvaluationCount();
+
+    /**
+     * Returns the number of calls of predictAction
+     * @return	The number of predictions
+     */
+    long getPredictionCount();
+
+    /**
+     * Returns the number of predictions that resulted in an action
+     * @return	The number of actions
+     */
+    long getActionCount();
+
+    /**
+     * Returns the fraction of predictions that resulted in an action
+     * @return	The action rate, or 0 without predictions
+     */
+    double getActionRate();
+
+    /**
+     * Returns the number of calls for a combination of states the model does not define, which fall through to a zero
+     * probability
+     * @return	The number of unsupported calls
+     */
+    long getUnsupportedCount();
+
+    /**
+     * Returns the number of evaluations that produced NaN
+     * @return	The number of NaN results
+     */
+    long getNaNCount();
+
+    /**
+     * Returns the number of calls with non-finite action drives or probabilities outside [0, 1]
+     * @return	The number of overflows
+     */
+    long getOverflowCount();
+
+    /**
+     * Returns the number of latency samples
+     * @return	The number of samples
+     */
+    long getLatencySampleCount();
+
+    /**
+     * Returns the mean sampled latency
+     * @return	The mean latency (ns)
+     */
+    double getLatencyMeanNanos();
+
+    /**
+     * Returns the median sampled latency
+     * @return	The median latency (ns)
+     */
+    long getLatencyP50Nanos();
+
+    /**
+     * Returns the 99th percentile of the sampled latency
+     * @return	The latency (ns)
+     */
+    long getLatencyP99Nanos();
+
+    /**
+     * Returns the calls per combination of states, one line per combination that was used
+     * @return	The lines, as "userType/transitionState/transitionSystemState evaluations=n predictions=n actions=n"
+     */
+    String[] getCombinationCounts();
+
+    /**
+     * Clears all counters and latency samples
+     */
+    void reset();
+}
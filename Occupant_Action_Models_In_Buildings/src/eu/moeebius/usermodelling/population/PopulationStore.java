@@ -0,0 +1,295 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.population;
+
+import eu.moeebius.usermodelling.events.IoChunkEvent;
+import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
+import eu.moeebius.usermodelling.interfaces.UserType;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Per-occupant simulation state for large populations, held off the Java heap in packed columns: user type and occupancy
+ * state (one byte each), window and blinds state (one bit each in a flags byte) and the current action drives (one column
+ * of doubles per drive). The store lives either in a direct buffer or in a memory-mapped file, so its size is fixed up
+ * front, it adds no objects for the garbage collector to trace, and a population can be reopened from disk.
+ * Accessors are not synchronized; concurrent writers must work on disjoint occupants.
+ * @author Georgios D. Kontes
+ */
+public class PopulationStore {
+
+    private static final int MAGIC = 0x504F5031;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int WINDOW_OPEN = 1;
+    private static final int BLINDS_LOWERED = 2;
+    private static final UserType.USER_TYPES[] USER_TYPES = UserType.USER_TYPES.values();
+    private static final TransitionOccupantState.TRANSITION_STATES[] OCCUPANT_STATES = TransitionOccupantState.TRANSITION_STATES.values();
+
+    private final ByteBuffer buffer;
+    private final int occupants;
+    private final int driveCount;
+    private final int userTypeOffset;
+    private final int occupancyOffset;
+    private final int flagsOffset;
+    private final int drivesOffset;
+
+    private PopulationStore(ByteBuffer buffer, int occupants, int driveCount) {
+        this.buffer = buffer.order(ByteOrder.LITTLE_ENDIAN);
+        this.occupants = occupants;
+        this.driveCount = driveCount;
+        this.userTypeOffset = HEADER_BYTES;
+        this.occupancyOffset = this.userTypeOffset + occupants;
+        this.flagsOffset = this.occupancyOffset + occupants;
+        this.drivesOffset = align(this.flagsOffset + occupants);
+    }
+
+    /**
+     * Allocates a store in a direct buffer. All occupants start as UNKNOWN users with ALL_STATES occupancy, closed windows,
+     * raised blinds and zero drives.
+     * @param occupants	    The number of occupants
+     * @param driveCount	The number of action drives per occupant
+     * @return	The store
+     */
+    public static PopulationStore allocate(int occupants, int driveCount) {
+        PopulationStore store = new PopulationStore(ByteBuffer.allocateDirect((int) byteSize(occupants, driveCount)), occupants, driveCount);
+        store.initialise();
+        return store;
+    }
+
+    /**
+     * Maps a store from a file. An existing store file is opened as is (and must match the dimensions); otherwise the file
+     * is created and initialised like {@link #allocate(int, int)}.
+     * @param file	        The store file
+     * @param occupants	    The number of occupants
+     * @param driveCount	The number of action drives per occupant
+     * @return	The store
+     * @throws IOException	If the file cannot be mapped or holds a store with other dimensions
+     */
+    public static PopulationStore map(Path file, int occupants, int driveCount) throws IOException {
+        long size = byteSize(occupants, driveCount);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            boolean existing = channel.size() > 0;
+            if (existing && channel.size() != size) {
+                throw new IOException("Population store " + file + " does not match " + occupants + " occupants with " + driveCount + " drives");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            PopulationStore store = new PopulationStore(mapped, occupants, driveCount);
+            if (!existing) {
+                store.initialise();
+            } else if (store.buffer.getInt(0) != MAGIC || store.buffer.getInt(4) != VERSION
+                    || store.buffer.getInt(8) != occupants || store.buffer.getInt(12) != driveCount) {
+                throw new IOException("Population store " + file + " does not match " + occupants + " occupants with " + driveCount + " drives");
+            }
+            return store;
+        }
+    }
+
+    private static long byteSize(int occupants, int driveCount) {
+        long size = align(HEADER_BYTES + 3L * occupants) + 8L * occupants * driveCount;
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Population store of " + occupants + " occupants with " + driveCount + " drives exceeds 2 GB");
+        }
+        return size;
+    }
+
+    private static int align(long offset) {
+        return (int) ((offset + 7) & ~7L);
+    }
+
+    private void initialise() {
+        this.buffer.putInt(0, MAGIC);
+        this.buffer.putInt(4, VERSION);
+        this.buffer.putInt(8, this.occupants);
+        this.buffer.putInt(12, this.driveCount);
+        for (int i = 0; i < this.occupants; i++) {
+            this.buffer.put(this.userTypeOffset + i, (byte) UserType.USER_TYPES.UNKNOWN.ordinal());
+            this.buffer.put(this.occupancyOffset + i, (byte) TransitionOccupantState.TRANSITION_STATES.ALL_STATES.ordinal());
+        }
+    }
+
+    /**
+     * Returns the number of occupants
+     * @return	The number of occupants
+     */
+    public int getOccupants() {
+        return this.occupants;
+    }
+
+    /**
+     * Returns the number of action drives per occupant
+     * @return	The number of action drives
+     */
+    public int getDriveCount() {
+        return this.driveCount;
+    }
+
+    /**
+     * Returns the user type of an occupant
+     * @param occupant	The occupant index
+     * @return	The user type
+     */
+    public UserType.USER_TYPES getUserType(int occupant) {
+        return USER_TYPES[this.buffer.get(this.userTypeOffset + occupant)];
+    }
+
+    /**
+     * Sets the user type of an occupant
+     * @param occupant	The occupant index
+     * @param userType	The user type
+     */
+    public void setUserType(int occupant, UserType.USER_TYPES userType) {
+        this.buffer.put(this.userTypeOffset + occupant, (byte) userType.ordinal());
+    }
+
+    /**
+     * Returns the occupancy transition of an occupant
+     * @param occupant	The occupant index
+     * @return	The occupancy transition
+     */
+    public TransitionOccupantState.TRANSITION_STATES getOccupancyState(int occupant) {
+        return OCCUPANT_STATES[this.buffer.get(this.occupancyOffset + occupant)];
+    }
+
+    /**
+     * Sets the occupancy transition of an occupant
+     * @param occupant	        The occupant index
+     * @param occupancyState	The occupancy transition
+     */
+    public void setOccupancyState(int occupant, TransitionOccupantState.TRANSITION_STATES occupancyState) {
+        this.buffer.put(this.occupancyOffset + occupant, (byte) occupancyState.ordinal());
+    }
+
+    /**
+     * Returns whether the window of an occupant is open
+     * @param occupant	The occupant index
+     * @return	true if the window is open
+     */
+    public boolean isWindowOpen(int occupant) {
+        return (this.buffer.get(this.flagsOffset + occupant) & WINDOW_OPEN) != 0;
+    }
+
+    /**
+     * Sets whether the window of an occupant is open
+     * @param occupant	The occupant index
+     * @param open	    true if the window is open
+     */
+    public void setWindowOpen(int occupant, boolean open) {
+        this.setFlag(occupant, WINDOW_OPEN, open);
+    }
+
+    /**
+     * Returns whether the blinds of an occupant are lowered
+     * @param occupant	The occupant index
+     * @return	true if the blinds are lowered
+     */
+    public boolean isBlindsLowered(int occupant) {
+        return (this.buffer.get(this.flagsOffset + occupant) & BLINDS_LOWERED) != 0;
+    }
+
+    /**
+     * Sets whether the blinds of an occupant are lowered
+     * @param occupant	The occupant index
+     * @param lowered	true if the blinds are lowered
+     */
+    public void setBlindsLowered(int occupant, boolean lowered) {
+        this.setFlag(occupant, BLINDS_LOWERED, lowered);
+    }
+
+    private void setFlag(int occupant, int flag, boolean value) {
+        int index = this.flagsOffset + occupant;
+        int flags = this.buffer.get(index);
+        this.buffer.put(index, (byte) (value ? flags | flag : flags & ~flag));
+    }
+
+    /**
+     * Returns an action drive of an occupant
+     * @param occupant	The occupant index
+     * @param drive	    The drive index
+     * @return	The drive value
+     */
+    public double getDrive(int occupant, int drive) {
+        return this.buffer.getDouble(this.driveIndex(occupant, drive));
+    }
+
+    /**
+     * Sets an action drive of an occupant
+     * @param occupant	The occupant index
+     * @param drive	    The drive index
+     * @param value	    The drive value
+     */
+    public void setDrive(int occupant, int drive, double value) {
+        this.buffer.putDouble(this.driveIndex(occupant, drive), value);
+    }
+
+    private int driveIndex(int occupant, int drive) {
+        return this.drivesOffset + ((drive * this.occupants + occupant) << 3);
+    }
+
+    /**
+     * Copies the action drives of an occupant into a drive matrix, e.g. a matrix reused across calls to a User Model
+     * @param occupant	The occupant index
+     * @param target	A matrix with one row per drive and a single column
+     */
+    public void copyDrives(int occupant, Array2DRowRealMatrix target) {
+        double[][] data = target.getDataRef();
+        for (int drive = 0; drive < this.driveCount; drive++) {
+            data[drive][0] = this.buffer.getDouble(this.driveIndex(occupant, drive));
+        }
+    }
+
+    /**
+     * Copies one action drive of a range of occupants into an array, e.g. a drive column of a batch evaluation
+     * @param drive	    The drive index
+     * @param from	    The first occupant (inclusive)
+     * @param to	    The last occupant (exclusive)
+     * @param target	Receives the drive of occupant i at index i - from
+     */
+    public void copyDriveColumn(int drive, int from, int to, double[] target) {
+        ByteBuffer column = this.buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        column.position(this.driveIndex(from, drive));
+        column.asDoubleBuffer().get(target, 0, to - from);
+    }
+
+    /**
+     * Writes changes of a file-mapped store to disk; does nothing for stores in a direct buffer
+     */
+    public void force() {
+        if (this.buffer instanceof MappedByteBuffer) {
+            IoChunkEvent event = new IoChunkEvent();
+            event.begin();
+            ((MappedByteBuffer) this.buffer).force();
+            if (event.shouldCommit()) {
+                event.resource = "PopulationStore";
+                event.operation = "force";
+                event.bytes = this.buffer.capacity();
+                event.commit();
+            }
+        }
+    }
+}
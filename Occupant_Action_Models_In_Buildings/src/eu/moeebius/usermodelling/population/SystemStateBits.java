@@ -0,0 +1,252 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.population;
+
+import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
+
+import java.util.Arrays;
+
+/**
+ * Binary system state (window open/closed, or blinds lowered/raised) of many rooms packed into 64-bit words, one bit per
+ * room. Per time-step the sampled outcomes of predictAction are collected as an action mask (an action toggles the state
+ * of its room), {@link #step()} applies them, and the transition of every room between the previous and the current step
+ * (CLOSE_OPEN, OPEN_OPEN, ...) is derived with word-wide bit operations. Open rooms of a zone (a contiguous range of rooms)
+ * are counted with {@link Long#bitCount(long)}.
+ * Not synchronized; concurrent writers must record actions for rooms in different words.
+ * @author Georgios D. Kontes
+ */
+public class SystemStateBits {
+
+    private static final TransitionSystemState.TRANSITION_STATES[] TRANSITIONS = {
+            TransitionSystemState.TRANSITION_STATES.CLOSE_CLOSE,
+            TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN,
+            TransitionSystemState.TRANSITION_STATES.OPEN_CLOSE,
+            TransitionSystemState.TRANSITION_STATES.OPEN_OPEN,
+    };
+
+    private final int rooms;
+    private final long[] open;
+    private final long[] previous;
+    private final long[] actions;
+
+    /**
+     * Creates the state of a number of rooms, all closed
+     * @param rooms	    The number of rooms
+     */
+    public SystemStateBits(int rooms) {
+        int words = (rooms + 63) >>> 6;
+        this.rooms = rooms;
+        this.open = new long[words];
+        this.previous = new long[words];
+        this.actions = new long[words];
+    }
+
+    /**
+     * Returns the number of rooms
+     * @return	The number of rooms
+     */
+    public int getRooms() {
+        return this.rooms;
+    }
+
+    /**
+     * Returns whether a room is open in the current step
+     * @param room	The room index
+     * @return	true if the system is open
+     */
+    public boolean isOpen(int room) {
+        return (this.open[room >>> 6] & (1L << room)) != 0;
+    }
+
+    /**
+     * Sets the current state of a room directly, e.g. from measurements, without recording an action
+     * @param room	The room index
+     * @param open	true if the system is open
+     */
+    public void setOpen(int room, boolean open) {
+        if (open) {
+            this.open[room >>> 6] |= 1L << room;
+        } else {
+            this.open[room >>> 6] &= ~(1L << room);
+        }
+    }
+
+    /**
+     * Records the sampled outcome of predictAction for a room in the current step
+     * @param room	    The room index
+     * @param action	The outcome of predictAction; any non-zero value toggles the state of the room in the next step
+     */
+    public void recordAction(int room, double action) {
+        if (action != 0) {
+            this.actions[room >>> 6] |= 1L << room;
+        }
+    }
+
+    /**
+     * Records the sampled outcomes of a whole word of rooms at once
+     * @param word	    The word index (rooms 64 * word to 64 * word + 63)
+     * @param actions	One bit per room; set bits toggle the state of the room in the next step
+     */
+    public void recordActions(int word, long actions) {
+        this.actions[word] |= actions;
+    }
+
+    /**
+     * Advances to the next step: the current states become the previous ones and every recorded action is applied
+     */
+    public void step() {
+        for (int word = 0; word < this.open.length; word++) {
+            this.previous[word] = this.open[word];
+            this.open[word] ^= this.actions[word];
+        }
+        Arrays.fill(this.actions, 0);
+    }
+
+    /**
+     * Returns the number of 64-room words
+     * @return	The number of words
+     */
+    public int getWords() {
+        return this.open.length;
+    }
+
+    /**
+     * Copies a range of the current and previous state words, e.g. for checkpointing
+     * @param fromWord	The first word (inclusive)
+     * @param toWord	The last word (exclusive)
+     * @param open	    Receives the current states, starting at index fromWord
+     * @param previous	Receives the previous states, starting at index fromWord
+     */
+    public void copyWords(int fromWord, int toWord, long[] open, long[] previous) {
+        System.arraycopy(this.open, fromWord, open, fromWord, toWord - fromWord);
+        System.arraycopy(this.previous, fromWord, previous, fromWord, toWord - fromWord);
+    }
+
+    /**
+     * Replaces a range of the current and previous state words, e.g. when restoring a checkpoint; pending actions of the
+     * range are discarded
+     * @param fromWord	The first word (inclusive)
+     * @param toWord	The last word (exclusive)
+     * @param open	    The current states, starting at index fromWord
+     * @param previous	The previous states, starting at index fromWord
+     */
+    public void setWords(int fromWord, int toWord, long[] open, long[] previous) {
+        System.arraycopy(open, fromWord, this.open, fromWord, toWord - fromWord);
+        System.arraycopy(previous, fromWord, this.previous, fromWord, toWord - fromWord);
+        Arrays.fill(this.actions, fromWord, toWord, 0);
+    }
+
+    /**
+     * Returns the transition of a room between the previous and the current step
+     * @param room	The room index
+     * @return	The system transition
+     */
+    public TransitionSystemState.TRANSITION_STATES getTransition(int room) {
+        int word = room >>> 6;
+        int index = (int) ((this.previous[word] >>> room) & 1) << 1 | (int) ((this.open[word] >>> room) & 1);
+        return TRANSITIONS[index];
+    }
+
+    /**
+     * Computes the rooms that went through a transition between the previous and the current step
+     * @param transition	The system transition
+     * @param target	    Receives one bit per room (at least as many words as the state has)
+     * @return	The number of rooms in the transition
+     */
+    public int transitionMask(TransitionSystemState.TRANSITION_STATES transition, long[] target) {
+        int count = 0;
+        int last = this.open.length - 1;
+        for (int word = 0; word <= last; word++) {
+            long previous = this.previous[word];
+            long current = this.open[word];
+            long mask;
+            switch (transition) {
+                case CLOSE_OPEN:
+                    mask = ~previous & current;
+                    break;
+                case OPEN_OPEN:
+                    mask = previous & current;
+                    break;
+                case OPEN_CLOSE:
+                    mask = previous & ~current;
+                    break;
+                default:
+                    mask = ~previous & ~current;
+                    break;
+            }
+            if (word == last) {
+                mask &= this.tailMask();
+            }
+            target[word] = mask;
+            count += Long.bitCount(mask);
+        }
+        return count;
+    }
+
+    /**
+     * Counts the open rooms
+     * @return	The number of open rooms
+     */
+    public int countOpen() {
+        return this.countOpen(0, this.rooms);
+    }
+
+    /**
+     * Counts the open rooms of a zone
+     * @param from	    The first room of the zone (inclusive)
+     * @param to	    The last room of the zone (exclusive)
+     * @return	The number of open rooms
+     */
+    public int countOpen(int from, int to) {
+        if (from >= to) {
+            return 0;
+        }
+        int first = from >>> 6;
+        int last = (to - 1) >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> (63 - ((to - 1) & 63));
+        if (first == last) {
+            return Long.bitCount(this.open[first] & firstMask & lastMask);
+        }
+        int count = Long.bitCount(this.open[first] & firstMask) + Long.bitCount(this.open[last] & lastMask);
+        for (int word = first + 1; word < last; word++) {
+            count += Long.bitCount(this.open[word]);
+        }
+        return count;
+    }
+
+    /**
+     * Counts the open rooms of consecutive zones
+     * @param zoneStarts	The first room of every zone; zone z covers rooms zoneStarts[z] up to the next zone start (or the last room)
+     * @param counts	    Receives the number of open rooms per zone
+     */
+    public void countOpenPerZone(int[] zoneStarts, int[] counts) {
+        for (int zone = 0; zone < zoneStarts.length; zone++) {
+            int end = zone + 1 < zoneStarts.length ? zoneStarts[zone + 1] : this.rooms;
+            counts[zone] = this.countOpen(zoneStarts[zone], end);
+        }
+    }
+
+    private long tailMask() {
+        int used = this.rooms & 63;
+        return used == 0 ? -1L : (1L << used) - 1;
+    }
+}
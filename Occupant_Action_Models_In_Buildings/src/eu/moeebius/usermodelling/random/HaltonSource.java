@@ -0,0 +1,84 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.random;
+
+import org.apache.commons.math3.random.HaltonSequenceGenerator;
+
+/**
+ * The permutation-scrambled Halton sequence of Faure and Lemieux with a random Cranley-Patterson rotation: a random shift
+ * fixed per dimension is added to every coordinate modulo 1. The scrambling covers 40 dimensions, beyond which the plain
+ * Halton sequence does worse than pseudo-random points; points of higher dimension are therefore padded, the leading 40
+ * coordinates coming from the sequence and the others from a {@link SplitMix64} stream reseeded with every rotation.
+ * Prefer {@link SobolSource} when many coordinates matter.
+ * @author Georgios D. Kontes
+ */
+public final class HaltonSource implements RandomizedSequence {
+
+    /**
+     * The highest number of coordinates taken from the sequence
+     */
+    public static final int MAXIMUM_SEQUENCE_DIMENSION = 40;
+
+    private final int dimension;
+    private final HaltonSequenceGenerator generator;
+    private final double[] shifts;
+    private final long[] padding = new long[1];
+
+    /**
+     * Creates the sequence with a random rotation
+     * @param dimension	The number of coordinates of every point
+     * @param seed	    The seed of the rotation
+     */
+    public HaltonSource(int dimension, long seed) {
+        int sequenceDimension = Math.min(dimension, MAXIMUM_SEQUENCE_DIMENSION);
+        this.dimension = dimension;
+        this.generator = new HaltonSequenceGenerator(sequenceDimension);
+        this.shifts = new double[sequenceDimension];
+        this.restart(seed);
+    }
+
+    @Override
+    public int getDimension() {
+        return this.dimension;
+    }
+
+    @Override
+    public void restart(long seed) {
+        long[] state = {SplitMix64.seed(seed, 0)};
+        for (int i = 0; i < this.shifts.length; i++) {
+            this.shifts[i] = SplitMix64.nextUniform(state, 0);
+        }
+        this.padding[0] = SplitMix64.seed(seed, 1);
+        this.generator.skipTo(0);
+    }
+
+    @Override
+    public void nextPoint(double[] point) {
+        double[] vector = this.generator.nextVector();
+        for (int i = 0; i < this.shifts.length; i++) {
+            double value = vector[i] + this.shifts[i];
+            point[i] = value >= 1 ? value - 1 : value;
+        }
+        for (int i = this.shifts.length; i < this.dimension; i++) {
+            point[i] = SplitMix64.nextUniform(this.padding, 0);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.random;
+
+import org.apache.commons.math3.random.SobolSequenceGenerator;
+
+/**
+ * The Sobol sequence (Joe-Kuo direction numbers) with a random digital shift: the 52 bits of every coordinate are XOR-ed
+ * with random bits fixed per dimension, which preserves the net structure of the sequence. The direction numbers cover
+ * 1000 dimensions; points of higher dimension are padded, the leading 1000 coordinates coming from the sequence and the
+ * others from a {@link SplitMix64} stream reseeded with every shift, so long horizons (e.g. a year of hourly steps) gain
+ * from the sequence on their leading coordinates and the randomized error estimate stays valid. Use point counts that are
+ * powers of two.
+ * @author Georgios D. Kontes
+ */
+public final class SobolSource implements RandomizedSequence {
+
+    /**
+     * The highest number of coordinates taken from the sequence
+     */
+    public static final int MAXIMUM_SEQUENCE_DIMENSION = 1000;
+
+    private static final int BITS = 52;
+    private static final double SCALE = 0x1.0p52;
+
+    private final int dimension;
+    private final SobolSequenceGenerator generator;
+    private final long[] shifts;
+    private final double[] origin;
+    private final long[] padding = new long[1];
+    private boolean atOrigin;
+
+    /**
+     * Creates the sequence with a random shift
+     * @param dimension	The number of coordinates of every point
+     * @param seed	    The seed of the shift
+     */
+    public SobolSource(int dimension, long seed) {
+        int sequenceDimension = Math.min(dimension, MAXIMUM_SEQUENCE_DIMENSION);
+        this.dimension = dimension;
+        this.generator = new SobolSequenceGenerator(sequenceDimension);
+        this.shifts = new long[sequenceDimension];
+        this.origin = new double[sequenceDimension];
+        this.restart(seed);
+    }
+
+    @Override
+    public int getDimension() {
+        return this.dimension;
+    }
+
+    @Override
+    public void restart(long seed) {
+        long[] state = {SplitMix64.seed(seed, 0)};
+        for (int i = 0; i < this.shifts.length; i++) {
+            this.shifts[i] = SplitMix64.nextLong(state, 0) >>> (64 - BITS);
+        }
+        this.padding[0] = SplitMix64.seed(seed, 1);
+        // skipTo(0) already returns the first point of the sequence (the origin), which is therefore handed out separately
+        this.generator.skipTo(0);
+        this.atOrigin = true;
+    }
+
+    @Override
+    public void nextPoint(double[] point) {
+        double[] vector = this.atOrigin ? this.origin : this.generator.nextVector();
+        this.atOrigin = false;
+        for (int i = 0; i < this.shifts.length; i++) {
+            point[i] = (((long) (vector[i] * SCALE)) ^ this.shifts[i]) / SCALE;
+        }
+        for (int i = this.shifts.length; i < this.dimension; i++) {
+            point[i] = SplitMix64.nextUniform(this.padding, 0);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.random;
+
+/**
+ * SplitMix64 pseudo-random streams whose whole state is a single long. Simulations keep one stream per room in a long array,
+ * so every room draws the same numbers regardless of how rooms are partitioned over threads or processes, and the state of
+ * all streams can be saved and restored exactly.
+ * @author Georgios D. Kontes
+ */
+public final class SplitMix64 {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private SplitMix64() {}
+
+    /**
+     * Derives the initial state of one stream from a simulation seed
+     * @param seed	    The simulation seed
+     * @param stream	The stream index (e.g. the room index)
+     * @return	The initial stream state
+     */
+    public static long seed(long seed, long stream) {
+        return mix(seed + mix(stream * GOLDEN_GAMMA + GOLDEN_GAMMA));
+    }
+
+    /**
+     * Advances a stream and returns its next 64 random bits
+     * @param states	The stream states
+     * @param stream	The stream index
+     * @return	64 random bits
+     */
+    public static long nextLong(long[] states, int stream) {
+        long state = states[stream] + GOLDEN_GAMMA;
+        states[stream] = state;
+        return mix(state);
+    }
+
+    /**
+     * Advances a stream and returns a uniform draw
+     * @param states	The stream states
+     * @param stream	The stream index
+     * @return	A uniform draw in [0, 1)
+     */
+    public static double nextUniform(long[] states, int stream) {
+        return (nextLong(states, stream) >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * The SplitMix64 output function
+     * @param z	    The value to mix
+     * @return	The mixed value
+     */
+    public static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,54 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.random;
+
+/**
+ * Pseudo-random points from a single {@link SplitMix64} stream. Two sources created with the same seed hand out the same
+ * points.
+ * @author Georgios D. Kontes
+ */
+public class SplitMix64Source implements UniformSource {
+
+    private final int dimension;
+    private final long[] state = new long[1];
+
+    /**
+     * Creates the source
+     * @param dimension	    The number of coordinates of every point
+     * @param seed	        The seed of the stream
+     */
+    public SplitMix64Source(int dimension, long seed) {
+        this.dimension = dimension;
+        this.state[0] = SplitMix64.seed(seed, 0);
+    }
+
+    @Override
+    public int getDimension() {
+        return this.dimension;
+    }
+
+    @Override
+    public void nextPoint(double[] point) {
+        for (int i = 0; i < this.dimension; i++) {
+            point[i] = SplitMix64.nextUniform(this.state, 0);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.random;
+
+/**
+ * A source of points in the unit hypercube that drives the random decisions of a simulation: every simulated trajectory
+ * takes one point, one coordinate per random decision. Sources that hand out the same points to two simulations make them
+ * use common random numbers.
+ * @author Georgios D. Kontes
+ */
+public interface UniformSource {
+
+    /**
+     * Returns the number of coordinates of every point
+     * @return	The dimension
+     */
+    int getDimension();
+
+    /**
+     * Draws the next point
+     * @param point	    Receives the coordinates, each in [0, 1)
+     */
+    void nextPoint(double[] point);
+}
@@ -0,0 +1,177 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.registry;
+
+import eu.moeebius.usermodelling.flyweight.UserModelHandle;
+import eu.moeebius.usermodelling.interfaces.ActionDrive;
+import eu.moeebius.usermodelling.interfaces.ControlledSystem;
+import eu.moeebius.usermodelling.interfaces.DescribedUserModel;
+import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
+import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
+import eu.moeebius.usermodelling.interfaces.UserModel;
+import eu.moeebius.usermodelling.interfaces.UserType;
+
+/**
+ * Capability metadata of a User Model implementation: its identifier (the simple class name), default name, controlled
+ * system, action drives and the combinations of states it covers. The covered combinations are held as a 64-bit mask, so
+ * checking a combination is a single bit test.
+ * @author Georgios D. Kontes
+ */
+public class UserModelDescriptor {
+
+    private static final int USER_TYPES = UserType.USER_TYPES.values().length;
+    private static final int OCCUPANT_STATES = TransitionOccupantState.TRANSITION_STATES.values().length;
+    private static final long ALL_COMBINATIONS = -1L >>> (64 - TransitionSystemState.TRANSITION_STATES.values().length * OCCUPANT_STATES * USER_TYPES);
+
+    private final Class<? extends UserModel> modelClass;
+    private final String defaultName;
+    private final ControlledSystem.SYSTEMS controlledSystem;
+    private final ActionDrive.DRIVES[] actionDrives;
+    private final long supportedCombinations;
+
+    /**
+     * Describes a model from one of its instances. Models that do not implement DescribedUserModel have no known controlled
+     * system (null) or action drives (empty), and are assumed to cover every combination of states. A pooled
+     * {@link UserModelHandle} is described by the class of its shared model.
+     * @param model	    An instance of the User Model
+     */
+    public UserModelDescriptor(UserModel model) {
+        this.modelClass = model instanceof UserModelHandle ? ((UserModelHandle) model).getModelClass() : model.getClass();
+        this.defaultName = model.getName();
+        if (model instanceof DescribedUserModel) {
+            DescribedUserModel describedModel = (DescribedUserModel) model;
+            this.controlledSystem = describedModel.getControlledSystem();
+            this.actionDrives = describedModel.getActionDrives().clone();
+            long supported = 0;
+            for (TransitionSystemState.TRANSITION_STATES systemState : TransitionSystemState.TRANSITION_STATES.values()) {
+                for (TransitionOccupantState.TRANSITION_STATES occupantState : TransitionOccupantState.TRANSITION_STATES.values()) {
+                    for (UserType.USER_TYPES userType : UserType.USER_TYPES.values()) {
+                        if (describedModel.isSupported(userType, occupantState, systemState)) {
+                            supported |= 1L << combinationIndex(userType, occupantState, systemState);
+                        }
+                    }
+                }
+            }
+            this.supportedCombinations = supported;
+        } else {
+            this.controlledSystem = null;
+            this.actionDrives = new ActionDrive.DRIVES[0];
+            this.supportedCombinations = ALL_COMBINATIONS;
+        }
+    }
+
+    /**
+     * Returns the index (0-63) of a combination of states, as used by the supported combinations mask
+     * @param userType	                The user type
+     * @param transitionState	        Markov transitions for occupancy status
+     * @param transitionSystemState	    Markov transitions for controllable system status
+     * @return	The combination index
+     */
+    public static int combinationIndex(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                                       TransitionSystemState.TRANSITION_STATES transitionSystemState) {
+        return (transitionSystemState.ordinal() * OCCUPANT_STATES + transitionState.ordinal()) * USER_TYPES + userType.ordinal();
+    }
+
+    /**
+     * Returns the identifier of the model, i.e. the simple name of its class
+     * @return	The model identifier
+     */
+    public String getId() {
+        return this.modelClass.getSimpleName();
+    }
+
+    /**
+     * Returns the implementation class of the model
+     * @return	The model class
+     */
+    public Class<? extends UserModel> getModelClass() {
+        return this.modelClass;
+    }
+
+    /**
+     * Returns the name a new instance of the model reports
+     * @return	The default model name
+     */
+    public String getDefaultName() {
+        return this.defaultName;
+    }
+
+    /**
+     * Returns the system the model acts on
+     * @return	The controlled system, or null if the model does not describe it
+     */
+    public ControlledSystem.SYSTEMS getControlledSystem() {
+        return this.controlledSystem;
+    }
+
+    /**
+     * Returns the action drives of the model, in the row order expected by calculateActionProbability
+     * @return	The action drives
+     */
+    public ActionDrive.DRIVES[] getActionDrives() {
+        return this.actionDrives.clone();
+    }
+
+    /**
+     * Returns the number of action drives of the model
+     * @return	The number of action drives
+     */
+    public int getDriveCount() {
+        return this.actionDrives.length;
+    }
+
+    /**
+     * Returns the mask of covered combinations; bit {@link #combinationIndex} is set for every covered combination
+     * @return	The supported combinations mask
+     */
+    public long getSupportedCombinations() {
+        return this.supportedCombinations;
+    }
+
+    /**
+     * Checks whether the model covers a combination of states
+     * @param userType	                The user type
+     * @param transitionState	        Markov transitions for occupancy status
+     * @param transitionSystemState	    Markov transitions for controllable system status
+     * @return	true if the model defines a probability of action for the combination
+     */
+    public boolean isSupported(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                               TransitionSystemState.TRANSITION_STATES transitionSystemState) {
+        return (this.supportedCombinations & (1L << combinationIndex(userType, transitionState, transitionSystemState))) != 0;
+    }
+
+    /**
+     * Creates a new instance of the model
+     * @return	The new User Model
+     */
+    public UserModel newInstance() {
+        try {
+            return this.modelClass.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot instantiate " + this.modelClass.getName(), e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.getId() + " (" + this.controlledSystem + ", " + Long.bitCount(this.supportedCombinations) + " combinations)";
+    }
+}
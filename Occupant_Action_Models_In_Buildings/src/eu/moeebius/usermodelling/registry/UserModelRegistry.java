@@ -0,0 +1,125 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.registry;
+
+import eu.moeebius.usermodelling.interfaces.ControlledSystem;
+import eu.moeebius.usermodelling.interfaces.UserModel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+
+/**
+ * Registry of the available User Models. Models are discovered with {@link ServiceLoader} from the
+ * META-INF/services/eu.moeebius.usermodelling.interfaces.UserModel entries on the class path, so models from other jars
+ * are found as well, and each one is described by a {@link UserModelDescriptor}.
+ * @author Georgios D. Kontes
+ */
+public class UserModelRegistry {
+
+    private final Map<String, UserModelDescriptor> descriptors = new LinkedHashMap<>();
+
+    /**
+     * Creates an empty registry
+     */
+    public UserModelRegistry() {}
+
+    /**
+     * Creates a registry with all models visible to the context class loader
+     * @return	The registry
+     */
+    public static UserModelRegistry discover() {
+        return discover(Thread.currentThread().getContextClassLoader());
+    }
+
+    /**
+     * Creates a registry with all models visible to a class loader
+     * @param classLoader	The class loader to search
+     * @return	The registry
+     */
+    public static UserModelRegistry discover(ClassLoader classLoader) {
+        UserModelRegistry registry = new UserModelRegistry();
+        for (UserModel model : ServiceLoader.load(UserModel.class, classLoader)) {
+            registry.register(model);
+        }
+        return registry;
+    }
+
+    /**
+     * Adds a model to the registry, replacing any model with the same identifier
+     * @param model	    An instance of the User Model
+     * @return	The descriptor of the model
+     */
+    public UserModelDescriptor register(UserModel model) {
+        UserModelDescriptor descriptor = new UserModelDescriptor(model);
+        this.descriptors.put(descriptor.getId(), descriptor);
+        return descriptor;
+    }
+
+    /**
+     * Returns all registered models
+     * @return	The descriptors, in registration order
+     */
+    public List<UserModelDescriptor> getDescriptors() {
+        return Collections.unmodifiableList(new ArrayList<>(this.descriptors.values()));
+    }
+
+    /**
+     * Returns the registered models acting on a system
+     * @param controlledSystem	The controlled system
+     * @return	The descriptors of the models
+     */
+    public List<UserModelDescriptor> getDescriptors(ControlledSystem.SYSTEMS controlledSystem) {
+        List<UserModelDescriptor> result = new ArrayList<>();
+        for (UserModelDescriptor descriptor : this.descriptors.values()) {
+            if (descriptor.getControlledSystem() == controlledSystem) {
+                result.add(descriptor);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Looks up a model by its identifier (the simple class name, e.g. "RijalEtAl2007GlobeTemp")
+     * @param id	The model identifier
+     * @return	The descriptor, or null if no such model is registered
+     */
+    public UserModelDescriptor getDescriptor(String id) {
+        return this.descriptors.get(id);
+    }
+
+    /**
+     * Creates a new instance of a registered model
+     * @param id	The model identifier
+     * @return	The new User Model
+     * @throws IllegalArgumentException	If no such model is registered
+     */
+    public UserModel newInstance(String id) {
+        UserModelDescriptor descriptor = this.descriptors.get(id);
+        if (descriptor == null) {
+            throw new IllegalArgumentException("Unknown user model " + id);
+        }
+        return descriptor.newInstance();
+    }
+}
@@ -0,0 +1,217 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.server;
+
+import eu.moeebius.usermodelling.batch.LogisticBatchEvaluator;
+import eu.moeebius.usermodelling.batch.UserModelGroup;
+import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
+import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
+import eu.moeebius.usermodelling.interfaces.UserModel;
+import eu.moeebius.usermodelling.interfaces.UserType;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Coalesces concurrent predictions for one model and one combination of states into micro-batches. The first request of a
+ * batch becomes its leader: it waits for the batching window to elapse (or for the batch to fill), closes the batch and
+ * evaluates all of its rows through the batch path, while the other requests wait for the result. Only locks and conditions
+ * are used for waiting, so that request threads may be virtual threads.
+ * @author Georgios D. Kontes
+ */
+class PredictionBatcher {
+
+    /**
+     * The rows of one micro-batch
+     */
+    private static final class Batch {
+
+        private final double[][] driveColumns;
+        private final double[] probabilities;
+        private int size;
+        private boolean done;
+        private RuntimeException failure;
+
+        private Batch(int driveCount, int capacity) {
+            this.driveColumns = new double[driveCount][capacity];
+            this.probabilities = new double[capacity];
+        }
+    }
+
+    /**
+     * Evaluates the rows of a batch
+     */
+    private interface BatchPath {
+
+        void calculateActionProbabilities(double[][] driveColumns, int from, int to, double[] probabilities);
+    }
+
+    private final BatchPath batchPath;
+    private final int driveCount;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition batchChanged = this.lock.newCondition();
+    private final ReentrantLock evaluationLock = new ReentrantLock();
+    private Batch current;
+    private long batches;
+    private long rows;
+
+    /**
+     * Creates a batcher
+     * @param model	                    The User Model (owned by the batcher)
+     * @param driveCount	            The number of action drives of the model
+     * @param userType	                User type
+     * @param transitionState	        Markov transitions for occupancy status
+     * @param transitionSystemState	    Markov transitions for controllable system status
+     * @param windowNanos	            The batching window (ns)
+     * @param maxBatchSize	            The maximum number of rows per batch
+     */
+    PredictionBatcher(UserModel model, int driveCount, UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                      TransitionSystemState.TRANSITION_STATES transitionSystemState, long windowNanos, int maxBatchSize) {
+        BatchPath batchPath;
+        try {
+            batchPath = LogisticBatchEvaluator.forModel(model, userType, transitionState, transitionSystemState)::calculateActionProbabilities;
+        } catch (IllegalArgumentException e) {
+            UserModelGroup group = new UserModelGroup();
+            int[] columns = new int[driveCount];
+            for (int i = 0; i < driveCount; i++) {
+                columns[i] = i;
+            }
+            group.addModel(model, columns, userType, transitionState, transitionSystemState);
+            batchPath = group::calculateActionProbabilities;
+        }
+        this.batchPath = batchPath;
+        this.driveCount = driveCount;
+        this.windowNanos = windowNanos;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * Calculates the probability of action for one row of drives, as part of a micro-batch
+     * @param drives	The action drives
+     * @return	The probability of action
+     * @throws InterruptedException	If the thread is interrupted while waiting for its batch
+     */
+    double predict(double[] drives) throws InterruptedException {
+        Batch batch;
+        int row;
+        boolean leader;
+        InterruptedException interrupted = null;
+        this.lock.lock();
+        try {
+            leader = this.current == null;
+            if (leader) {
+                this.current = new Batch(this.driveCount, this.maxBatchSize);
+            }
+            batch = this.current;
+            row = batch.size++;
+            for (int i = 0; i < this.driveCount; i++) {
+                batch.driveColumns[i][row] = drives[i];
+            }
+            if (batch.size == this.maxBatchSize) {
+                this.current = null;
+                this.batchChanged.signalAll();
+            }
+            if (leader) {
+                long remaining = this.windowNanos;
+                try {
+                    while (this.current == batch && remaining > 0) {
+                        remaining = this.batchChanged.awaitNanos(remaining);
+                    }
+                } catch (InterruptedException e) {
+                    interrupted = e;
+                }
+                if (this.current == batch) {
+                    this.current = null;
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        if (leader) {
+            // an interrupted leader still evaluates its batch, so that the followers waiting for it are released
+            this.evaluate(batch);
+            if (interrupted != null) {
+                throw interrupted;
+            }
+        } else {
+            this.lock.lock();
+            try {
+                while (!batch.done) {
+                    this.batchChanged.await();
+                }
+            } finally {
+                this.lock.unlock();
+            }
+        }
+        if (batch.failure != null) {
+            throw batch.failure;
+        }
+        return batch.probabilities[row];
+    }
+
+    /**
+     * Returns the number of evaluated batches
+     * @return	The number of batches
+     */
+    long getBatchCount() {
+        this.lock.lock();
+        try {
+            return this.batches;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of evaluated rows
+     * @return	The number of rows
+     */
+    long getRowCount() {
+        this.lock.lock();
+        try {
+            return this.rows;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    private void evaluate(Batch batch) {
+        this.evaluationLock.lock();
+        try {
+            this.batchPath.calculateActionProbabilities(batch.driveColumns, 0, batch.size, batch.probabilities);
+        } catch (RuntimeException e) {
+            batch.failure = e;
+        } finally {
+            this.evaluationLock.unlock();
+            this.lock.lock();
+            try {
+                batch.done = true;
+                this.batches++;
+                this.rows += batch.size;
+                this.batchChanged.signalAll();
+            } finally {
+                this.lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
+import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
+import eu.moeebius.usermodelling.interfaces.UserType;
+import eu.moeebius.usermodelling.metrics.LatencyHistogram;
+import eu.moeebius.usermodelling.registry.UserModelDescriptor;
+import eu.moeebius.usermodelling.registry.UserModelRegistry;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A standalone HTTP/1.1 server of action probabilities, bound to the loopback interface. Each request is handled on a
+ * virtual thread when the runtime supports them (on a cached thread pool otherwise); concurrent requests for the same
+ * model and combination of states are coalesced into micro-batches and evaluated through the batch path.
+ * <p>
+ * Endpoints:
+ * <ul>
+ * <li>{@code GET /models}: the registered models, their controlled system and action drives</li>
+ * <li>{@code GET|POST /predict?model=...&userType=...&transitionState=...&systemState=...&drives=d1,d2,...}: the
+ * probability of action; parameters may also be sent as a form-encoded body, and state names are those of the
+ * corresponding enumerations</li>
+ * <li>{@code GET /metrics}: request count, p50/p99 latency and batching statistics</li>
+ * </ul>
+ * Invalid requests are answered with 400, and failures of the model (including probabilities that are not finite) with 500.
+ * @author Georgios D. Kontes
+ */
+public class PredictionServer {
+
+    private final UserModelRegistry registry;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final HttpServer httpServer;
+    private final ExecutorService executor;
+    private final Map<String, PredictionBatcher> batchers = new ConcurrentHashMap<>();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    /**
+     * Creates a server
+     * @param registry	        The models to serve
+     * @param port	            The loopback port, or 0 for an ephemeral one
+     * @param windowMicros	    The batching window (us); 0 evaluates every request on its own
+     * @param maxBatchSize	    The maximum number of requests per batch
+     * @throws IOException	If the port cannot be bound
+     */
+    public PredictionServer(UserModelRegistry registry, int port, long windowMicros, int maxBatchSize) throws IOException {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.registry = registry;
+        this.windowNanos = TimeUnit.MICROSECONDS.toNanos(windowMicros);
+        this.maxBatchSize = maxBatchSize;
+        this.httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        this.executor = newRequestExecutor();
+        this.httpServer.setExecutor(this.executor);
+        this.httpServer.createContext("/models", this::handleModels);
+        this.httpServer.createContext("/predict", this::handlePredict);
+        this.httpServer.createContext("/metrics", this::handleMetrics);
+    }
+
+    /**
+     * Starts the server with all discovered models; arguments are the port, the batching window (us) and the maximum
+     * batch size
+     * @param args	The command line arguments
+     * @throws IOException	If the port cannot be bound
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8080;
+        long windowMicros = args.length > 1 ? Long.parseLong(args[1]) : 200;
+        int maxBatchSize = args.length > 2 ? Integer.parseInt(args[2]) : 256;
+        PredictionServer server = new PredictionServer(UserModelRegistry.discover(), port, windowMicros, maxBatchSize);
+        server.start();
+        System.out.println("Serving " + server.registry.getDescriptors().size() + " user models on http://localhost:" + server.getPort());
+    }
+
+    /**
+     * Starts serving requests
+     */
+    public void start() {
+        this.httpServer.start();
+    }
+
+    /**
+     * Stops the server
+     * @param delaySeconds	The maximum time to wait for running requests (s)
+     */
+    public void stop(int delaySeconds) {
+        this.httpServer.stop(delaySeconds);
+        this.executor.shutdown();
+    }
+
+    /**
+     * Returns the port the server listens to
+     * @return	The port
+     */
+    public int getPort() {
+        return this.httpServer.getAddress().getPort();
+    }
+
+    /**
+     * Returns the latencies of the prediction requests, from parsing to response
+     * @return	The latency histogram
+     */
+    public LatencyHistogram getLatencies() {
+        return this.latencies;
+    }
+
+    private void handleModels(HttpExchange exchange) throws IOException {
+        StringBuilder body = new StringBuilder("[");
+        for (UserModelDescriptor descriptor : this.registry.getDescriptors()) {
+            if (body.length() > 1) {
+                body.append(',');
+            }
+            body.append("{\"id\":\"").append(descriptor.getId()).append("\",\"system\":\"").append(descriptor.getControlledSystem())
+                    .append("\",\"drives\":[");
+            for (int i = 0; i < descriptor.getDriveCount(); i++) {
+                body.append(i == 0 ? "\"" : ",\"").append(descriptor.getActionDrives()[i]).append('"');
+            }
+            body.append("]}");
+        }
+        respond(exchange, 200, body.append(']').toString());
+    }
+
+    private void handlePredict(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        String response;
+        int status = 200;
+        try {
+            Map<String, String> parameters = parseParameters(exchange);
+            String id = require(parameters, "model");
+            UserModelDescriptor descriptor = this.registry.getDescriptor(id);
+            if (descriptor == null) {
+                throw new IllegalArgumentException("Unknown user model " + id);
+            }
+            UserType.USER_TYPES userType = UserType.USER_TYPES.valueOf(require(parameters, "userType").toUpperCase(Locale.ROOT));
+            TransitionOccupantState.TRANSITION_STATES transitionState =
+                    TransitionOccupantState.TRANSITION_STATES.valueOf(require(parameters, "transitionState").toUpperCase(Locale.ROOT));
+            TransitionSystemState.TRANSITION_STATES transitionSystemState =
+                    TransitionSystemState.TRANSITION_STATES.valueOf(require(parameters, "systemState").toUpperCase(Locale.ROOT));
+            if (!descriptor.isSupported(userType, transitionState, transitionSystemState)) {
+                throw new IllegalArgumentException(id + " does not define " + userType + "/" + transitionState + "/" + transitionSystemState);
+            }
+            String[] values = require(parameters, "drives").split(",");
+            if (values.length != descriptor.getDriveCount()) {
+                throw new IllegalArgumentException(id + " expects " + descriptor.getDriveCount() + " drives");
+            }
+            double[] drives = new double[values.length];
+            for (int i = 0; i < values.length; i++) {
+                drives[i] = Double.parseDouble(values[i].trim());
+            }
+            String key = id + '#' + UserModelDescriptor.combinationIndex(userType, transitionState, transitionSystemState);
+            PredictionBatcher batcher = this.batchers.computeIfAbsent(key, k -> new PredictionBatcher(descriptor.newInstance(), descriptor.getDriveCount(),
+                    userType, transitionState, transitionSystemState, this.windowNanos, this.maxBatchSize));
+            double probability = batcher.predict(drives);
+            if (!Double.isFinite(probability)) {
+                throw new IllegalStateException(id + " returned the probability " + probability);
+            }
+            response = "{\"probability\":" + probability + "}";
+        } catch (IllegalArgumentException e) {
+            status = 400;
+            response = "{\"error\":\"" + String.valueOf(e.getMessage()).replace('"', '\'') + "\"}";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status = 503;
+            response = "{\"error\":\"interrupted\"}";
+        } catch (RuntimeException e) {
+            status = 500;
+            response = "{\"error\":\"" + String.valueOf(e).replace('"', '\'') + "\"}";
+        }
+        respond(exchange, status, response);
+        this.latencies.record(System.nanoTime() - start);
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        long batches = 0;
+        long rows = 0;
+        for (PredictionBatcher batcher : this.batchers.values()) {
+            batches += batcher.getBatchCount();
+            rows += batcher.getRowCount();
+        }
+        respond(exchange, 200, String.format(Locale.ROOT, "{\"requests\":%d,\"meanNanos\":%.0f,\"p50Nanos\":%d,\"p99Nanos\":%d,\"batches\":%d,\"meanBatchSize\":%.2f}",
+                this.latencies.getCount(), this.latencies.getMean(), this.latencies.getPercentile(50), this.latencies.getPercentile(99),
+                batches, batches == 0 ? 0.0 : (double) rows / batches));
+    }
+
+    private static Map<String, String> parseParameters(HttpExchange exchange) throws IOException {
+        Map<String, String> parameters = new HashMap<>();
+        parseQuery(exchange.getRequestURI().getRawQuery(), parameters);
+        if ("POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+            try (InputStream body = exchange.getRequestBody()) {
+                parseQuery(new String(body.readAllBytes(), StandardCharsets.UTF_8), parameters);
+            }
+        }
+        return parameters;
+    }
+
+    private static void parseQuery(String query, Map<String, String> parameters) {
+        if (query == null || query.isEmpty()) {
+            return;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    private static String require(Map<String, String> parameters, String name) {
+        String value = parameters.get(name);
+        if (value == null) {
+            throw new IllegalArgumentException("Missing parameter " + name);
+        }
+        return value;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static ExecutorService newRequestExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+}
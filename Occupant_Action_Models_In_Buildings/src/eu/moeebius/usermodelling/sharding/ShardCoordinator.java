@@ -0,0 +1,154 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.sharding;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Runs a closed-loop simulation sharded over local worker processes. The zones are split into contiguous ranges (starting
+ * at multiples of 64), each simulated by a separate JVM started with the coordinator's class path; the workers exchange
+ * nothing but files in a work directory: the specification and weather written by the coordinator, and one
+ * {@link ShardResult} per worker, which the coordinator merges. Since every zone draws from its own random stream, the
+ * merged per-zone results do not depend on the number of shards.
+ * <p>
+ * A launcher prefix can place each worker, e.g. {@code numactl --cpunodebind=%d --membind=%d} with {@code %d} replaced by
+ * the shard index modulo a number of nodes.
+ * @author Georgios D. Kontes
+ */
+public class ShardCoordinator {
+
+    private final Path workDirectory;
+    private final int shards;
+    private List<String> jvmOptions = Collections.emptyList();
+    private List<String> launcherPrefix = Collections.emptyList();
+    private int nodes = 1;
+
+    /**
+     * Creates a coordinator
+     * @param workDirectory	The directory holding the exchanged files and the worker logs
+     * @param shards	    The number of worker processes
+     */
+    public ShardCoordinator(Path workDirectory, int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("At least one shard is needed");
+        }
+        this.workDirectory = workDirectory;
+        this.shards = shards;
+    }
+
+    /**
+     * Sets the JVM options of the workers, e.g. -Xmx4g
+     * @param jvmOptions	The options
+     */
+    public void setJvmOptions(List<String> jvmOptions) {
+        this.jvmOptions = new ArrayList<>(jvmOptions);
+    }
+
+    /**
+     * Sets a command that launches each worker; %d in its arguments is replaced by the shard index modulo the number of nodes
+     * @param launcherPrefix	The command and its arguments, e.g. numactl --cpunodebind=%d --membind=%d
+     * @param nodes	            The number of nodes the shards are spread over
+     */
+    public void setLauncherPrefix(List<String> launcherPrefix, int nodes) {
+        this.launcherPrefix = new ArrayList<>(launcherPrefix);
+        this.nodes = nodes;
+    }
+
+    /**
+     * Splits zones into contiguous ranges starting at multiples of 64
+     * @param zones	    The number of zones
+     * @param shards	The number of ranges
+     * @return	The range boundaries: range i is [boundaries[i], boundaries[i + 1])
+     */
+    public static int[] partition(int zones, int shards) {
+        int[] boundaries = new int[shards + 1];
+        for (int shard = 1; shard < shards; shard++) {
+            boundaries[shard] = Math.max(boundaries[shard - 1], (int) ((long) zones * shard / shards / 64 * 64));
+        }
+        boundaries[shards] = zones;
+        return boundaries;
+    }
+
+    /**
+     * Runs the simulation and merges the results of all workers
+     * @param spec	                The simulation specification
+     * @param outdoorTemperatures	The outdoor air temperature of each time-step (degC)
+     * @return	The merged result
+     * @throws IOException	If a file cannot be written or read, or a worker fails
+     * @throws InterruptedException	If interrupted while waiting for the workers (which are then destroyed)
+     */
+    public ShardResult run(ShardedSimulationSpec spec, double[] outdoorTemperatures) throws IOException, InterruptedException {
+        Files.createDirectories(this.workDirectory);
+        Path specFile = this.workDirectory.resolve("spec.properties");
+        Path weatherFile = this.workDirectory.resolve("weather.bin");
+        spec.store(specFile);
+        ShardWorker.writeWeather(weatherFile, outdoorTemperatures);
+        int[] boundaries = partition(spec.getZones(), this.shards);
+        List<Process> processes = new ArrayList<>();
+        List<Path> resultFiles = new ArrayList<>();
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        try {
+            for (int shard = 0; shard < this.shards; shard++) {
+                Path resultFile = this.workDirectory.resolve("shard-" + shard + ".bin");
+                Files.deleteIfExists(resultFile);
+                List<String> command = new ArrayList<>();
+                for (String argument : this.launcherPrefix) {
+                    command.add(argument.replace("%d", Integer.toString(shard % this.nodes)));
+                }
+                command.add(java);
+                command.addAll(this.jvmOptions);
+                command.add("-cp");
+                command.add(System.getProperty("java.class.path"));
+                command.add(ShardWorker.class.getName());
+                command.add(specFile.toString());
+                command.add(weatherFile.toString());
+                command.add(Integer.toString(boundaries[shard]));
+                command.add(Integer.toString(boundaries[shard + 1]));
+                command.add(resultFile.toString());
+                File log = this.workDirectory.resolve("shard-" + shard + ".log").toFile();
+                processes.add(new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start());
+                resultFiles.add(resultFile);
+            }
+            for (int shard = 0; shard < this.shards; shard++) {
+                int exitCode = processes.get(shard).waitFor();
+                if (exitCode != 0) {
+                    throw new IOException("Shard " + shard + " failed with exit code " + exitCode + ", see "
+                            + this.workDirectory.resolve("shard-" + shard + ".log"));
+                }
+            }
+        } finally {
+            for (Process process : processes) {
+                process.destroyForcibly();
+            }
+        }
+        List<ShardResult> results = new ArrayList<>();
+        for (Path resultFile : resultFiles) {
+            results.add(ShardResult.read(resultFile));
+        }
+        return ShardResult.merge(results);
+    }
+}
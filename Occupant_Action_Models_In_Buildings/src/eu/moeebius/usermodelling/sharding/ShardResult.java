@@ -0,0 +1,225 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.sharding;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * The aggregates of a closed-loop simulation over a range of zones: per time-step, the number of open windows and the sum
+ * of the zone temperatures; per zone, the number of open time-steps and of window actions. Results of consecutive ranges
+ * merge into the result of the whole population.
+ * @author Georgios D. Kontes
+ */
+public class ShardResult {
+
+    private static final int MAGIC = 0x55425352;
+
+    private final int from;
+    private final int to;
+    private final int[] openCounts;
+    private final double[] temperatureSums;
+    private final int[] openSteps;
+    private final int[] actions;
+
+    /**
+     * Creates an empty result
+     * @param from	    The first zone (inclusive)
+     * @param to	    The last zone (exclusive)
+     * @param steps	    The number of time-steps
+     */
+    public ShardResult(int from, int to, int steps) {
+        this(from, to, new int[steps], new double[steps], new int[to - from], new int[to - from]);
+    }
+
+    private ShardResult(int from, int to, int[] openCounts, double[] temperatureSums, int[] openSteps, int[] actions) {
+        this.from = from;
+        this.to = to;
+        this.openCounts = openCounts;
+        this.temperatureSums = temperatureSums;
+        this.openSteps = openSteps;
+        this.actions = actions;
+    }
+
+    /**
+     * Merges the results of consecutive ranges
+     * @param results	The results, in zone order
+     * @return	The result of the union of the ranges
+     * @throws IllegalArgumentException	If the ranges are not consecutive or cover different time-steps
+     */
+    public static ShardResult merge(List<ShardResult> results) {
+        ShardResult first = results.get(0);
+        ShardResult last = results.get(results.size() - 1);
+        int steps = first.getSteps();
+        ShardResult merged = new ShardResult(first.from, last.to, steps);
+        int next = first.from;
+        for (ShardResult result : results) {
+            if (result.from != next || result.getSteps() != steps) {
+                throw new IllegalArgumentException("Shard " + result.from + "-" + result.to + " does not follow zone " + next + " over " + steps + " steps");
+            }
+            for (int step = 0; step < steps; step++) {
+                merged.openCounts[step] += result.openCounts[step];
+                merged.temperatureSums[step] += result.temperatureSums[step];
+            }
+            System.arraycopy(result.openSteps, 0, merged.openSteps, result.from - first.from, result.to - result.from);
+            System.arraycopy(result.actions, 0, merged.actions, result.from - first.from, result.to - result.from);
+            next = result.to;
+        }
+        return merged;
+    }
+
+    /**
+     * Records the aggregates of a time-step
+     * @param step	            The time-step
+     * @param openCount	        The number of open windows
+     * @param temperatureSum	The sum of the zone temperatures (degC)
+     */
+    public void setStep(int step, int openCount, double temperatureSum) {
+        this.openCounts[step] = openCount;
+        this.temperatureSums[step] = temperatureSum;
+    }
+
+    /**
+     * Records the totals of a zone
+     * @param zone	        The zone index within the population
+     * @param openSteps	    The number of open time-steps
+     * @param actions	    The number of window actions
+     */
+    public void setZone(int zone, int openSteps, int actions) {
+        this.openSteps[zone - this.from] = openSteps;
+        this.actions[zone - this.from] = actions;
+    }
+
+    /**
+     * Returns the first zone
+     * @return	The first zone (inclusive)
+     */
+    public int getFrom() {
+        return this.from;
+    }
+
+    /**
+     * Returns the end of the range of zones
+     * @return	The last zone (exclusive)
+     */
+    public int getTo() {
+        return this.to;
+    }
+
+    /**
+     * Returns the number of time-steps
+     * @return	The number of time-steps
+     */
+    public int getSteps() {
+        return this.openCounts.length;
+    }
+
+    /**
+     * Returns the number of open windows after a time-step
+     * @param step	The time-step
+     * @return	The number of open windows
+     */
+    public int getOpenCount(int step) {
+        return this.openCounts[step];
+    }
+
+    /**
+     * Returns the mean zone temperature after a time-step
+     * @param step	The time-step
+     * @return	The mean temperature (degC)
+     */
+    public double getMeanTemperature(int step) {
+        return this.temperatureSums[step] / (this.to - this.from);
+    }
+
+    /**
+     * Returns the number of open time-steps of a zone
+     * @param zone	The zone index within the population
+     * @return	The number of open time-steps
+     */
+    public int getOpenSteps(int zone) {
+        return this.openSteps[zone - this.from];
+    }
+
+    /**
+     * Returns the number of window actions of a zone
+     * @param zone	The zone index within the population
+     * @return	The number of actions
+     */
+    public int getActions(int zone) {
+        return this.actions[zone - this.from];
+    }
+
+    /**
+     * Writes the result to a file; the file appears atomically, once complete
+     * @param file	The file
+     * @throws IOException	If writing fails
+     */
+    public void write(Path file) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(this.from);
+            out.writeInt(this.to);
+            out.writeInt(this.openCounts.length);
+            for (int step = 0; step < this.openCounts.length; step++) {
+                out.writeInt(this.openCounts[step]);
+                out.writeDouble(this.temperatureSums[step]);
+            }
+            for (int zone = 0; zone < this.openSteps.length; zone++) {
+                out.writeInt(this.openSteps[zone]);
+                out.writeInt(this.actions[zone]);
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a result written with {@link #write(Path)}
+     * @param file	The file
+     * @return	The result
+     * @throws IOException	If reading fails or the file holds no shard result
+     */
+    public static ShardResult read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a shard result: " + file);
+            }
+            ShardResult result = new ShardResult(in.readInt(), in.readInt(), in.readInt());
+            for (int step = 0; step < result.openCounts.length; step++) {
+                result.openCounts[step] = in.readInt();
+                result.temperatureSums[step] = in.readDouble();
+            }
+            for (int zone = 0; zone < result.openSteps.length; zone++) {
+                result.openSteps[zone] = in.readInt();
+                result.actions[zone] = in.readInt();
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.sharding;
+
+import eu.moeebius.usermodelling.registry.UserModelRegistry;
+import eu.moeebius.usermodelling.simulation.ClosedLoopSimulation;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * The entry point of a worker process of a sharded simulation: it simulates one range of zones of a
+ * {@link ShardedSimulationSpec} over an outdoor temperature series and writes its {@link ShardResult}.
+ * <p>
+ * Arguments: the specification file, the weather file, the first zone (inclusive), the last zone (exclusive) and the
+ * result file.
+ * @author Georgios D. Kontes
+ */
+public class ShardWorker {
+
+    private ShardWorker() {}
+
+    /**
+     * Runs one shard
+     * @param args	The command line arguments
+     * @throws IOException	If a file cannot be read or written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 5) {
+            System.err.println("Usage: ShardWorker <spec> <weather> <from> <to> <result>");
+            System.exit(2);
+        }
+        ShardedSimulationSpec spec = ShardedSimulationSpec.load(Paths.get(args[0]));
+        double[] outdoorTemperatures = readWeather(Paths.get(args[1]));
+        ShardResult result = run(spec, outdoorTemperatures, Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+        result.write(Paths.get(args[4]));
+    }
+
+    /**
+     * Simulates a range of zones
+     * @param spec	                The simulation specification
+     * @param outdoorTemperatures	The outdoor air temperature of each time-step (degC)
+     * @param from	                The first zone (inclusive)
+     * @param to	                The last zone (exclusive)
+     * @return	The aggregates of the range
+     */
+    public static ShardResult run(ShardedSimulationSpec spec, double[] outdoorTemperatures, int from, int to) {
+        ClosedLoopSimulation simulation = spec.createSimulation(UserModelRegistry.discover(), from, to);
+        ShardResult result = new ShardResult(from, to, outdoorTemperatures.length);
+        double[] temperatures = simulation.getNetwork().getTemperatures();
+        for (int step = 0; step < outdoorTemperatures.length; step++) {
+            simulation.setOutdoorTemperature(outdoorTemperatures[step]);
+            simulation.step();
+            double temperatureSum = 0;
+            for (double temperature : temperatures) {
+                temperatureSum += temperature;
+            }
+            result.setStep(step, simulation.getWindows().countOpen(), temperatureSum);
+        }
+        for (int zone = from; zone < to; zone++) {
+            result.setZone(zone, simulation.getOpenSteps(zone - from), simulation.getActions(zone - from));
+        }
+        return result;
+    }
+
+    /**
+     * Writes an outdoor temperature series for the workers
+     * @param file	                The file
+     * @param outdoorTemperatures	The outdoor air temperature of each time-step (degC)
+     * @throws IOException	If writing fails
+     */
+    public static void writeWeather(Path file, double[] outdoorTemperatures) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(outdoorTemperatures.length);
+            for (double temperature : outdoorTemperatures) {
+                out.writeDouble(temperature);
+            }
+        }
+    }
+
+    /**
+     * Reads an outdoor temperature series written with {@link #writeWeather(Path, double[])}
+     * @param file	The file
+     * @return	The outdoor air temperature of each time-step (degC)
+     * @throws IOException	If reading fails
+     */
+    public static double[] readWeather(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            double[] outdoorTemperatures = new double[in.readInt()];
+            for (int step = 0; step < outdoorTemperatures.length; step++) {
+                outdoorTemperatures[step] = in.readDouble();
+            }
+            return outdoorTemperatures;
+        }
+    }
+}
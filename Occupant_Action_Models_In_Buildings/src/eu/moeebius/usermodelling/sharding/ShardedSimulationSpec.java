@@ -0,0 +1,188 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.sharding;
+
+import eu.moeebius.usermodelling.interfaces.DescribedUserModel;
+import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
+import eu.moeebius.usermodelling.interfaces.UserModel;
+import eu.moeebius.usermodelling.interfaces.UserType;
+import eu.moeebius.usermodelling.registry.UserModelRegistry;
+import eu.moeebius.usermodelling.simulation.ClosedLoopSimulation;
+import eu.moeebius.usermodelling.thermal.RcZoneNetwork;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+
+/**
+ * Describes a closed-loop simulation of a population of identical zones, in a form that can be stored in a properties file
+ * and rebuilt by worker processes for any range of zones. The model is identified by its registry identifier (the simple
+ * class name).
+ * @author Georgios D. Kontes
+ */
+public class ShardedSimulationSpec {
+
+    private String modelId;
+    private int zones;
+    private double timeStep = 600;
+    private long seed;
+    private double initialTemperature = 22;
+    private double capacitance = 5e6;
+    private double conductance = 80;
+    private double ventilationConductance = 150;
+    private double heatGains = 400;
+    private UserType.USER_TYPES userType = UserType.USER_TYPES.UNKNOWN;
+    private TransitionOccupantState.TRANSITION_STATES occupancyState = TransitionOccupantState.TRANSITION_STATES.ALL_STATES;
+
+    /**
+     * Creates a specification with default thermal parameters
+     * @param modelId	The registry identifier of the window model
+     * @param zones	    The number of zones
+     * @param seed	    The seed of the random streams
+     */
+    public ShardedSimulationSpec(String modelId, int zones, long seed) {
+        this.modelId = modelId;
+        this.zones = zones;
+        this.seed = seed;
+    }
+
+    /**
+     * Sets the thermal parameters of every zone
+     * @param initialTemperature	    The initial zone temperature (degC)
+     * @param capacitance	            The zone heat capacity (J/K)
+     * @param conductance	            The envelope conductance (W/K)
+     * @param ventilationConductance	The additional conductance of an open window (W/K)
+     * @param heatGains	                The internal and solar heat gains (W)
+     */
+    public void setThermalParameters(double initialTemperature, double capacitance, double conductance, double ventilationConductance, double heatGains) {
+        this.initialTemperature = initialTemperature;
+        this.capacitance = capacitance;
+        this.conductance = conductance;
+        this.ventilationConductance = ventilationConductance;
+        this.heatGains = heatGains;
+    }
+
+    /**
+     * Sets the time-step
+     * @param timeStep	The time-step (s)
+     */
+    public void setTimeStep(double timeStep) {
+        this.timeStep = timeStep;
+    }
+
+    /**
+     * Sets the user type and occupancy transition of every zone
+     * @param userType	        The user type
+     * @param occupancyState	The occupancy transition
+     */
+    public void setOccupants(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES occupancyState) {
+        this.userType = userType;
+        this.occupancyState = occupancyState;
+    }
+
+    /**
+     * Returns the number of zones
+     * @return	The number of zones
+     */
+    public int getZones() {
+        return this.zones;
+    }
+
+    /**
+     * Returns the registry identifier of the window model
+     * @return	The model identifier
+     */
+    public String getModelId() {
+        return this.modelId;
+    }
+
+    /**
+     * Builds the simulation of a range of zones; zone z of the range draws from the random stream of zone from + z of the
+     * population
+     * @param registry	The registry holding the model
+     * @param from	    The first zone (inclusive)
+     * @param to	    The last zone (exclusive)
+     * @return	The simulation
+     * @throws IllegalArgumentException	If the model is unknown or does not describe its action drives
+     */
+    public ClosedLoopSimulation createSimulation(UserModelRegistry registry, int from, int to) {
+        UserModel model = registry.newInstance(this.modelId);
+        if (!(model instanceof DescribedUserModel)) {
+            throw new IllegalArgumentException(this.modelId + " does not describe its action drives");
+        }
+        RcZoneNetwork network = new RcZoneNetwork(to - from, this.initialTemperature, this.capacitance, this.conductance, this.ventilationConductance, this.heatGains);
+        ClosedLoopSimulation simulation = new ClosedLoopSimulation((DescribedUserModel) model, network, this.timeStep, this.seed, from);
+        for (int zone = 0; zone < to - from; zone++) {
+            simulation.setUserType(zone, this.userType);
+            simulation.setOccupancyState(zone, this.occupancyState);
+        }
+        return simulation;
+    }
+
+    /**
+     * Stores the specification as a properties file
+     * @param file	The file
+     * @throws IOException	If writing fails
+     */
+    public void store(Path file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("model", this.modelId);
+        properties.setProperty("zones", Integer.toString(this.zones));
+        properties.setProperty("timeStep", Double.toString(this.timeStep));
+        properties.setProperty("seed", Long.toString(this.seed));
+        properties.setProperty("initialTemperature", Double.toString(this.initialTemperature));
+        properties.setProperty("capacitance", Double.toString(this.capacitance));
+        properties.setProperty("conductance", Double.toString(this.conductance));
+        properties.setProperty("ventilationConductance", Double.toString(this.ventilationConductance));
+        properties.setProperty("heatGains", Double.toString(this.heatGains));
+        properties.setProperty("userType", this.userType.name());
+        properties.setProperty("occupancyState", this.occupancyState.name());
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            properties.store(writer, "Sharded closed-loop simulation");
+        }
+    }
+
+    /**
+     * Loads a specification stored with {@link #store(Path)}
+     * @param file	The file
+     * @return	The specification
+     * @throws IOException	If reading fails
+     */
+    public static ShardedSimulationSpec load(Path file) throws IOException {
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        ShardedSimulationSpec spec = new ShardedSimulationSpec(properties.getProperty("model"), Integer.parseInt(properties.getProperty("zones")),
+                Long.parseLong(properties.getProperty("seed")));
+        spec.setTimeStep(Double.parseDouble(properties.getProperty("timeStep")));
+        spec.setThermalParameters(Double.parseDouble(properties.getProperty("initialTemperature")), Double.parseDouble(properties.getProperty("capacitance")),
+                Double.parseDouble(properties.getProperty("conductance")), Double.parseDouble(properties.getProperty("ventilationConductance")),
+                Double.parseDouble(properties.getProperty("heatGains")));
+        spec.setOccupants(UserType.USER_TYPES.valueOf(properties.getProperty("userType")),
+                TransitionOccupantState.TRANSITION_STATES.valueOf(properties.getProperty("occupancyState")));
+        return spec;
+    }
+}
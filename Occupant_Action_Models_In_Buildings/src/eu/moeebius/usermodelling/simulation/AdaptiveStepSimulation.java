@@ -0,0 +1,299 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.simulation;
+
+import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
+import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
+import eu.moeebius.usermodelling.interfaces.UserModel;
+import eu.moeebius.usermodelling.interfaces.UserType;
+import eu.moeebius.usermodelling.random.SplitMix64;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+
+/**
+ * Simulates window actions of a population of rooms on a fine time grid, driven by given drive and occupancy series, while
+ * evaluating the User Model only where actions are likely. The fine steps are grouped into blocks; per room and block the
+ * model is evaluated at the corners of the box spanned by the drives over the block, which bounds the per-step probability
+ * of action q for models monotone in each drive (as the logistic models of this library are). If the bound on the
+ * probability of any action in the rest of the block, 1 - (1 - q)^n, is below the threshold, the block is crossed by
+ * thinning: candidate steps are drawn geometrically with probability q and each candidate is accepted with probability
+ * p / q, so the model is evaluated only at candidates and a quiet block (night, winter) costs a few evaluations; otherwise
+ * the block is refined and every step is evaluated. Both paths reproduce the fine-step process exactly in distribution.
+ * <p>
+ * Model probabilities refer to the model's own interval and are rescaled to the fine step as 1 - (1 - p)^(step / interval).
+ * @author Georgios D. Kontes
+ */
+public class AdaptiveStepSimulation {
+
+    /**
+     * Provides the fine-step drives and occupancy of every room
+     */
+    public interface Inputs {
+
+        /**
+         * Returns an action drive of a room at a fine step
+         * @param room	    The room index
+         * @param drive	    The drive index, in the order expected by the User Model
+         * @param step	    The fine step
+         * @return	The value of the drive
+         */
+        double getDrive(int room, int drive, int step);
+
+        /**
+         * Returns the occupancy transition of a room at a fine step
+         * @param room	    The room index
+         * @param step	    The fine step
+         * @return	The Markov transition for occupancy status
+         */
+        TransitionOccupantState.TRANSITION_STATES getOccupancy(int room, int step);
+    }
+
+    private static final TransitionOccupantState.TRANSITION_STATES[] OCCUPANT_STATES = TransitionOccupantState.TRANSITION_STATES.values();
+
+    private final UserModel model;
+    private final int driveCount;
+    private final UserType.USER_TYPES userType;
+    private final double exponent;
+    private final int blockSteps;
+    private final double threshold;
+    private final boolean[] open;
+    private final long[] randomStates;
+    private final int[] openSteps;
+    private final int[] actions;
+    private final Array2DRowRealMatrix actionDrives;
+    private final double[][] actionDriveData;
+    private final double[] minimum;
+    private final double[] maximum;
+    private long evaluations;
+    private long thinnedBlocks;
+    private long refinedBlocks;
+    private long boundViolations;
+
+    /**
+     * Creates the simulation; all windows start closed
+     * @param model	            The window opening model
+     * @param driveCount	    The number of action drives of the model
+     * @param userType	        The user type of all occupants
+     * @param rooms	            The number of rooms
+     * @param fineStep	        The fine time-step (s)
+     * @param modelInterval	    The interval the model probabilities refer to (s)
+     * @param blockSteps	    The number of fine steps per block
+     * @param threshold	        The bound on the probability of an action in a block below which the block is thinned
+     * @param seed	            The seed of the random streams
+     */
+    public AdaptiveStepSimulation(UserModel model, int driveCount, UserType.USER_TYPES userType, int rooms, double fineStep, double modelInterval,
+                                  int blockSteps, double threshold, long seed) {
+        if (blockSteps < 1) {
+            throw new IllegalArgumentException("Blocks must have at least one step");
+        }
+        this.model = model;
+        this.driveCount = driveCount;
+        this.userType = userType;
+        this.exponent = fineStep / modelInterval;
+        this.blockSteps = blockSteps;
+        this.threshold = threshold;
+        this.open = new boolean[rooms];
+        this.randomStates = new long[rooms];
+        this.openSteps = new int[rooms];
+        this.actions = new int[rooms];
+        this.actionDrives = new Array2DRowRealMatrix(driveCount, 1);
+        this.actionDriveData = this.actionDrives.getDataRef();
+        this.minimum = new double[driveCount];
+        this.maximum = new double[driveCount];
+        for (int room = 0; room < rooms; room++) {
+            this.randomStates[room] = SplitMix64.seed(seed, room);
+        }
+    }
+
+    /**
+     * Simulates a number of fine steps from step 0
+     * @param inputs	The drive and occupancy series
+     * @param steps	    The number of fine steps
+     */
+    public void run(Inputs inputs, int steps) {
+        for (int room = 0; room < this.open.length; room++) {
+            for (int start = 0; start < steps; start += this.blockSteps) {
+                this.runBlock(inputs, room, start, Math.min(start + this.blockSteps, steps));
+            }
+        }
+    }
+
+    /**
+     * Returns true if the window of a room is open
+     * @param room	The room index
+     * @return	true if open
+     */
+    public boolean isOpen(int room) {
+        return this.open[room];
+    }
+
+    /**
+     * Returns the number of fine steps a room's window has been open
+     * @param room	The room index
+     * @return	The number of open steps
+     */
+    public int getOpenSteps(int room) {
+        return this.openSteps[room];
+    }
+
+    /**
+     * Returns the number of window actions in a room
+     * @param room	The room index
+     * @return	The number of actions
+     */
+    public int getActions(int room) {
+        return this.actions[room];
+    }
+
+    /**
+     * Returns the number of model evaluations, including the evaluations of block bounds
+     * @return	The number of evaluations
+     */
+    public long getEvaluationCount() {
+        return this.evaluations;
+    }
+
+    /**
+     * Returns the number of room blocks crossed by thinning
+     * @return	The number of thinned blocks
+     */
+    public long getThinnedBlockCount() {
+        return this.thinnedBlocks;
+    }
+
+    /**
+     * Returns the number of room blocks evaluated at every step
+     * @return	The number of refined blocks
+     */
+    public long getRefinedBlockCount() {
+        return this.refinedBlocks;
+    }
+
+    /**
+     * Returns the number of candidate steps whose probability exceeded the block bound, i.e. where the model was not
+     * monotone in its drives; the rest of such a block is refined, but the steps already skipped are not revisited
+     * @return	The number of bound violations
+     */
+    public long getBoundViolationCount() {
+        return this.boundViolations;
+    }
+
+    private void runBlock(Inputs inputs, int room, int from, int to) {
+        int occupancyMask = 0;
+        for (int drive = 0; drive < this.driveCount; drive++) {
+            this.minimum[drive] = Double.POSITIVE_INFINITY;
+            this.maximum[drive] = Double.NEGATIVE_INFINITY;
+        }
+        for (int step = from; step < to; step++) {
+            occupancyMask |= 1 << inputs.getOccupancy(room, step).ordinal();
+            for (int drive = 0; drive < this.driveCount; drive++) {
+                double value = inputs.getDrive(room, drive, step);
+                this.minimum[drive] = Math.min(this.minimum[drive], value);
+                this.maximum[drive] = Math.max(this.maximum[drive], value);
+            }
+        }
+        double bound = this.bound(occupancyMask, this.open[room]);
+        int step = from;
+        if (1 - Math.pow(1 - bound, to - from) > this.threshold) {
+            this.refinedBlocks++;
+        } else {
+            this.thinnedBlocks++;
+            step = this.thin(inputs, room, from, to, bound, occupancyMask);
+        }
+        for (; step < to; step++) {
+            double actionProbability = this.probability(inputs, room, step);
+            this.countOpen(room, 1);
+            if (SplitMix64.nextUniform(this.randomStates, room) <= actionProbability) {
+                this.act(room);
+            }
+        }
+    }
+
+    private int thin(Inputs inputs, int room, int from, int to, double bound, int occupancyMask) {
+        int step = from;
+        while (step < to && bound > 0) {
+            double u = SplitMix64.nextUniform(this.randomStates, room);
+            long skip = bound >= 1 ? 0 : (long) Math.floor(Math.log1p(-u) / Math.log1p(-bound));
+            if (skip >= to - step) {
+                break;
+            }
+            this.countOpen(room, (int) skip);
+            step += (int) skip;
+            double actionProbability = this.probability(inputs, room, step);
+            if (actionProbability > bound) {
+                this.boundViolations++;
+                return step;
+            }
+            this.countOpen(room, 1);
+            if (SplitMix64.nextUniform(this.randomStates, room) * bound <= actionProbability) {
+                this.act(room);
+                bound = this.bound(occupancyMask, this.open[room]);
+            }
+            step++;
+        }
+        this.countOpen(room, to - step);
+        return to;
+    }
+
+    private double bound(int occupancyMask, boolean open) {
+        TransitionSystemState.TRANSITION_STATES transition = open ? TransitionSystemState.TRANSITION_STATES.OPEN_CLOSE : TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN;
+        double bound = 0;
+        for (int state = 0; state < OCCUPANT_STATES.length; state++) {
+            if ((occupancyMask & (1 << state)) == 0) {
+                continue;
+            }
+            for (int corner = 0; corner < 1 << this.driveCount; corner++) {
+                for (int drive = 0; drive < this.driveCount; drive++) {
+                    this.actionDriveData[drive][0] = (corner & (1 << drive)) == 0 ? this.minimum[drive] : this.maximum[drive];
+                }
+                this.evaluations++;
+                bound = Math.max(bound, this.rescale(this.model.calculateActionProbability(this.userType, OCCUPANT_STATES[state], transition, this.actionDrives)));
+            }
+        }
+        return bound;
+    }
+
+    private double probability(Inputs inputs, int room, int step) {
+        for (int drive = 0; drive < this.driveCount; drive++) {
+            this.actionDriveData[drive][0] = inputs.getDrive(room, drive, step);
+        }
+        this.evaluations++;
+        TransitionSystemState.TRANSITION_STATES transition = this.open[room] ? TransitionSystemState.TRANSITION_STATES.OPEN_CLOSE : TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN;
+        return this.rescale(this.model.calculateActionProbability(this.userType, inputs.getOccupancy(room, step), transition, this.actionDrives));
+    }
+
+    private double rescale(double probability) {
+        if (this.exponent == 1 || probability <= 0) {
+            return probability;
+        }
+        return probability >= 1 ? 1 : -Math.expm1(this.exponent * Math.log1p(-probability));
+    }
+
+    private void countOpen(int room, int steps) {
+        if (this.open[room]) {
+            this.openSteps[room] += steps;
+        }
+    }
+
+    private void act(int room) {
+        this.open[room] = !this.open[room];
+        this.actions[room]++;
+    }
+}
@@ -0,0 +1,346 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.simulation;
+
+import eu.moeebius.usermodelling.events.SimulationStepEvent;
+import eu.moeebius.usermodelling.interfaces.ActionDrive;
+import eu.moeebius.usermodelling.interfaces.ControlledSystem;
+import eu.moeebius.usermodelling.interfaces.DescribedUserModel;
+import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
+import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
+import eu.moeebius.usermodelling.interfaces.UserModel;
+import eu.moeebius.usermodelling.interfaces.UserType;
+import eu.moeebius.usermodelling.population.SystemStateBits;
+import eu.moeebius.usermodelling.random.SplitMix64;
+import eu.moeebius.usermodelling.registry.UserModelDescriptor;
+import eu.moeebius.usermodelling.thermal.RcZoneNetwork;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+
+import java.util.Arrays;
+
+/**
+ * Couples a window opening User Model with an {@link RcZoneNetwork} step by step, in-process. In every time-step each zone
+ * is first integrated thermally with its current window state, and the model then decides, from the new indoor temperature,
+ * whether the occupant opens a closed window (CLOSE_OPEN probability) or closes an open one (OPEN_CLOSE probability). The
+ * window changes take effect in the next step. Every zone draws from its own SplitMix64 stream, so results do not depend on
+ * how zones are split between threads.
+ * Supported are models whose action drives are indoor air or globe temperatures (both taken as the zone air temperature of
+ * the lumped model) and the outdoor air temperature.
+ * @author Georgios D. Kontes
+ */
+public class ClosedLoopSimulation {
+
+    private static final UserType.USER_TYPES[] USER_TYPES = UserType.USER_TYPES.values();
+    private static final TransitionOccupantState.TRANSITION_STATES[] OCCUPANT_STATES = TransitionOccupantState.TRANSITION_STATES.values();
+    private static final int ZONE_TEMPERATURE = 0;
+    private static final int OUTDOOR_TEMPERATURE = 1;
+
+    private final UserModel windowModel;
+    private final int[] driveSources;
+    private final RcZoneNetwork network;
+    private final SystemStateBits windows;
+    private final byte[] userTypes;
+    private final byte[] occupancyStates;
+    private final long[] randomStates;
+    private final int[] openSteps;
+    private final int[] actions;
+    private final double timeStep;
+    private double outdoorTemperature;
+    private long step = 0;
+
+    /**
+     * Creates the simulation. All zones start with closed windows, UNKNOWN users and ALL_STATES occupancy.
+     * @param windowModel	A window opening model describing its action drives
+     * @param network	    The thermal network, one zone per room
+     * @param timeStep	    The time-step (s)
+     * @param seed	        The seed of the random streams
+     * @throws IllegalArgumentException	If the model does not control windows or needs drives other than indoor and outdoor
+     *                                  temperatures
+     */
+    public ClosedLoopSimulation(DescribedUserModel windowModel, RcZoneNetwork network, double timeStep, long seed) {
+        this(windowModel, network, timeStep, seed, 0);
+    }
+
+    /**
+     * Creates the simulation for a part of a larger population: zone z draws from random stream firstStream + z, so a
+     * population split into consecutive parts reproduces the draws of a single simulation of all zones.
+     * @param windowModel	A window opening model describing its action drives
+     * @param network	    The thermal network, one zone per room
+     * @param timeStep	    The time-step (s)
+     * @param seed	        The seed of the random streams
+     * @param firstStream	The random stream of the first zone
+     * @throws IllegalArgumentException	If the model does not control windows or needs drives other than indoor and outdoor
+     *                                  temperatures
+     */
+    public ClosedLoopSimulation(DescribedUserModel windowModel, RcZoneNetwork network, double timeStep, long seed, long firstStream) {
+        UserModelDescriptor descriptor = new UserModelDescriptor(windowModel);
+        if (descriptor.getControlledSystem() != ControlledSystem.SYSTEMS.WINDOW) {
+            throw new IllegalArgumentException(windowModel.getName() + " controls " + descriptor.getControlledSystem() + ", not windows");
+        }
+        ActionDrive.DRIVES[] drives = descriptor.getActionDrives();
+        this.driveSources = new int[drives.length];
+        for (int i = 0; i < drives.length; i++) {
+            switch (drives[i]) {
+                case INDOOR_AIR_TEMPERATURE:
+                case INDOOR_GLOBE_TEMPERATURE:
+                    this.driveSources[i] = ZONE_TEMPERATURE;
+                    break;
+                case OUTDOOR_AIR_TEMPERATURE:
+                    this.driveSources[i] = OUTDOOR_TEMPERATURE;
+                    break;
+                default:
+                    throw new IllegalArgumentException(windowModel.getName() + " needs " + drives[i] + ", which the thermal network does not provide");
+            }
+        }
+        int zones = network.getZones();
+        this.windowModel = windowModel;
+        this.network = network;
+        this.timeStep = timeStep;
+        this.windows = new SystemStateBits(zones);
+        this.userTypes = new byte[zones];
+        this.occupancyStates = new byte[zones];
+        this.randomStates = new long[zones];
+        this.openSteps = new int[zones];
+        this.actions = new int[zones];
+        Arrays.fill(this.userTypes, (byte) UserType.USER_TYPES.UNKNOWN.ordinal());
+        Arrays.fill(this.occupancyStates, (byte) TransitionOccupantState.TRANSITION_STATES.ALL_STATES.ordinal());
+        for (int zone = 0; zone < zones; zone++) {
+            this.randomStates[zone] = SplitMix64.seed(seed, firstStream + zone);
+        }
+    }
+
+    /**
+     * Sets the outdoor air temperature of the coming time-step
+     * @param outdoorTemperature	The outdoor air temperature (degC)
+     */
+    public void setOutdoorTemperature(double outdoorTemperature) {
+        this.outdoorTemperature = outdoorTemperature;
+    }
+
+    /**
+     * Returns the outdoor air temperature of the coming time-step
+     * @return	The outdoor air temperature (degC)
+     */
+    public double getOutdoorTemperature() {
+        return this.outdoorTemperature;
+    }
+
+    /**
+     * Sets the user type of the occupant of a zone
+     * @param zone	        The zone index
+     * @param userType	    The user type
+     */
+    public void setUserType(int zone, UserType.USER_TYPES userType) {
+        this.userTypes[zone] = (byte) userType.ordinal();
+    }
+
+    /**
+     * Sets the occupancy transition of a zone for the coming time-step
+     * @param zone	            The zone index
+     * @param occupancyState	The occupancy transition
+     */
+    public void setOccupancyState(int zone, TransitionOccupantState.TRANSITION_STATES occupancyState) {
+        this.occupancyStates[zone] = (byte) occupancyState.ordinal();
+    }
+
+    /**
+     * Advances all zones by one time-step
+     */
+    public void step() {
+        SimulationStepEvent event = new SimulationStepEvent();
+        event.begin();
+        this.stepZones(0, this.network.getZones());
+        this.completeStep();
+        if (event.shouldCommit()) {
+            event.simulation = "ClosedLoopSimulation";
+            event.step = this.step - 1;
+            event.zones = this.network.getZones();
+            event.timeStep = this.timeStep;
+            event.commit();
+        }
+    }
+
+    /**
+     * Runs one time-step per outdoor temperature
+     * @param outdoorTemperatures	The outdoor air temperature of each time-step (degC)
+     */
+    public void run(double[] outdoorTemperatures) {
+        for (double temperature : outdoorTemperatures) {
+            this.setOutdoorTemperature(temperature);
+            this.step();
+        }
+    }
+
+    /**
+     * Advances a range of zones by one time-step: thermal integration followed by the behaviour decision. The window changes
+     * are applied by {@link #completeStep()} once all zones have been stepped. Ranges stepped concurrently must start at a
+     * multiple of 64 (the window state is shared in 64-zone words).
+     * @param from	The first zone (inclusive)
+     * @param to	The last zone (exclusive)
+     * @return	The number of window actions decided in the range
+     */
+    public int stepZones(int from, int to) {
+        int actions = 0;
+        this.network.step(this.timeStep, this.outdoorTemperature, this.windows, from, to);
+        double[] temperatures = this.network.getTemperatures();
+        double[][] driveData = new double[this.driveSources.length][1];
+        Array2DRowRealMatrix actionDrives = new Array2DRowRealMatrix(driveData, false);
+        for (int zone = from; zone < to; zone++) {
+            boolean open = this.windows.isOpen(zone);
+            if (open) {
+                this.openSteps[zone]++;
+            }
+            for (int i = 0; i < this.driveSources.length; i++) {
+                driveData[i][0] = this.driveSources[i] == ZONE_TEMPERATURE ? temperatures[zone] : this.outdoorTemperature;
+            }
+            double actionProbability = this.windowModel.calculateActionProbability(USER_TYPES[this.userTypes[zone]], OCCUPANT_STATES[this.occupancyStates[zone]],
+                    open ? TransitionSystemState.TRANSITION_STATES.OPEN_CLOSE : TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN, actionDrives);
+            if (SplitMix64.nextUniform(this.randomStates, zone) <= actionProbability) {
+                this.windows.recordAction(zone, 1);
+                this.actions[zone]++;
+                actions++;
+            }
+        }
+        return actions;
+    }
+
+    /**
+     * Applies the window changes decided in the current time-step and moves to the next one
+     */
+    public void completeStep() {
+        this.windows.step();
+        this.step++;
+    }
+
+    /**
+     * Sets the step counter, when restoring a checkpoint
+     * @param step	The number of completed time-steps
+     */
+    void setStep(long step) {
+        this.step = step;
+    }
+
+    /**
+     * Returns the user type ordinals of the zones (live array, for checkpointing)
+     * @return	The user types
+     */
+    byte[] getUserTypes() {
+        return this.userTypes;
+    }
+
+    /**
+     * Returns the occupancy transition ordinals of the zones (live array, for checkpointing)
+     * @return	The occupancy states
+     */
+    byte[] getOccupancyStates() {
+        return this.occupancyStates;
+    }
+
+    /**
+     * Returns the random stream positions of the zones (live array, for checkpointing)
+     * @return	The SplitMix64 states
+     */
+    long[] getRandomStates() {
+        return this.randomStates;
+    }
+
+    /**
+     * Returns the open time-step counters of the zones (live array, for checkpointing)
+     * @return	The counters
+     */
+    int[] getOpenStepCounts() {
+        return this.openSteps;
+    }
+
+    /**
+     * Returns the action counters of the zones (live array, for checkpointing)
+     * @return	The counters
+     */
+    int[] getActionCounts() {
+        return this.actions;
+    }
+
+    /**
+     * Returns the number of completed time-steps
+     * @return	The step counter
+     */
+    public long getStep() {
+        return this.step;
+    }
+
+    /**
+     * Returns the time-step
+     * @return	The time-step (s)
+     */
+    public double getTimeStep() {
+        return this.timeStep;
+    }
+
+    /**
+     * Returns the number of zones
+     * @return	The number of zones
+     */
+    public int getZones() {
+        return this.network.getZones();
+    }
+
+    /**
+     * Returns the window opening model
+     * @return	The User Model
+     */
+    public UserModel getWindowModel() {
+        return this.windowModel;
+    }
+
+    /**
+     * Returns the thermal network
+     * @return	The thermal network
+     */
+    public RcZoneNetwork getNetwork() {
+        return this.network;
+    }
+
+    /**
+     * Returns the window state of the zones
+     * @return	The window state
+     */
+    public SystemStateBits getWindows() {
+        return this.windows;
+    }
+
+    /**
+     * Returns the number of time-steps a zone's window has been open
+     * @param zone	The zone index
+     * @return	The number of open time-steps
+     */
+    public int getOpenSteps(int zone) {
+        return this.openSteps[zone];
+    }
+
+    /**
+     * Returns the number of window actions (openings and closings) in a zone
+     * @param zone	The zone index
+     * @return	The number of actions
+     */
+    public int getActions(int zone) {
+        return this.actions[zone];
+    }
+}
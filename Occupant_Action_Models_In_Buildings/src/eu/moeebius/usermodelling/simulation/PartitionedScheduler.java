@@ -0,0 +1,220 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.simulation;
+
+import eu.moeebius.usermodelling.events.SimulationStepEvent;
+
+import java.util.concurrent.Phaser;
+
+/**
+ * Steps a {@link ClosedLoopSimulation} with long-lived worker threads, each owning one contiguous partition of zones for the
+ * lifetime of the scheduler. Partitions start at multiples of 64 zones, so workers never write to the same window word, and
+ * each worker only touches the temperatures, states and random streams of its own zones, which stay in the caches (and,
+ * with a first-touch NUMA policy, the memory node) of the core it keeps running on. Per-step results are accumulated in
+ * per-worker slots padded to separate cache lines and merged by the driving thread at step boundaries; steps are
+ * synchronized with a {@link Phaser}.
+ * <p>
+ * The driving thread calls {@link #step()} (or {@link #run}); it must not step the simulation itself meanwhile.
+ * Results are identical to stepping the simulation on a single thread.
+ * @author Georgios D. Kontes
+ */
+public class PartitionedScheduler implements AutoCloseable {
+
+    /**
+     * Longs per worker slot: 128 bytes, two cache lines, so that adjacent-line prefetching does not couple neighbours
+     */
+    private static final int STRIDE = 16;
+    private static final int ACTIONS = 0;
+    private static final int OPEN = 1;
+    private static final int TEMPERATURE_SUM = 2;
+
+    private final ClosedLoopSimulation simulation;
+    private final int[] boundaries;
+    private final Phaser phaser;
+    private final Thread[] threads;
+    private final long[] accumulators;
+    private volatile boolean terminated;
+    private volatile Throwable failure;
+    private int lastActions;
+    private int lastOpen;
+    private double lastMeanTemperature;
+
+    /**
+     * Starts the worker threads
+     * @param simulation	The simulation
+     * @param workers	    The number of worker threads (partitions)
+     */
+    public PartitionedScheduler(ClosedLoopSimulation simulation, int workers) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("At least one worker is needed");
+        }
+        this.simulation = simulation;
+        int zones = simulation.getZones();
+        this.boundaries = new int[workers + 1];
+        for (int worker = 1; worker < workers; worker++) {
+            this.boundaries[worker] = Math.max(this.boundaries[worker - 1], (int) ((long) zones * worker / workers / 64 * 64));
+        }
+        this.boundaries[workers] = zones;
+        this.accumulators = new long[(workers + 2) * STRIDE];
+        this.phaser = new Phaser(workers + 1);
+        this.threads = new Thread[workers];
+        for (int worker = 0; worker < workers; worker++) {
+            int slot = worker;
+            this.threads[worker] = new Thread(() -> this.work(slot), "partition-" + worker);
+            this.threads[worker].setDaemon(true);
+            this.threads[worker].start();
+        }
+    }
+
+    /**
+     * Advances all zones by one time-step
+     * @throws IllegalStateException	If a worker failed; the scheduler is then closed
+     */
+    public void step() {
+        SimulationStepEvent event = new SimulationStepEvent();
+        event.begin();
+        this.phaser.arriveAndAwaitAdvance();
+        this.phaser.arriveAndAwaitAdvance();
+        Throwable failure = this.failure;
+        if (failure != null) {
+            this.close();
+            throw new IllegalStateException("Partition worker failed", failure);
+        }
+        this.simulation.completeStep();
+        int actions = 0;
+        int open = 0;
+        double temperatureSum = 0;
+        for (int worker = 0; worker < this.threads.length; worker++) {
+            int base = (worker + 1) * STRIDE;
+            actions += (int) this.accumulators[base + ACTIONS];
+            open += (int) this.accumulators[base + OPEN];
+            temperatureSum += Double.longBitsToDouble(this.accumulators[base + TEMPERATURE_SUM]);
+        }
+        this.lastActions = actions;
+        this.lastOpen = open;
+        this.lastMeanTemperature = temperatureSum / this.simulation.getZones();
+        if (event.shouldCommit()) {
+            event.simulation = "PartitionedScheduler";
+            event.step = this.simulation.getStep() - 1;
+            event.zones = this.simulation.getZones();
+            event.timeStep = this.simulation.getTimeStep();
+            event.commit();
+        }
+    }
+
+    /**
+     * Runs one time-step per outdoor temperature
+     * @param outdoorTemperatures	The outdoor air temperature of each time-step (degC)
+     * @param openCounts	        Receives the number of open windows during each time-step, or null
+     * @param meanTemperatures	    Receives the mean zone temperature after each time-step, or null
+     */
+    public void run(double[] outdoorTemperatures, int[] openCounts, double[] meanTemperatures) {
+        for (int step = 0; step < outdoorTemperatures.length; step++) {
+            this.simulation.setOutdoorTemperature(outdoorTemperatures[step]);
+            this.step();
+            if (openCounts != null) {
+                openCounts[step] = this.lastOpen;
+            }
+            if (meanTemperatures != null) {
+                meanTemperatures[step] = this.lastMeanTemperature;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of window actions decided in the last time-step
+     * @return	The number of actions
+     */
+    public int getLastActions() {
+        return this.lastActions;
+    }
+
+    /**
+     * Returns the number of windows open during the last time-step
+     * @return	The number of open windows
+     */
+    public int getLastOpenCount() {
+        return this.lastOpen;
+    }
+
+    /**
+     * Returns the mean zone temperature after the last time-step
+     * @return	The mean temperature (degC)
+     */
+    public double getLastMeanTemperature() {
+        return this.lastMeanTemperature;
+    }
+
+    /**
+     * Returns the partition of a worker
+     * @param worker	The worker index
+     * @return	The first (inclusive) and last (exclusive) zone of the partition
+     */
+    public int[] getPartition(int worker) {
+        return new int[] {this.boundaries[worker], this.boundaries[worker + 1]};
+    }
+
+    /**
+     * Stops the worker threads
+     */
+    @Override
+    public void close() {
+        if (this.terminated) {
+            return;
+        }
+        this.terminated = true;
+        this.phaser.arriveAndDeregister();
+        for (Thread thread : this.threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void work(int worker) {
+        int from = this.boundaries[worker];
+        int to = this.boundaries[worker + 1];
+        int base = (worker + 1) * STRIDE;
+        double[] temperatures = this.simulation.getNetwork().getTemperatures();
+        while (true) {
+            this.phaser.arriveAndAwaitAdvance();
+            if (this.terminated) {
+                this.phaser.arriveAndDeregister();
+                return;
+            }
+            try {
+                this.accumulators[base + OPEN] = this.simulation.getWindows().countOpen(from, to);
+                this.accumulators[base + ACTIONS] = this.simulation.stepZones(from, to);
+                double temperatureSum = 0;
+                for (int zone = from; zone < to; zone++) {
+                    temperatureSum += temperatures[zone];
+                }
+                this.accumulators[base + TEMPERATURE_SUM] = Double.doubleToRawLongBits(temperatureSum);
+            } catch (Throwable t) {
+                this.failure = t;
+            }
+            this.phaser.arriveAndAwaitAdvance();
+        }
+    }
+}
@@ -0,0 +1,489 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.simulation;
+
+import eu.moeebius.usermodelling.events.IoChunkEvent;
+import eu.moeebius.usermodelling.population.SystemStateBits;
+import eu.moeebius.usermodelling.thermal.RcZoneNetwork;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Checkpoints a {@link ClosedLoopSimulation} to an append-only binary file, from which a run can be resumed with results
+ * identical to an uninterrupted one. A checkpoint holds the step counter, the outdoor temperature, the parameters of the
+ * window model and, per zone, the window states, zone temperature, user type, occupancy state, random stream position and
+ * the open-step and action counters. Thermal network parameters and heat gains are configuration and are not saved.
+ * <p>
+ * Taking a checkpoint copies the state into one of two preallocated staging areas and returns; a background thread then
+ * compares it with the previously written checkpoint in chunks of 4096 zones per kind of state, and appends only the changed chunks as
+ * one record with a CRC32 checksum. Every {@code fullInterval} checkpoints a complete record is written to a new file that
+ * atomically replaces the old one, which bounds the length of the log. A record cut short by a crash is ignored on restore;
+ * after a failed write the next checkpoint is always written as a complete record replacing the file, so no record is ever
+ * appended behind a damaged one.
+ * Checkpoints must be taken between time-steps, from the thread driving the simulation.
+ * @author Georgios D. Kontes
+ */
+public class SimulationCheckpointer implements Closeable {
+
+    private static final int MAGIC = 0x55424350;
+    private static final int CHUNK_ZONES = 4096;
+    private static final byte TEMPERATURES = 0;
+    private static final byte RANDOM_STATES = 1;
+    private static final byte OPEN_STEPS = 2;
+    private static final byte ACTIONS = 3;
+    private static final byte USER_TYPES = 4;
+    private static final byte OCCUPANCY_STATES = 5;
+    private static final byte WINDOWS = 6;
+    private static final byte SECTIONS = 7;
+
+    /**
+     * The state of a simulation between two time-steps
+     */
+    private static final class Snapshot {
+
+        private long step;
+        private double outdoorTemperature;
+        private double[][] parameters;
+        private final double[] temperatures;
+        private final long[] randomStates;
+        private final int[] openSteps;
+        private final int[] actions;
+        private final byte[] userTypes;
+        private final byte[] occupancyStates;
+        private final long[] open;
+        private final long[] previous;
+
+        private Snapshot(int zones, int words) {
+            this.temperatures = new double[zones];
+            this.randomStates = new long[zones];
+            this.openSteps = new int[zones];
+            this.actions = new int[zones];
+            this.userTypes = new byte[zones];
+            this.occupancyStates = new byte[zones];
+            this.open = new long[words];
+            this.previous = new long[words];
+        }
+
+        private void capture(ClosedLoopSimulation simulation) {
+            int zones = this.temperatures.length;
+            this.step = simulation.getStep();
+            this.outdoorTemperature = simulation.getOutdoorTemperature();
+            RealMatrix parameters = simulation.getWindowModel().getParameters();
+            this.parameters = parameters == null ? new double[0][0] : parameters.getData();
+            System.arraycopy(simulation.getNetwork().getTemperatures(), 0, this.temperatures, 0, zones);
+            System.arraycopy(simulation.getRandomStates(), 0, this.randomStates, 0, zones);
+            System.arraycopy(simulation.getOpenStepCounts(), 0, this.openSteps, 0, zones);
+            System.arraycopy(simulation.getActionCounts(), 0, this.actions, 0, zones);
+            System.arraycopy(simulation.getUserTypes(), 0, this.userTypes, 0, zones);
+            System.arraycopy(simulation.getOccupancyStates(), 0, this.occupancyStates, 0, zones);
+            simulation.getWindows().copyWords(0, this.open.length, this.open, this.previous);
+        }
+
+        private void copyTo(Snapshot target) {
+            target.step = this.step;
+            target.outdoorTemperature = this.outdoorTemperature;
+            target.parameters = this.parameters;
+            System.arraycopy(this.temperatures, 0, target.temperatures, 0, this.temperatures.length);
+            System.arraycopy(this.randomStates, 0, target.randomStates, 0, this.randomStates.length);
+            System.arraycopy(this.openSteps, 0, target.openSteps, 0, this.openSteps.length);
+            System.arraycopy(this.actions, 0, target.actions, 0, this.actions.length);
+            System.arraycopy(this.userTypes, 0, target.userTypes, 0, this.userTypes.length);
+            System.arraycopy(this.occupancyStates, 0, target.occupancyStates, 0, this.occupancyStates.length);
+            System.arraycopy(this.open, 0, target.open, 0, this.open.length);
+            System.arraycopy(this.previous, 0, target.previous, 0, this.previous.length);
+        }
+
+        private void apply(ClosedLoopSimulation simulation) {
+            int zones = this.temperatures.length;
+            simulation.setStep(this.step);
+            simulation.setOutdoorTemperature(this.outdoorTemperature);
+            if (this.parameters.length > 0) {
+                simulation.getWindowModel().setParameters(new Array2DRowRealMatrix(this.parameters));
+            }
+            RcZoneNetwork network = simulation.getNetwork();
+            for (int zone = 0; zone < zones; zone++) {
+                network.setTemperature(zone, this.temperatures[zone]);
+            }
+            System.arraycopy(this.randomStates, 0, simulation.getRandomStates(), 0, zones);
+            System.arraycopy(this.openSteps, 0, simulation.getOpenStepCounts(), 0, zones);
+            System.arraycopy(this.actions, 0, simulation.getActionCounts(), 0, zones);
+            System.arraycopy(this.userTypes, 0, simulation.getUserTypes(), 0, zones);
+            System.arraycopy(this.occupancyStates, 0, simulation.getOccupancyStates(), 0, zones);
+            simulation.getWindows().setWords(0, this.open.length, this.open, this.previous);
+        }
+
+        private boolean chunkEquals(Snapshot other, byte section, int from, int to) {
+            switch (section) {
+                case TEMPERATURES:
+                    return Arrays.equals(this.temperatures, from, to, other.temperatures, from, to);
+                case RANDOM_STATES:
+                    return Arrays.equals(this.randomStates, from, to, other.randomStates, from, to);
+                case OPEN_STEPS:
+                    return Arrays.equals(this.openSteps, from, to, other.openSteps, from, to);
+                case ACTIONS:
+                    return Arrays.equals(this.actions, from, to, other.actions, from, to);
+                case USER_TYPES:
+                    return Arrays.equals(this.userTypes, from, to, other.userTypes, from, to);
+                case OCCUPANCY_STATES:
+                    return Arrays.equals(this.occupancyStates, from, to, other.occupancyStates, from, to);
+                default: {
+                    int fromWord = from / 64;
+                    int toWord = (to + 63) / 64;
+                    return Arrays.equals(this.open, fromWord, toWord, other.open, fromWord, toWord)
+                            && Arrays.equals(this.previous, fromWord, toWord, other.previous, fromWord, toWord);
+                }
+            }
+        }
+
+        private void writeChunk(DataOutputStream out, byte section, int from, int to) throws IOException {
+            switch (section) {
+                case TEMPERATURES:
+                    for (int zone = from; zone < to; zone++) {
+                        out.writeDouble(this.temperatures[zone]);
+                    }
+                    break;
+                case RANDOM_STATES:
+                    for (int zone = from; zone < to; zone++) {
+                        out.writeLong(this.randomStates[zone]);
+                    }
+                    break;
+                case OPEN_STEPS:
+                    for (int zone = from; zone < to; zone++) {
+                        out.writeInt(this.openSteps[zone]);
+                    }
+                    break;
+                case ACTIONS:
+                    for (int zone = from; zone < to; zone++) {
+                        out.writeInt(this.actions[zone]);
+                    }
+                    break;
+                case USER_TYPES:
+                    out.write(this.userTypes, from, to - from);
+                    break;
+                case OCCUPANCY_STATES:
+                    out.write(this.occupancyStates, from, to - from);
+                    break;
+                default:
+                    for (int word = from / 64; word < (to + 63) / 64; word++) {
+                        out.writeLong(this.open[word]);
+                        out.writeLong(this.previous[word]);
+                    }
+            }
+        }
+
+        private void readChunk(DataInputStream in, byte section, int from, int to) throws IOException {
+            switch (section) {
+                case TEMPERATURES:
+                    for (int zone = from; zone < to; zone++) {
+                        this.temperatures[zone] = in.readDouble();
+                    }
+                    break;
+                case RANDOM_STATES:
+                    for (int zone = from; zone < to; zone++) {
+                        this.randomStates[zone] = in.readLong();
+                    }
+                    break;
+                case OPEN_STEPS:
+                    for (int zone = from; zone < to; zone++) {
+                        this.openSteps[zone] = in.readInt();
+                    }
+                    break;
+                case ACTIONS:
+                    for (int zone = from; zone < to; zone++) {
+                        this.actions[zone] = in.readInt();
+                    }
+                    break;
+                case USER_TYPES:
+                    in.readFully(this.userTypes, from, to - from);
+                    break;
+                case OCCUPANCY_STATES:
+                    in.readFully(this.occupancyStates, from, to - from);
+                    break;
+                case WINDOWS:
+                    for (int word = from / 64; word < (to + 63) / 64; word++) {
+                        this.open[word] = in.readLong();
+                        this.previous[word] = in.readLong();
+                    }
+                    break;
+                default:
+                    throw new IOException("Unknown checkpoint section " + section);
+            }
+        }
+    }
+
+    private final ClosedLoopSimulation simulation;
+    private final Path file;
+    private final int fullInterval;
+    private final int zones;
+    private final Snapshot[] staging;
+    private final Snapshot written;
+    private final ExecutorService writer;
+    private final ByteArrayOutputStream recordBuffer = new ByteArrayOutputStream();
+    private final Future<?>[] pending = new Future<?>[2];
+    private int checkpoints;
+    private long bytesWritten;
+    private boolean dirty;
+
+    /**
+     * Creates a checkpointer; the first checkpoint creates (or replaces) the file
+     * @param simulation	The simulation
+     * @param file	        The checkpoint file
+     * @param fullInterval	Every how many checkpoints a complete one is written, compacting the file
+     */
+    public SimulationCheckpointer(ClosedLoopSimulation simulation, Path file, int fullInterval) {
+        if (fullInterval < 1) {
+            throw new IllegalArgumentException("Full checkpoint interval must be positive");
+        }
+        this.simulation = simulation;
+        this.file = file;
+        this.fullInterval = fullInterval;
+        this.zones = simulation.getZones();
+        int words = simulation.getWindows().getWords();
+        this.staging = new Snapshot[] {new Snapshot(this.zones, words), new Snapshot(this.zones, words)};
+        this.written = new Snapshot(this.zones, words);
+        this.writer = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "checkpoint-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Takes a checkpoint of the current state. The calling thread only copies the state, and waits only if the writer is
+     * still busy with the checkpoint before the previous one; writing proceeds in the background.
+     * @throws IOException	If writing an earlier checkpoint failed
+     */
+    public void checkpoint() throws IOException {
+        int slot = this.checkpoints % 2;
+        this.await(slot);
+        Snapshot snapshot = this.staging[slot];
+        snapshot.capture(this.simulation);
+        boolean full = this.checkpoints++ % this.fullInterval == 0;
+        this.pending[slot] = this.writer.submit(() -> {
+            this.write(snapshot, full);
+            return null;
+        });
+    }
+
+    /**
+     * Waits until all checkpoints taken have been written to disk
+     * @throws IOException	If writing a checkpoint failed
+     */
+    public void await() throws IOException {
+        int last = this.checkpoints % 2;
+        try {
+            this.await(last);
+        } finally {
+            this.await(1 - last);
+        }
+    }
+
+    /**
+     * Returns the total number of bytes written to checkpoint files
+     * @return	The number of bytes
+     */
+    public long getBytesWritten() {
+        return this.bytesWritten;
+    }
+
+    /**
+     * Waits for the last checkpoint and stops the background writer
+     * @throws IOException	If writing the last checkpoint failed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            this.await();
+        } finally {
+            this.writer.shutdown();
+        }
+    }
+
+    /**
+     * Restores a simulation from the last complete checkpoint of a file. The simulation must have been created like the
+     * checkpointed one (same model class, thermal network and zone count); it is then advanced from the restored step.
+     * @param file	        The checkpoint file
+     * @param simulation	The simulation to restore into
+     * @return	The step counter of the restored checkpoint
+     * @throws IOException	If the file cannot be read or holds no complete checkpoint of a simulation of that size
+     */
+    public static long restore(Path file, ClosedLoopSimulation simulation) throws IOException {
+        int zones = simulation.getZones();
+        Snapshot snapshot = new Snapshot(zones, simulation.getWindows().getWords());
+        boolean restored = false;
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(file))) {
+            DataInputStream in = new DataInputStream(stream);
+            while (true) {
+                byte[] record;
+                try {
+                    if (in.readInt() != MAGIC) {
+                        break;
+                    }
+                    record = new byte[in.readInt()];
+                    in.readFully(record);
+                    long checksum = in.readLong();
+                    CRC32 crc = new CRC32();
+                    crc.update(record);
+                    if (crc.getValue() != checksum) {
+                        break;
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                readRecord(new DataInputStream(new ByteArrayInputStream(record)), snapshot, zones, restored);
+                restored = true;
+            }
+        }
+        if (!restored) {
+            throw new IOException("No complete checkpoint in " + file);
+        }
+        snapshot.apply(simulation);
+        return snapshot.step;
+    }
+
+    private void await(int slot) throws IOException {
+        Future<?> pending = this.pending[slot];
+        if (pending == null) {
+            return;
+        }
+        this.pending[slot] = null;
+        try {
+            pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a checkpoint", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    private void write(Snapshot snapshot, boolean full) throws IOException {
+        IoChunkEvent event = new IoChunkEvent();
+        event.begin();
+        full |= this.dirty;
+        this.dirty = true;
+        this.recordBuffer.reset();
+        DataOutputStream out = new DataOutputStream(this.recordBuffer);
+        out.writeLong(snapshot.step);
+        out.writeDouble(snapshot.outdoorTemperature);
+        out.writeInt(this.zones);
+        out.writeBoolean(full);
+        out.writeInt(snapshot.parameters.length);
+        out.writeInt(snapshot.parameters.length == 0 ? 0 : snapshot.parameters[0].length);
+        for (double[] row : snapshot.parameters) {
+            for (double value : row) {
+                out.writeDouble(value);
+            }
+        }
+        for (byte section = 0; section < SECTIONS; section++) {
+            for (int from = 0; from < this.zones; from += CHUNK_ZONES) {
+                int to = Math.min(from + CHUNK_ZONES, this.zones);
+                if (full || !snapshot.chunkEquals(this.written, section, from, to)) {
+                    out.writeByte(section);
+                    out.writeInt(from / CHUNK_ZONES);
+                    snapshot.writeChunk(out, section, from, to);
+                }
+            }
+        }
+        out.writeByte(-1);
+        byte[] record = this.recordBuffer.toByteArray();
+        CRC32 crc = new CRC32();
+        crc.update(record);
+        ByteBuffer framed = ByteBuffer.allocate(record.length + 16);
+        framed.putInt(MAGIC).putInt(record.length).put(record).putLong(crc.getValue()).flip();
+        if (full) {
+            Path temporary = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully(channel, framed);
+                channel.force(false);
+            }
+            Files.move(temporary, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } else {
+            try (FileChannel channel = FileChannel.open(this.file, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                writeFully(channel, framed);
+                channel.force(false);
+            }
+        }
+        snapshot.copyTo(this.written);
+        this.dirty = false;
+        this.bytesWritten += framed.limit();
+        if (event.shouldCommit()) {
+            event.resource = "SimulationCheckpoint";
+            event.operation = "write";
+            event.bytes = framed.limit();
+            event.commit();
+        }
+    }
+
+    private static void readRecord(DataInputStream in, Snapshot snapshot, int zones, boolean hasBase) throws IOException {
+        snapshot.step = in.readLong();
+        snapshot.outdoorTemperature = in.readDouble();
+        if (in.readInt() != zones) {
+            throw new IOException("Checkpoint of a simulation with a different number of zones");
+        }
+        if (!in.readBoolean() && !hasBase) {
+            throw new IOException("Checkpoint file does not start with a complete checkpoint");
+        }
+        double[][] parameters = new double[in.readInt()][in.readInt()];
+        for (double[] row : parameters) {
+            for (int column = 0; column < row.length; column++) {
+                row[column] = in.readDouble();
+            }
+        }
+        snapshot.parameters = parameters;
+        byte section;
+        while ((section = in.readByte()) >= 0) {
+            int from = in.readInt() * CHUNK_ZONES;
+            if (from >= zones) {
+                throw new IOException("Checkpoint chunk out of range");
+            }
+            snapshot.readChunk(in, section, from, Math.min(from + CHUNK_ZONES, zones));
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.stream;
+
+/**
+ * A sensor reading for one action drive of one room
+ * @author Georgios D. Kontes
+ */
+public final class DriveUpdate {
+
+    private final int room;
+    private final int drive;
+    private final double value;
+
+    /**
+     * Creates a reading
+     * @param room	    The room index
+     * @param drive	    The index of the action drive, in the order expected by the User Model
+     * @param value	    The value of the drive
+     */
+    public DriveUpdate(int room, int drive, double value) {
+        this.room = room;
+        this.drive = drive;
+        this.value = value;
+    }
+
+    /**
+     * Returns the room index
+     * @return	The room index
+     */
+    public int getRoom() {
+        return this.room;
+    }
+
+    /**
+     * Returns the index of the action drive
+     * @return	The drive index
+     */
+    public int getDrive() {
+        return this.drive;
+    }
+
+    /**
+     * Returns the value of the drive
+     * @return	The value
+     */
+    public double getValue() {
+        return this.value;
+    }
+
+    @Override
+    public String toString() {
+        return "DriveUpdate[room=" + this.room + ", drive=" + this.drive + ", value=" + this.value + "]";
+    }
+}
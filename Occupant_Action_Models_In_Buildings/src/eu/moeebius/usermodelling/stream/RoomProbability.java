@@ -0,0 +1,74 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.stream;
+
+/**
+ * The probability of action of one room, evaluated from its latest action drives
+ * @author Georgios D. Kontes
+ */
+public final class RoomProbability {
+
+    private final int room;
+    private final double probability;
+    private final long version;
+
+    /**
+     * Creates a result
+     * @param room	        The room index
+     * @param probability	The probability of action
+     * @param version	    The number of state changes of the room reflected in the probability
+     */
+    public RoomProbability(int room, double probability, long version) {
+        this.room = room;
+        this.probability = probability;
+        this.version = version;
+    }
+
+    /**
+     * Returns the room index
+     * @return	The room index
+     */
+    public int getRoom() {
+        return this.room;
+    }
+
+    /**
+     * Returns the probability of action
+     * @return	The probability
+     */
+    public double getProbability() {
+        return this.probability;
+    }
+
+    /**
+     * Returns the number of state changes of the room reflected in the probability; updates conflated into one evaluation
+     * show up as gaps between successive versions
+     * @return	The version
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    @Override
+    public String toString() {
+        return "RoomProbability[room=" + this.room + ", probability=" + this.probability + ", version=" + this.version + "]";
+    }
+}
@@ -0,0 +1,417 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.stream;
+
+import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
+import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
+import eu.moeebius.usermodelling.interfaces.UserModel;
+import eu.moeebius.usermodelling.interfaces.UserType;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A reactive stage turning a stream of per-room sensor readings into a stream of per-room probabilities of action. Every
+ * reading overwrites the latest value of its drive, and a room is queued for evaluation at most once however many readings
+ * arrive before it is evaluated: bursts are conflated into one evaluation of the latest state, so the memory held by the
+ * stage is bounded by the number of rooms. Readings are requested from upstream a bounded number at a time, and results are
+ * emitted only as requested by the (single) downstream subscriber; rooms waiting for downstream demand stay queued, still
+ * absorbing newer readings.
+ * <p>
+ * With {@link TRIGGER#ON_CHANGE} a room is queued whenever one of its drives or states changes value; with
+ * {@link TRIGGER#ON_TICK} changed rooms are only queued on {@link #tick()}. A room is evaluated once all of its drives
+ * have been received and its states have been set with {@link #setRoomState}.
+ * <p>
+ * A reading for a room or drive out of range, or a non-positive request, fails the stage: upstream is cancelled and the
+ * error is delivered to the subscriber by the drain loop, serially with its other signals.
+ * @author Georgios D. Kontes
+ */
+public class UserModelProcessor implements Flow.Processor<DriveUpdate, RoomProbability> {
+
+    /**
+     * When changed rooms are evaluated
+     */
+    public enum TRIGGER {
+        /**
+         * As soon as one of the drives or states of the room changes
+         */
+        ON_CHANGE,
+        /**
+         * On the next call of tick()
+         */
+        ON_TICK
+    }
+
+    private final UserModel model;
+    private final TRIGGER trigger;
+    private final Executor executor;
+    private final int upstreamBufferSize;
+    private final Object lock = new Object();
+    private final double[][] drives;
+    private final int[] missingDrives;
+    private final UserType.USER_TYPES[] userTypes;
+    private final TransitionOccupantState.TRANSITION_STATES[] transitionStates;
+    private final TransitionSystemState.TRANSITION_STATES[] transitionSystemStates;
+    private final long[] versions;
+    private final boolean[] changed;
+    private final boolean[] queued;
+    private final int[] queue;
+    private int queueHead;
+    private int queueSize;
+    private final Array2DRowRealMatrix actionDrives;
+    private final double[][] actionDriveData;
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong conflated = new AtomicLong();
+    private final AtomicLong evaluations = new AtomicLong();
+    private Flow.Subscription upstream;
+    private volatile Flow.Subscriber<? super RoomProbability> downstream;
+    private volatile boolean cancelled;
+    private volatile boolean upstreamDone;
+    private Throwable upstreamError;
+    private volatile Throwable pendingError;
+    private boolean terminated;
+
+    /**
+     * Creates a stage evaluating on change on the common pool
+     * @param model	        The User Model
+     * @param rooms	        The number of rooms
+     * @param driveCount	The number of action drives of the model
+     */
+    public UserModelProcessor(UserModel model, int rooms, int driveCount) {
+        this(model, rooms, driveCount, TRIGGER.ON_CHANGE, ForkJoinPool.commonPool(), 256);
+    }
+
+    /**
+     * Creates a stage
+     * @param model	                The User Model; it is only evaluated from one thread at a time
+     * @param rooms	                The number of rooms
+     * @param driveCount	        The number of action drives of the model
+     * @param trigger	            When changed rooms are evaluated
+     * @param executor	            The executor running evaluation and emission
+     * @param upstreamBufferSize	The maximum number of readings requested from upstream but not yet received
+     */
+    public UserModelProcessor(UserModel model, int rooms, int driveCount, TRIGGER trigger, Executor executor, int upstreamBufferSize) {
+        if (upstreamBufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be positive");
+        }
+        this.model = model;
+        this.trigger = trigger;
+        this.executor = executor;
+        this.upstreamBufferSize = upstreamBufferSize;
+        this.drives = new double[rooms][driveCount];
+        this.missingDrives = new int[rooms];
+        Arrays.fill(this.missingDrives, driveCount);
+        for (double[] roomDrives : this.drives) {
+            Arrays.fill(roomDrives, Double.NaN);
+        }
+        this.userTypes = new UserType.USER_TYPES[rooms];
+        this.transitionStates = new TransitionOccupantState.TRANSITION_STATES[rooms];
+        this.transitionSystemStates = new TransitionSystemState.TRANSITION_STATES[rooms];
+        this.versions = new long[rooms];
+        this.changed = new boolean[rooms];
+        this.queued = new boolean[rooms];
+        this.queue = new int[rooms];
+        this.actionDrives = new Array2DRowRealMatrix(driveCount, 1);
+        this.actionDriveData = this.actionDrives.getDataRef();
+    }
+
+    /**
+     * Sets the states a room is evaluated for, e.g. on an occupancy or window state change
+     * @param room	                    The room index
+     * @param userType	                User type
+     * @param transitionState	        Markov transitions for occupancy status
+     * @param transitionSystemState	    Markov transitions for controllable system status
+     */
+    public void setRoomState(int room, UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                             TransitionSystemState.TRANSITION_STATES transitionSystemState) {
+        synchronized (this.lock) {
+            if (this.userTypes[room] == userType && this.transitionStates[room] == transitionState && this.transitionSystemStates[room] == transitionSystemState) {
+                return;
+            }
+            this.userTypes[room] = userType;
+            this.transitionStates[room] = transitionState;
+            this.transitionSystemStates[room] = transitionSystemState;
+            this.markChanged(room);
+        }
+        this.drain();
+    }
+
+    /**
+     * Queues the rooms changed since the last tick for evaluation; has no effect when evaluating on change
+     */
+    public void tick() {
+        synchronized (this.lock) {
+            this.releaseChanged();
+        }
+        this.drain();
+    }
+
+    /**
+     * Returns the number of readings received
+     * @return	The number of readings
+     */
+    public long getReceivedCount() {
+        return this.received.get();
+    }
+
+    /**
+     * Returns the number of state changes absorbed by a pending evaluation of their room
+     * @return	The number of conflated changes
+     */
+    public long getConflatedCount() {
+        return this.conflated.get();
+    }
+
+    /**
+     * Returns the number of model evaluations
+     * @return	The number of evaluations
+     */
+    public long getEvaluationCount() {
+        return this.evaluations.get();
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super RoomProbability> subscriber) {
+        synchronized (this.lock) {
+            if (this.downstream != null) {
+                subscriber.onSubscribe(new Flow.Subscription() {
+                    @Override
+                    public void request(long n) {}
+
+                    @Override
+                    public void cancel() {}
+                });
+                subscriber.onError(new IllegalStateException("UserModelProcessor supports a single subscriber"));
+                return;
+            }
+            this.downstream = subscriber;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    UserModelProcessor.this.fail(new IllegalArgumentException("Non-positive request " + n));
+                    return;
+                }
+                long current;
+                do {
+                    current = UserModelProcessor.this.demand.get();
+                } while (!UserModelProcessor.this.demand.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+                UserModelProcessor.this.drain();
+            }
+
+            @Override
+            public void cancel() {
+                UserModelProcessor.this.cancel();
+            }
+        });
+        this.drain();
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        synchronized (this.lock) {
+            if (this.upstream != null) {
+                subscription.cancel();
+                return;
+            }
+            this.upstream = subscription;
+        }
+        subscription.request(this.upstreamBufferSize);
+    }
+
+    @Override
+    public void onNext(DriveUpdate update) {
+        this.received.incrementAndGet();
+        int room = update.getRoom();
+        if (room < 0 || room >= this.drives.length || update.getDrive() < 0 || update.getDrive() >= this.drives[room].length) {
+            this.fail(new IllegalArgumentException("Reading of drive " + update.getDrive() + " in room " + room + " is out of range"));
+            return;
+        }
+        synchronized (this.lock) {
+            double[] roomDrives = this.drives[room];
+            double previous = roomDrives[update.getDrive()];
+            if (previous != update.getValue() && !Double.isNaN(update.getValue())) {
+                if (Double.isNaN(previous)) {
+                    this.missingDrives[room]--;
+                }
+                roomDrives[update.getDrive()] = update.getValue();
+                this.markChanged(room);
+            }
+        }
+        this.upstream.request(1);
+        this.drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        synchronized (this.lock) {
+            this.upstreamError = throwable;
+        }
+        this.upstreamDone = true;
+        this.drain();
+    }
+
+    @Override
+    public void onComplete() {
+        synchronized (this.lock) {
+            this.releaseChanged();
+        }
+        this.upstreamDone = true;
+        this.drain();
+    }
+
+    private void fail(Throwable failure) {
+        Flow.Subscription subscription;
+        synchronized (this.lock) {
+            if (this.pendingError == null) {
+                this.pendingError = failure;
+            }
+            subscription = this.upstream;
+        }
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        this.drain();
+    }
+
+    private void markChanged(int room) {
+        this.versions[room]++;
+        if (this.trigger == TRIGGER.ON_TICK) {
+            if (this.changed[room]) {
+                this.conflated.incrementAndGet();
+            }
+            this.changed[room] = true;
+        } else {
+            this.enqueue(room);
+        }
+    }
+
+    private void releaseChanged() {
+        for (int room = 0; room < this.changed.length; room++) {
+            if (this.changed[room]) {
+                this.changed[room] = false;
+                this.enqueue(room);
+            }
+        }
+    }
+
+    private void enqueue(int room) {
+        if (this.queued[room]) {
+            this.conflated.incrementAndGet();
+            return;
+        }
+        this.queued[room] = true;
+        this.queue[(this.queueHead + this.queueSize++) % this.queue.length] = room;
+    }
+
+    private void cancel() {
+        this.cancelled = true;
+        Flow.Subscription subscription;
+        synchronized (this.lock) {
+            subscription = this.upstream;
+        }
+        if (subscription != null) {
+            subscription.cancel();
+        }
+    }
+
+    private void drain() {
+        if (this.wip.getAndIncrement() == 0) {
+            this.executor.execute(this::drainLoop);
+        }
+    }
+
+    private void drainLoop() {
+        int missed = 1;
+        do {
+            Flow.Subscriber<? super RoomProbability> subscriber = this.downstream;
+            if (subscriber != null) {
+                this.emit(subscriber);
+            }
+            missed = this.wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void emit(Flow.Subscriber<? super RoomProbability> subscriber) {
+        Throwable pendingError = this.pendingError;
+        if (pendingError != null && !this.cancelled && !this.terminated) {
+            this.terminated = true;
+            this.cancel();
+            subscriber.onError(pendingError);
+            return;
+        }
+        while (!this.cancelled && this.demand.get() > 0) {
+            int room;
+            long version;
+            UserType.USER_TYPES userType;
+            TransitionOccupantState.TRANSITION_STATES transitionState;
+            TransitionSystemState.TRANSITION_STATES transitionSystemState;
+            synchronized (this.lock) {
+                if (this.queueSize == 0) {
+                    break;
+                }
+                room = this.queue[this.queueHead];
+                this.queueHead = (this.queueHead + 1) % this.queue.length;
+                this.queueSize--;
+                this.queued[room] = false;
+                userType = this.userTypes[room];
+                transitionState = this.transitionStates[room];
+                transitionSystemState = this.transitionSystemStates[room];
+                if (this.missingDrives[room] > 0 || userType == null) {
+                    continue;
+                }
+                double[] roomDrives = this.drives[room];
+                for (int i = 0; i < roomDrives.length; i++) {
+                    this.actionDriveData[i][0] = roomDrives[i];
+                }
+                version = this.versions[room];
+            }
+            double actionProbability = this.model.calculateActionProbability(userType, transitionState, transitionSystemState, this.actionDrives);
+            this.evaluations.incrementAndGet();
+            this.demand.decrementAndGet();
+            subscriber.onNext(new RoomProbability(room, actionProbability, version));
+        }
+        if (this.cancelled || this.terminated || !this.upstreamDone) {
+            return;
+        }
+        Throwable error;
+        synchronized (this.lock) {
+            if (this.upstreamError == null && this.queueSize > 0) {
+                return;
+            }
+            error = this.upstreamError;
+        }
+        this.terminated = true;
+        if (error != null) {
+            subscriber.onError(error);
+        } else {
+            subscriber.onComplete();
+        }
+    }
+}
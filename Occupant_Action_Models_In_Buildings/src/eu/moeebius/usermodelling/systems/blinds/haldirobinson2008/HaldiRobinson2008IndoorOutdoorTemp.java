@@ -19,20 +19,25 @@
 
 package eu.moeebius.usermodelling.systems.blinds.haldirobinson2008;
 
+import eu.moeebius.usermodelling.interfaces.ActionDrive;
+import eu.moeebius.usermodelling.interfaces.ControlledSystem;
+import eu.moeebius.usermodelling.interfaces.DescribedUserModel;
+import eu.moeebius.usermodelling.interfaces.DifferentiableUserModel;
 import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
 import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
-import eu.moeebius.usermodelling.interfaces.UserModel;
 import eu.moeebius.usermodelling.interfaces.UserType;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.RealMatrix;
 
+import java.util.Arrays;
+
 /**
  * Reference: Implements the blinds closing model documented in: Haldi, F., & Robinson, D. (2008). On the behaviour and adaptation of office occupants. Building and environment, 43(12), 2163-2177.
  * Driving Factors: The driving factors are the indoor and outdoor air temperatures (see Table 2 of the paper)
  * Data Source: Data collected from one Swiss Office Building
  * @author Georgios D. Kontes
  */
-public class HaldiRobinson2008IndoorOutdoorTemp implements UserModel{
+public class HaldiRobinson2008IndoorOutdoorTemp implements DifferentiableUserModel, DescribedUserModel{
 
     private String name = "HaldiRobinson2008IndoorTemp";
     private RealMatrix parameters = new Array2DRowRealMatrix(new double[] {0.407, 0.01, -11.15});
@@ -62,6 +67,22 @@ public class HaldiRobinson2008IndoorOutdoorTemp implements UserModel{
         return this.parameters;
     }
 
+    @Override
+    public ControlledSystem.SYSTEMS getControlledSystem() {
+        return ControlledSystem.SYSTEMS.BLINDS;
+    }
+
+    @Override
+    public ActionDrive.DRIVES[] getActionDrives() {
+        return new ActionDrive.DRIVES[] {ActionDrive.DRIVES.INDOOR_AIR_TEMPERATURE, ActionDrive.DRIVES.OUTDOOR_AIR_TEMPERATURE};
+    }
+
+    @Override
+    public boolean isSupported(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                               TransitionSystemState.TRANSITION_STATES transitionSystemState) {
+        return (transitionSystemState == TransitionSystemState.TRANSITION_STATES.OPEN_CLOSE && transitionState == TransitionOccupantState.TRANSITION_STATES.ALL_STATES && userType == UserType.USER_TYPES.UNKNOWN);
+    }
+
     @Override
     public double calculateActionProbability(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
                                              TransitionSystemState.TRANSITION_STATES transitionSystemState, RealMatrix actionDrives) {
@@ -88,6 +109,41 @@ public class HaldiRobinson2008IndoorOutdoorTemp implements UserModel{
         return actionProbability;
     }
 
+    @Override
+    public double calculateActionProbabilityGradient(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                                                     TransitionSystemState.TRANSITION_STATES transitionSystemState, RealMatrix actionDrives,
+                                                     double[] driveGradient, double[] parameterGradient) {
+        double actionProbability = 0;
+        double indoorTemp = actionDrives.getEntry(0,0);
+        double outdoorTemp = actionDrives.getEntry(1,0);
+        Arrays.fill(driveGradient, 0);
+        Arrays.fill(parameterGradient, 0);
+        switch (transitionSystemState){
+            case OPEN_CLOSE: {
+                switch (transitionState) {
+                    case ALL_STATES: {
+                        switch (userType){
+                            case UNKNOWN: {
+                                actionProbability = (Math.exp(this.parameters.getEntry(0,0) * indoorTemp + this.parameters.getEntry(1,0) * outdoorTemp + this.parameters.getEntry(2,0))) /
+                                        (1+Math.exp(this.parameters.getEntry(0,0) * indoorTemp + this.parameters.getEntry(1,0) * outdoorTemp + this.parameters.getEntry(2,0)));
+                                double sensitivity = actionProbability * (1 - actionProbability);
+                                driveGradient[0] = sensitivity * this.parameters.getEntry(0,0);
+                                driveGradient[1] = sensitivity * this.parameters.getEntry(1,0);
+                                parameterGradient[0] = sensitivity * indoorTemp;
+                                parameterGradient[1] = sensitivity * outdoorTemp;
+                                parameterGradient[2] = sensitivity;
+                                break;
+                            }
+                        }
+                        break;
+                    }
+                }
+                break;
+            }
+        }
+        return actionProbability;
+    }
+
     @Override
     public double predictAction(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
                                 TransitionSystemState.TRANSITION_STATES transitionSystemState, RealMatrix actionDrives) {
@@ -19,13 +19,18 @@
 
 package eu.moeebius.usermodelling.systems.windows.haldirobinson2009;
 
+import eu.moeebius.usermodelling.interfaces.ActionDrive;
+import eu.moeebius.usermodelling.interfaces.ControlledSystem;
+import eu.moeebius.usermodelling.interfaces.DescribedUserModel;
+import eu.moeebius.usermodelling.interfaces.DifferentiableUserModel;
 import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
 import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
-import eu.moeebius.usermodelling.interfaces.UserModel;
 import eu.moeebius.usermodelling.interfaces.UserType;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.RealMatrix;
 
+import java.util.Arrays;
+
 /**
  * Reference: Implements the window opening model documented in: Haldi, F., & Robinson, D. (2009). Interactions with
  * window openings by office occupants. Building and Environment, 44(12), 2378-2395.
@@ -41,7 +46,7 @@ import org.apache.commons.math3.linear.RealMatrix;
  * Data Source: Data collected for 7 years for a Swiss office building
  * @author Georgios D. Kontes
  */
-public class HaldiRobinson2009Params implements UserModel{
+public class HaldiRobinson2009Params implements DifferentiableUserModel, DescribedUserModel{
 
     private String name = "HaldiRobinson2009Params";
     private Array2DRowRealMatrix parameters = new Array2DRowRealMatrix(new double[][] {
@@ -78,6 +83,32 @@ public class HaldiRobinson2009Params implements UserModel{
         return this.parameters;
     }
 
+    @Override
+    public ControlledSystem.SYSTEMS getControlledSystem() {
+        return ControlledSystem.SYSTEMS.WINDOW;
+    }
+
+    @Override
+    public ActionDrive.DRIVES[] getActionDrives() {
+        return new ActionDrive.DRIVES[] {
+                ActionDrive.DRIVES.INDOOR_AIR_TEMPERATURE,
+                ActionDrive.DRIVES.OUTDOOR_AIR_TEMPERATURE,
+                ActionDrive.DRIVES.PRECEDING_ABSENCE,
+                ActionDrive.DRIVES.RAINFALL,
+                ActionDrive.DRIVES.PRESENCE_DURATION,
+                ActionDrive.DRIVES.DAILY_MEAN_OUTDOOR_TEMPERATURE,
+                ActionDrive.DRIVES.FOLLOWING_ABSENCE,
+                ActionDrive.DRIVES.GROUND_FLOOR
+        };
+    }
+
+    @Override
+    public boolean isSupported(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                               TransitionSystemState.TRANSITION_STATES transitionSystemState) {
+        return (transitionSystemState == TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN || transitionSystemState == TransitionSystemState.TRANSITION_STATES.OPEN_CLOSE)
+                && transitionState != TransitionOccupantState.TRANSITION_STATES.ALL_STATES && userType == UserType.USER_TYPES.UNKNOWN;
+    }
+
     @Override
     public double calculateActionProbability(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
                                              TransitionSystemState.TRANSITION_STATES transitionSystemState, RealMatrix actionDrives) {
@@ -234,6 +265,186 @@ public class HaldiRobinson2009Params implements UserModel{
         return actionProbability;
     }
 
+    @Override
+    public double calculateActionProbabilityGradient(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                                                     TransitionSystemState.TRANSITION_STATES transitionSystemState, RealMatrix actionDrives,
+                                                     double[] driveGradient, double[] parameterGradient) {
+        double actionProbability = 0;
+        double indoorTemp = actionDrives.getEntry(0,0);
+        double outdoorTemp = actionDrives.getEntry(1,0);
+        double prevAbsence = actionDrives.getEntry(2,0);
+        double rainfall = actionDrives.getEntry(3,0);
+        double presDuration = actionDrives.getEntry(4,0);
+        double dailyMeanTemp = actionDrives.getEntry(5,0);
+        double nextAbsence = actionDrives.getEntry(6,0);
+        double groundFloor = actionDrives.getEntry(7,0);
+        Arrays.fill(driveGradient, 0);
+        Arrays.fill(parameterGradient, 0);
+        double a0 = 0;
+        double a1 = 0;
+        double a2 = 0;
+        double a3 = 0;
+        double a4 = 0;
+        double a5 = 0;
+        double a6 = 0;
+        double a7 = 0;
+        double a8 = 0;
+        switch (transitionSystemState){
+            case CLOSE_OPEN: {
+                switch (transitionState){
+                    case ARRIVAL: {
+                        switch (userType){
+                            case UNKNOWN: {
+                                a0 = parameters.getEntry(0, 0);
+                                a1 = parameters.getEntry(0, 1);
+                                a2 = parameters.getEntry(0, 2);
+                                a3 = parameters.getEntry(0, 3);
+                                a4 = parameters.getEntry(0, 4);
+                                a5 = parameters.getEntry(0, 5);
+                                a6 = parameters.getEntry(0, 6);
+                                a7 = parameters.getEntry(0, 7);
+                                a8 = parameters.getEntry(0, 8);
+                                double calc = a0 * indoorTemp + a1 * outdoorTemp + a2 * prevAbsence + a3 * rainfall + a4 * presDuration + a5 * dailyMeanTemp +
+                                        a6 * nextAbsence + a7 * groundFloor + a8;
+                                actionProbability = (Math.exp(calc)) / (1+Math.exp(calc));
+                                double sensitivity = actionProbability * (1 - actionProbability);
+                                this.fillGradient(0, sensitivity, actionDrives, driveGradient, parameterGradient);
+                                break;
+                            }
+                        }
+                        break;
+                    }
+                    case PRESENSE: {
+                        switch (userType){
+                            case UNKNOWN: {
+                                a0 = parameters.getEntry(1, 0);
+                                a1 = parameters.getEntry(1, 1);
+                                a2 = parameters.getEntry(1, 2);
+                                a3 = parameters.getEntry(1, 3);
+                                a4 = parameters.getEntry(1, 4);
+                                a5 = parameters.getEntry(1, 5);
+                                a6 = parameters.getEntry(1, 6);
+                                a7 = parameters.getEntry(1, 7);
+                                a8 = parameters.getEntry(1, 8);
+                                double calc = a0 * indoorTemp + a1 * outdoorTemp + a2 * prevAbsence + a3 * rainfall + a4 * presDuration + a5 * dailyMeanTemp +
+                                        a6 * nextAbsence + a7 * groundFloor + a8;
+                                actionProbability = (Math.exp(calc)) / (1+Math.exp(calc));
+                                double sensitivity = actionProbability * (1 - actionProbability);
+                                this.fillGradient(1, sensitivity, actionDrives, driveGradient, parameterGradient);
+                                break;
+                            }
+                        }
+                        break;
+                    }
+                    case DEPARTURE: {
+                        switch (userType){
+                            case UNKNOWN: {
+                                a0 = parameters.getEntry(2, 0);
+                                a1 = parameters.getEntry(2, 1);
+                                a2 = parameters.getEntry(2, 2);
+                                a3 = parameters.getEntry(2, 3);
+                                a4 = parameters.getEntry(2, 4);
+                                a5 = parameters.getEntry(2, 5);
+                                a6 = parameters.getEntry(2, 6);
+                                a7 = parameters.getEntry(2, 7);
+                                a8 = parameters.getEntry(2, 8);
+                                double calc = a0 * indoorTemp + a1 * outdoorTemp + a2 * prevAbsence + a3 * rainfall + a4 * presDuration + a5 * dailyMeanTemp +
+                                        a6 * nextAbsence + a7 * groundFloor + a8;
+                                actionProbability = (Math.exp(calc)) / (1+Math.exp(calc));
+                                double sensitivity = actionProbability * (1 - actionProbability);
+                                this.fillGradient(2, sensitivity, actionDrives, driveGradient, parameterGradient);
+                                break;
+                            }
+                        }
+                        break;
+                    }
+                }
+                break;
+            }
+            case OPEN_CLOSE: {
+                switch (transitionState){
+                    case ARRIVAL: {
+                        switch (userType){
+                            case UNKNOWN: {
+                                a0 = parameters.getEntry(3, 0);
+                                a1 = parameters.getEntry(3, 1);
+                                a2 = parameters.getEntry(3, 2);
+                                a3 = parameters.getEntry(3, 3);
+                                a4 = parameters.getEntry(3, 4);
+                                a5 = parameters.getEntry(3, 5);
+                                a6 = parameters.getEntry(3, 6);
+                                a7 = parameters.getEntry(3, 7);
+                                a8 = parameters.getEntry(3, 8);
+                                double calc = a0 * indoorTemp + a1 * outdoorTemp + a2 * prevAbsence + a3 * rainfall + a4 * presDuration + a5 * dailyMeanTemp +
+                                        a6 * nextAbsence + a7 * groundFloor + a8;
+                                actionProbability = (Math.exp(calc)) / (1+Math.exp(calc));
+                                double sensitivity = actionProbability * (1 - actionProbability);
+                                this.fillGradient(3, sensitivity, actionDrives, driveGradient, parameterGradient);
+                                break;
+                            }
+                        }
+                        break;
+                    }
+                    case PRESENSE: {
+                        switch (userType){
+                            case UNKNOWN: {
+                                a0 = parameters.getEntry(4, 0);
+                                a1 = parameters.getEntry(4, 1);
+                                a2 = parameters.getEntry(4, 2);
+                                a3 = parameters.getEntry(4, 3);
+                                a4 = parameters.getEntry(4, 4);
+                                a5 = parameters.getEntry(4, 5);
+                                a6 = parameters.getEntry(4, 6);
+                                a7 = parameters.getEntry(4, 7);
+                                a8 = parameters.getEntry(4, 8);
+                                double calc = a0 * indoorTemp + a1 * outdoorTemp + a2 * prevAbsence + a3 * rainfall + a4 * presDuration + a5 * dailyMeanTemp +
+                                        a6 * nextAbsence + a7 * groundFloor + a8;
+                                actionProbability = (Math.exp(calc)) / (1+Math.exp(calc));
+                                double sensitivity = actionProbability * (1 - actionProbability);
+                                this.fillGradient(4, sensitivity, actionDrives, driveGradient, parameterGradient);
+                                break;
+                            }
+                        }
+                        break;
+                    }
+                    case DEPARTURE: {
+                        switch (userType){
+                            case UNKNOWN: {
+                                a0 = parameters.getEntry(5, 0);
+                                a1 = parameters.getEntry(5, 1);
+                                a2 = parameters.getEntry(5, 2);
+                                a3 = parameters.getEntry(5, 3);
+                                a4 = parameters.getEntry(5, 4);
+                                a5 = parameters.getEntry(5, 5);
+                                a6 = parameters.getEntry(5, 6);
+                                a7 = parameters.getEntry(5, 7);
+                                a8 = parameters.getEntry(5, 8);
+                                double calc = a0 * indoorTemp + a1 * outdoorTemp + a2 * prevAbsence + a3 * rainfall + a4 * presDuration + a5 * dailyMeanTemp +
+                                        a6 * nextAbsence + a7 * groundFloor + a8;
+                                actionProbability = (Math.exp(calc)) / (1+Math.exp(calc));
+                                double sensitivity = actionProbability * (1 - actionProbability);
+                                this.fillGradient(5, sensitivity, actionDrives, driveGradient, parameterGradient);
+                                break;
+                            }
+                        }
+                        break;
+                    }
+                }
+                break;
+            }
+        }
+        return actionProbability;
+    }
+
+    private void fillGradient(int row, double sensitivity, RealMatrix actionDrives, double[] driveGradient, double[] parameterGradient) {
+        int columns = this.parameters.getColumnDimension();
+        for (int k = 0; k < columns - 1; k++) {
+            driveGradient[k] = sensitivity * this.parameters.getEntry(row, k);
+            parameterGradient[row * columns + k] = sensitivity * actionDrives.getEntry(k, 0);
+        }
+        parameterGradient[row * columns + columns - 1] = sensitivity;
+    }
+
     @Override
     public double predictAction(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
                                 TransitionSystemState.TRANSITION_STATES transitionSystemState, RealMatrix actionDrives) {
@@ -19,13 +19,18 @@
 
 package eu.moeebius.usermodelling.systems.windows.rijaetal2007;
 
+import eu.moeebius.usermodelling.interfaces.ActionDrive;
+import eu.moeebius.usermodelling.interfaces.ControlledSystem;
+import eu.moeebius.usermodelling.interfaces.DescribedUserModel;
+import eu.moeebius.usermodelling.interfaces.DifferentiableUserModel;
 import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
 import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
-import eu.moeebius.usermodelling.interfaces.UserModel;
 import eu.moeebius.usermodelling.interfaces.UserType;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.RealMatrix;
 
+import java.util.Arrays;
+
 /**
  * Reference: Implements the window opening model documented in: Rijal, H. B., Tuohy, P., Humphreys, M. A., Nicol, J. F.,
  * Samuel, A., & Clarke, J. (2007). Using results from field surveys to predict the effect of open windows on thermal
@@ -34,7 +39,7 @@ import org.apache.commons.math3.linear.RealMatrix;
  * Data Source: Data collected from 15 UK Office Buildings
  * @author Georgios D. Kontes
  */
-public class RijalEtAl2007GlobeOutdoorTemp implements UserModel{
+public class RijalEtAl2007GlobeOutdoorTemp implements DifferentiableUserModel, DescribedUserModel{
 
     private String name = "RijalEtAl2007GlobeOutdoorTemp";
     private RealMatrix parameters = new Array2DRowRealMatrix(new double[] {0.256, 0.131, -8.5});
@@ -64,6 +69,22 @@ public class RijalEtAl2007GlobeOutdoorTemp implements UserModel{
         return this.parameters;
     }
 
+    @Override
+    public ControlledSystem.SYSTEMS getControlledSystem() {
+        return ControlledSystem.SYSTEMS.WINDOW;
+    }
+
+    @Override
+    public ActionDrive.DRIVES[] getActionDrives() {
+        return new ActionDrive.DRIVES[] {ActionDrive.DRIVES.INDOOR_GLOBE_TEMPERATURE, ActionDrive.DRIVES.OUTDOOR_AIR_TEMPERATURE};
+    }
+
+    @Override
+    public boolean isSupported(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                               TransitionSystemState.TRANSITION_STATES transitionSystemState) {
+        return (transitionSystemState == TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN && transitionState == TransitionOccupantState.TRANSITION_STATES.ALL_STATES && userType == UserType.USER_TYPES.UNKNOWN);
+    }
+
     @Override
     public double calculateActionProbability(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
                                              TransitionSystemState.TRANSITION_STATES transitionSystemState, RealMatrix actionDrives) {
@@ -90,6 +111,41 @@ public class RijalEtAl2007GlobeOutdoorTemp implements UserModel{
         return actionProbability;
     }
 
+    @Override
+    public double calculateActionProbabilityGradient(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                                                     TransitionSystemState.TRANSITION_STATES transitionSystemState, RealMatrix actionDrives,
+                                                     double[] driveGradient, double[] parameterGradient) {
+        double actionProbability = 0;
+        double indoorTemp = actionDrives.getEntry(0,0);
+        double outdoorTemp = actionDrives.getEntry(1,0);
+        Arrays.fill(driveGradient, 0);
+        Arrays.fill(parameterGradient, 0);
+        switch (transitionSystemState){
+            case CLOSE_OPEN: {
+                switch (transitionState) {
+                    case ALL_STATES: {
+                        switch (userType){
+                            case UNKNOWN: {
+                                actionProbability = (Math.exp(this.parameters.getEntry(0,0) * indoorTemp + this.parameters.getEntry(1,0) * outdoorTemp + this.parameters.getEntry(2,0))) /
+                                        (1+Math.exp(this.parameters.getEntry(0,0) * indoorTemp + this.parameters.getEntry(1,0) * outdoorTemp + this.parameters.getEntry(2,0)));
+                                double sensitivity = actionProbability * (1 - actionProbability);
+                                driveGradient[0] = sensitivity * this.parameters.getEntry(0,0);
+                                driveGradient[1] = sensitivity * this.parameters.getEntry(1,0);
+                                parameterGradient[0] = sensitivity * indoorTemp;
+                                parameterGradient[1] = sensitivity * outdoorTemp;
+                                parameterGradient[2] = sensitivity;
+                                break;
+                            }
+                        }
+                        break;
+                    }
+                }
+                break;
+            }
+        }
+        return actionProbability;
+    }
+
     @Override
     public double predictAction(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
                                 TransitionSystemState.TRANSITION_STATES transitionSystemState, RealMatrix actionDrives) {
@@ -19,13 +19,18 @@
 
 package eu.moeebius.usermodelling.systems.windows.yunsummers2008;
 
+import eu.moeebius.usermodelling.interfaces.ActionDrive;
+import eu.moeebius.usermodelling.interfaces.ControlledSystem;
+import eu.moeebius.usermodelling.interfaces.DescribedUserModel;
+import eu.moeebius.usermodelling.interfaces.DifferentiableUserModel;
 import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
 import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
-import eu.moeebius.usermodelling.interfaces.UserModel;
 import eu.moeebius.usermodelling.interfaces.UserType;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.RealMatrix;
 
+import java.util.Arrays;
+
 /**
  * Reference: Implements the window opening model documented in: Yun, G. Y., & Steemers, K. (2008). Time-dependent
  * occupant behaviour models of window control in summer. Building and Environment, 43(9), 1471-1482.
@@ -33,7 +38,7 @@ import org.apache.commons.math3.linear.RealMatrix;
  * Data Source: Data collected from one naturally-ventilated UK office building that does not employ night-time ventilation for cooling
  * @author Georgios D. Kontes
  */
-public class YunSteemers2008OutdoorTempNoNightVentilation implements UserModel{
+public class YunSteemers2008OutdoorTempNoNightVentilation implements DifferentiableUserModel, DescribedUserModel{
 
     private String name = "YunSteemers2008OutdoorTempNoNightVentilation";
     private Array2DRowRealMatrix parameters = new Array2DRowRealMatrix(new double[][] {{0.009, -0.115}, {0.000, 0.040}});
@@ -63,6 +68,23 @@ public class YunSteemers2008OutdoorTempNoNightVentilation implements UserModel{
         return this.parameters;
     }
 
+    @Override
+    public ControlledSystem.SYSTEMS getControlledSystem() {
+        return ControlledSystem.SYSTEMS.WINDOW;
+    }
+
+    @Override
+    public ActionDrive.DRIVES[] getActionDrives() {
+        return new ActionDrive.DRIVES[] {ActionDrive.DRIVES.OUTDOOR_AIR_TEMPERATURE};
+    }
+
+    @Override
+    public boolean isSupported(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                               TransitionSystemState.TRANSITION_STATES transitionSystemState) {
+        return (transitionSystemState == TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN && transitionState == TransitionOccupantState.TRANSITION_STATES.PRESENSE && userType == UserType.USER_TYPES.UNKNOWN)
+                || (transitionSystemState == TransitionSystemState.TRANSITION_STATES.OPEN_CLOSE && transitionState == TransitionOccupantState.TRANSITION_STATES.PRESENSE && userType == UserType.USER_TYPES.UNKNOWN);
+    }
+
     @Override
     public double calculateActionProbability(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
                                              TransitionSystemState.TRANSITION_STATES transitionSystemState, RealMatrix actionDrives) {
@@ -109,6 +131,63 @@ public class YunSteemers2008OutdoorTempNoNightVentilation implements UserModel{
         return actionProbability;
     }
 
+    @Override
+    public double calculateActionProbabilityGradient(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                                                     TransitionSystemState.TRANSITION_STATES transitionSystemState, RealMatrix actionDrives,
+                                                     double[] driveGradient, double[] parameterGradient) {
+        double actionProbability = 0;
+        double a1 = 0;
+        double a0 = 0;
+        double outdoorTemp = actionDrives.getEntry(0,0);
+        Arrays.fill(driveGradient, 0);
+        Arrays.fill(parameterGradient, 0);
+        switch (transitionSystemState){
+            case CLOSE_OPEN: {
+                switch (transitionState){
+                    case PRESENSE: {
+                        switch (userType){
+                            case UNKNOWN: {
+                                if(outdoorTemp > 15) {
+                                    a1 = parameters.getEntry(0, 0);
+                                    a0 = parameters.getEntry(0, 1);
+                                    actionProbability = (Math.exp(a1 * outdoorTemp + a0)) / (1+Math.exp(a1 * outdoorTemp + a0));
+                                    double sensitivity = actionProbability * (1 - actionProbability);
+                                    driveGradient[0] = sensitivity * a1;
+                                    parameterGradient[0] = sensitivity * outdoorTemp;
+                                    parameterGradient[1] = sensitivity;
+                                }
+                                break;
+                            }
+                        }
+                        break;
+                    }
+                }
+                break;
+            }
+            case OPEN_CLOSE: {
+                switch (transitionState){
+                    case PRESENSE: {
+                        switch (userType){
+                            case UNKNOWN: {
+                                a1 = parameters.getEntry(1, 0);
+                                a0 = parameters.getEntry(1, 1);
+                                actionProbability = (Math.exp(a1 * outdoorTemp + a0)) / (1+Math.exp(a1 * outdoorTemp + a0));
+                                double sensitivity = actionProbability * (1 - actionProbability);
+                                driveGradient[0] = sensitivity * a1;
+                                parameterGradient[2] = sensitivity * outdoorTemp;
+                                parameterGradient[3] = sensitivity;
+                                break;
+                            }
+                        }
+                        break;
+                    }
+                }
+                break;
+            }
+        }
+        return actionProbability;
+    }
+
     @Override
     public double predictAction(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
                                 TransitionSystemState.TRANSITION_STATES transitionSystemState, RealMatrix actionDrives) {
@@ -19,13 +19,18 @@
 
 package eu.moeebius.usermodelling.systems.windows.yuntuohysteemers2009;
 
+import eu.moeebius.usermodelling.interfaces.ActionDrive;
+import eu.moeebius.usermodelling.interfaces.ControlledSystem;
+import eu.moeebius.usermodelling.interfaces.DescribedUserModel;
+import eu.moeebius.usermodelling.interfaces.DifferentiableUserModel;
 import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
 import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
-import eu.moeebius.usermodelling.interfaces.UserModel;
 import eu.moeebius.usermodelling.interfaces.UserType;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.RealMatrix;
 
+import java.util.Arrays;
+
 /**
  * Reference: Implements the window opening model documented in: Yun, G. Y., Tuohy, P., & Steemers, K. (2009). Thermal performance
  * of a naturally ventilated building using a combined algorithm of probabilistic occupant behaviour and deterministic heat
@@ -34,7 +39,7 @@ import org.apache.commons.math3.linear.RealMatrix;
  * Data Source: Data collected from two naturally-ventilated UK office buildings
  * @author Georgios D. Kontes
  */
-public class YunTuohySteemers2009IndoorTemp implements UserModel{
+public class YunTuohySteemers2009IndoorTemp implements DifferentiableUserModel, DescribedUserModel{
 
     private String name = "YunSteemers2008IndoorTempNightVentilation";
     private Array2DRowRealMatrix parameters = new Array2DRowRealMatrix(new double[][] {{0.717, -14.094}, {0.359, -7.989}, {0.293, -7.777}, {0.365, -11.383}, {-0.289, 3.748}});
@@ -64,6 +69,26 @@ public class YunTuohySteemers2009IndoorTemp implements UserModel{
         return this.parameters;
     }
 
+    @Override
+    public ControlledSystem.SYSTEMS getControlledSystem() {
+        return ControlledSystem.SYSTEMS.WINDOW;
+    }
+
+    @Override
+    public ActionDrive.DRIVES[] getActionDrives() {
+        return new ActionDrive.DRIVES[] {ActionDrive.DRIVES.INDOOR_AIR_TEMPERATURE};
+    }
+
+    @Override
+    public boolean isSupported(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                               TransitionSystemState.TRANSITION_STATES transitionSystemState) {
+        return (transitionSystemState == TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN && transitionState == TransitionOccupantState.TRANSITION_STATES.ARRIVAL && userType == UserType.USER_TYPES.ACTIVE)
+                || (transitionSystemState == TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN && transitionState == TransitionOccupantState.TRANSITION_STATES.ARRIVAL && userType == UserType.USER_TYPES.MEDIUM)
+                || (transitionSystemState == TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN && transitionState == TransitionOccupantState.TRANSITION_STATES.ARRIVAL && userType == UserType.USER_TYPES.PASSIVE)
+                || (transitionSystemState == TransitionSystemState.TRANSITION_STATES.CLOSE_OPEN && transitionState == TransitionOccupantState.TRANSITION_STATES.PRESENSE && userType == UserType.USER_TYPES.MEDIUM)
+                || (transitionSystemState == TransitionSystemState.TRANSITION_STATES.OPEN_CLOSE && transitionState == TransitionOccupantState.TRANSITION_STATES.PRESENSE && userType == UserType.USER_TYPES.MEDIUM);
+    }
+
     @Override
     public double calculateActionProbability(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
                                              TransitionSystemState.TRANSITION_STATES transitionSystemState, RealMatrix actionDrives) {
@@ -133,6 +158,98 @@ public class YunTuohySteemers2009IndoorTemp implements UserModel{
         return actionProbability;
     }
 
+    @Override
+    public double calculateActionProbabilityGradient(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                                                     TransitionSystemState.TRANSITION_STATES transitionSystemState, RealMatrix actionDrives,
+                                                     double[] driveGradient, double[] parameterGradient) {
+        double actionProbability = 0;
+        double a1 = 0;
+        double a0 = 0;
+        double indoorTemp = actionDrives.getEntry(0,0);
+        Arrays.fill(driveGradient, 0);
+        Arrays.fill(parameterGradient, 0);
+        switch (transitionSystemState){
+            case CLOSE_OPEN: {
+                switch (transitionState){
+                    case ARRIVAL: {
+                        switch (userType){
+                            case ACTIVE: {
+                                a1 = parameters.getEntry(0, 0);
+                                a0 = parameters.getEntry(0, 1);
+                                actionProbability = (Math.exp(a1 * indoorTemp + a0)) / (1+Math.exp(a1 * indoorTemp + a0));
+                                double sensitivity = actionProbability * (1 - actionProbability);
+                                driveGradient[0] = sensitivity * a1;
+                                parameterGradient[0] = sensitivity * indoorTemp;
+                                parameterGradient[1] = sensitivity;
+                                break;
+                            }
+                            case MEDIUM: {
+                                a1 = parameters.getEntry(1, 0);
+                                a0 = parameters.getEntry(1, 1);
+                                actionProbability = (Math.exp(a1 * indoorTemp + a0)) / (1+Math.exp(a1 * indoorTemp + a0));
+                                double sensitivity = actionProbability * (1 - actionProbability);
+                                driveGradient[0] = sensitivity * a1;
+                                parameterGradient[2] = sensitivity * indoorTemp;
+                                parameterGradient[3] = sensitivity;
+                                break;
+                            }
+                            case PASSIVE: {
+                                a1 = parameters.getEntry(2, 0);
+                                a0 = parameters.getEntry(2, 1);
+                                actionProbability = (Math.exp(a1 * indoorTemp + a0)) / (1+Math.exp(a1 * indoorTemp + a0));
+                                double sensitivity = actionProbability * (1 - actionProbability);
+                                driveGradient[0] = sensitivity * a1;
+                                parameterGradient[4] = sensitivity * indoorTemp;
+                                parameterGradient[5] = sensitivity;
+                                break;
+                            }
+                        }
+                        break;
+                    }
+                    case PRESENSE: {
+                        switch (userType) {
+                            case MEDIUM: {
+                                a1 = parameters.getEntry(3, 0);
+                                a0 = parameters.getEntry(3, 1);
+                                actionProbability = (Math.exp(a1 * indoorTemp + a0)) / (1 + Math.exp(a1 * indoorTemp + a0));
+                                double sensitivity = actionProbability * (1 - actionProbability);
+                                driveGradient[0] = sensitivity * a1;
+                                parameterGradient[6] = sensitivity * indoorTemp;
+                                parameterGradient[7] = sensitivity;
+                                break;
+                            }
+                        }
+                        break;
+                    }
+                }
+                break;
+            }
+            case OPEN_CLOSE: {
+                switch (transitionState){
+                    case PRESENSE: {
+                        switch (userType){
+                            case MEDIUM: {
+                                if(indoorTemp <= 30) {
+                                    a1 = parameters.getEntry(4, 0);
+                                    a0 = parameters.getEntry(4, 1);
+                                    actionProbability = (Math.exp(a1 * indoorTemp + a0)) / (1+Math.exp(a1 * indoorTemp + a0));
+                                    double sensitivity = actionProbability * (1 - actionProbability);
+                                    driveGradient[0] = sensitivity * a1;
+                                    parameterGradient[8] = sensitivity * indoorTemp;
+                                    parameterGradient[9] = sensitivity;
+                                }
+                                break;
+                            }
+                        }
+                        break;
+                    }
+                }
+                break;
+            }
+        }
+        return actionProbability;
+    }
+
     @Override
     public double predictAction(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
                                 TransitionSystemState.TRANSITION_STATES transitionSystemState, RealMatrix actionDrives) {
@@ -0,0 +1,294 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.tables;
+
+import eu.moeebius.usermodelling.events.IoChunkEvent;
+import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
+import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
+import eu.moeebius.usermodelling.interfaces.UserModel;
+import eu.moeebius.usermodelling.interfaces.UserType;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.RealMatrix;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A User Model that answers from a precomputed lookup table instead of evaluating the logistic regression. The table holds
+ * one regular grid over the (one or two) action drives for each combination of user type, occupancy transition and system
+ * transition, and the probability of action is obtained by linear (1D) or bilinear (2D) interpolation. Drives outside the
+ * sampled domain are clamped to its edges. Tables are built by the {@link ProbabilityTableCompiler}.
+ * @author Georgios D. Kontes
+ */
+public class ProbabilityTable implements UserModel {
+
+    private static final int MAGIC = 0x50544231;
+    private static final int VERSION = 1;
+    private static final int USER_TYPES = UserType.USER_TYPES.values().length;
+    private static final int OCCUPANT_STATES = TransitionOccupantState.TRANSITION_STATES.values().length;
+    static final int COMBINATIONS = TransitionSystemState.TRANSITION_STATES.values().length * OCCUPANT_STATES * USER_TYPES;
+
+    private String name;
+    private final RealMatrix parameters;
+    private final double[] minimum;
+    private final double[] inverseStep;
+    private final int[] points;
+    private final float[][] values;
+    private double maxError;
+
+    ProbabilityTable(String name, RealMatrix parameters, double[] minimum, double[] maximum, int[] points, float[][] values, double maxError) {
+        this.name = name;
+        this.parameters = parameters;
+        this.minimum = minimum.clone();
+        this.points = points.clone();
+        this.inverseStep = new double[points.length];
+        for (int axis = 0; axis < points.length; axis++) {
+            this.inverseStep[axis] = (points[axis] - 1) / (maximum[axis] - minimum[axis]);
+        }
+        this.values = values;
+        this.maxError = maxError;
+    }
+
+    /**
+     * Returns the index of a combination of states in the table
+     * @param userType	                The user type
+     * @param transitionState	        Markov transitions for occupancy status
+     * @param transitionSystemState	    Markov transitions for controllable system status
+     * @return	The combination index
+     */
+    static int combinationIndex(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                                TransitionSystemState.TRANSITION_STATES transitionSystemState) {
+        return (transitionSystemState.ordinal() * OCCUPANT_STATES + transitionState.ordinal()) * USER_TYPES + userType.ordinal();
+    }
+
+    /**
+     * Returns the number of action drives the table is defined over
+     * @return	1 or 2
+     */
+    public int getDriveCount() {
+        return this.points.length;
+    }
+
+    /**
+     * Returns the largest absolute difference between the table and the source model found during verification
+     * @return	The verified maximum interpolation error
+     */
+    public double getMaxError() {
+        return this.maxError;
+    }
+
+    void setMaxError(double maxError) {
+        this.maxError = maxError;
+    }
+
+    @Override
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Tables are compiled from fixed parameters and cannot be re-parameterised: setting the parameters the table was compiled
+     * from has no effect, and any other parameters are rejected; compile a new table from the re-parameterised model instead
+     * @param parameters	The parameters of the User Model
+     * @throws IllegalStateException	If the parameters differ from those the table was compiled from
+     */
+    @Override
+    public void setParameters(RealMatrix parameters) {
+        if (!this.parameters.equals(parameters)) {
+            throw new IllegalStateException("The probability table " + this.name + " is compiled from fixed parameters; "
+                    + "set the parameters on the source model and recompile the table with ProbabilityTableCompiler");
+        }
+    }
+
+    /**
+     * Returns a copy of the parameters of the model the table was compiled from
+     * @return	The parameters of the source model
+     */
+    @Override
+    public RealMatrix getParameters() {
+        return this.parameters.copy();
+    }
+
+    @Override
+    public double calculateActionProbability(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                                             TransitionSystemState.TRANSITION_STATES transitionSystemState, RealMatrix actionDrives) {
+        int combination = combinationIndex(userType, transitionState, transitionSystemState);
+        if (this.values[combination] == null) {
+            return 0;
+        }
+        if (this.points.length == 1) {
+            return this.interpolate(combination, actionDrives.getEntry(0, 0), 0);
+        }
+        return this.interpolate(combination, actionDrives.getEntry(0, 0), actionDrives.getEntry(1, 0));
+    }
+
+    @Override
+    public double predictAction(UserType.USER_TYPES userType, TransitionOccupantState.TRANSITION_STATES transitionState,
+                                TransitionSystemState.TRANSITION_STATES transitionSystemState, RealMatrix actionDrives) {
+        double actionProbability = this.calculateActionProbability(userType, transitionState, transitionSystemState, actionDrives);
+        double randomDraw = Math.random();
+        double action = 0;
+        if(randomDraw <= actionProbability){
+            action = 1;
+        }
+        return action;
+    }
+
+    double interpolate(int combination, double drive0, double drive1) {
+        float[] table = this.values[combination];
+        if (table == null) {
+            return 0;
+        }
+        int points0 = this.points[0];
+        double u0 = clamp((drive0 - this.minimum[0]) * this.inverseStep[0], points0 - 1);
+        int i0 = Math.min((int) u0, points0 - 2);
+        double f0 = u0 - i0;
+        if (this.points.length == 1) {
+            return table[i0] + f0 * (table[i0 + 1] - table[i0]);
+        }
+        int points1 = this.points[1];
+        double u1 = clamp((drive1 - this.minimum[1]) * this.inverseStep[1], points1 - 1);
+        int i1 = Math.min((int) u1, points1 - 2);
+        double f1 = u1 - i1;
+        int base = i0 * points1 + i1;
+        double lower = table[base] + f1 * (table[base + 1] - table[base]);
+        double upper = table[base + points1] + f1 * (table[base + points1 + 1] - table[base + points1]);
+        return lower + f0 * (upper - lower);
+    }
+
+    private static double clamp(double position, int last) {
+        if (position <= 0) {
+            return 0;
+        }
+        return position >= last ? last : position;
+    }
+
+    /**
+     * Writes the table in a compact binary form (grid values are stored as 32-bit floats, combinations the model does not
+     * cover are omitted)
+     * @param outputStream	The stream to write to; it is not closed
+     * @throws IOException	If writing fails
+     */
+    public void write(OutputStream outputStream) throws IOException {
+        IoChunkEvent event = new IoChunkEvent();
+        event.begin();
+        DataOutputStream out = new DataOutputStream(outputStream);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeUTF(this.name);
+        out.writeDouble(this.maxError);
+        out.writeByte(this.points.length);
+        for (int axis = 0; axis < this.points.length; axis++) {
+            out.writeDouble(this.minimum[axis]);
+            out.writeDouble(this.minimum[axis] + (this.points[axis] - 1) / this.inverseStep[axis]);
+            out.writeInt(this.points[axis]);
+        }
+        out.writeInt(this.parameters.getRowDimension());
+        out.writeInt(this.parameters.getColumnDimension());
+        for (int row = 0; row < this.parameters.getRowDimension(); row++) {
+            for (int column = 0; column < this.parameters.getColumnDimension(); column++) {
+                out.writeDouble(this.parameters.getEntry(row, column));
+            }
+        }
+        long present = 0;
+        for (int combination = 0; combination < COMBINATIONS; combination++) {
+            if (this.values[combination] != null) {
+                present |= 1L << combination;
+            }
+        }
+        out.writeLong(present);
+        for (float[] table : this.values) {
+            if (table != null) {
+                for (float value : table) {
+                    out.writeFloat(value);
+                }
+            }
+        }
+        out.flush();
+        if (event.shouldCommit()) {
+            event.resource = "ProbabilityTable";
+            event.operation = "write";
+            event.bytes = out.size();
+            event.commit();
+        }
+    }
+
+    /**
+     * Reads a table written by {@link #write(OutputStream)}
+     * @param inputStream	The stream to read from; it is not closed
+     * @return	The table
+     * @throws IOException	If reading fails or the stream does not contain a probability table
+     */
+    public static ProbabilityTable read(InputStream inputStream) throws IOException {
+        IoChunkEvent event = new IoChunkEvent();
+        event.begin();
+        DataInputStream in = new DataInputStream(inputStream);
+        if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+            throw new IOException("Not a probability table");
+        }
+        String name = in.readUTF();
+        double maxError = in.readDouble();
+        int axes = in.readByte();
+        double[] minimum = new double[axes];
+        double[] maximum = new double[axes];
+        int[] points = new int[axes];
+        int size = 1;
+        for (int axis = 0; axis < axes; axis++) {
+            minimum[axis] = in.readDouble();
+            maximum[axis] = in.readDouble();
+            points[axis] = in.readInt();
+            size *= points[axis];
+        }
+        double[][] parameters = new double[in.readInt()][in.readInt()];
+        for (double[] row : parameters) {
+            for (int column = 0; column < row.length; column++) {
+                row[column] = in.readDouble();
+            }
+        }
+        long present = in.readLong();
+        float[][] values = new float[COMBINATIONS][];
+        for (int combination = 0; combination < COMBINATIONS; combination++) {
+            if ((present & (1L << combination)) != 0) {
+                values[combination] = new float[size];
+                for (int i = 0; i < size; i++) {
+                    values[combination][i] = in.readFloat();
+                }
+            }
+        }
+        if (event.shouldCommit()) {
+            event.resource = "ProbabilityTable";
+            event.operation = "read";
+            event.bytes = 32 + name.getBytes(StandardCharsets.UTF_8).length + 20L * axes + 8L * parameters.length * (parameters.length == 0 ? 0 : parameters[0].length)
+                    + 4L * size * Long.bitCount(present);
+            event.commit();
+        }
+        return new ProbabilityTable(name, new Array2DRowRealMatrix(parameters, false), minimum, maximum, points, values, maxError);
+    }
+}
@@ -0,0 +1,169 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.tables;
+
+import eu.moeebius.usermodelling.interfaces.TransitionOccupantState;
+import eu.moeebius.usermodelling.interfaces.TransitionSystemState;
+import eu.moeebius.usermodelling.interfaces.UserModel;
+import eu.moeebius.usermodelling.interfaces.UserType;
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+
+/**
+ * Compiles a User Model with one or two continuous action drives (e.g. HaldiRobinson2008IndoorTemp,
+ * RijalEtAl2008GlobeOutdoorTemp or YunTuohySteemers2009IndoorTemp) into a {@link ProbabilityTable}. The model is sampled on a
+ * regular grid over the configured temperature domain for every combination of states, and the interpolated table is then
+ * compared against the model at several points inside every grid cell. Compilation fails if the verified error exceeds the
+ * tolerance, which typically means the grid is too coarse or the domain crosses a threshold of the model (e.g. the 30 degC
+ * limit of the window closing models).
+ * @author Georgios D. Kontes
+ */
+public class ProbabilityTableCompiler {
+
+    private final double[] minimum;
+    private final double[] maximum;
+    private final int[] points;
+    private final double tolerance;
+    private int verificationSamples = 4;
+
+    /**
+     * Configures the compiler for models with a single action drive
+     * @param minimum	    Lower end of the drive domain
+     * @param maximum	    Upper end of the drive domain
+     * @param points	    Number of grid points (at least 2)
+     * @param tolerance	    Maximum accepted absolute interpolation error
+     */
+    public ProbabilityTableCompiler(double minimum, double maximum, int points, double tolerance) {
+        this(new double[] {minimum}, new double[] {maximum}, new int[] {points}, tolerance);
+    }
+
+    /**
+     * Configures the compiler for models with two action drives
+     * @param minimum0	    Lower end of the domain of the first drive
+     * @param maximum0	    Upper end of the domain of the first drive
+     * @param points0	    Number of grid points for the first drive (at least 2)
+     * @param minimum1	    Lower end of the domain of the second drive
+     * @param maximum1	    Upper end of the domain of the second drive
+     * @param points1	    Number of grid points for the second drive (at least 2)
+     * @param tolerance	    Maximum accepted absolute interpolation error
+     */
+    public ProbabilityTableCompiler(double minimum0, double maximum0, int points0, double minimum1, double maximum1, int points1, double tolerance) {
+        this(new double[] {minimum0, minimum1}, new double[] {maximum0, maximum1}, new int[] {points0, points1}, tolerance);
+    }
+
+    private ProbabilityTableCompiler(double[] minimum, double[] maximum, int[] points, double tolerance) {
+        for (int axis = 0; axis < points.length; axis++) {
+            if (points[axis] < 2 || !(maximum[axis] > minimum[axis])) {
+                throw new IllegalArgumentException("Each drive domain needs a positive width and at least 2 grid points");
+            }
+        }
+        this.minimum = minimum;
+        this.maximum = maximum;
+        this.points = points;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Sets the number of verification points per grid cell and drive (default 4)
+     * @param verificationSamples	The number of verification points
+     */
+    public void setVerificationSamples(int verificationSamples) {
+        this.verificationSamples = verificationSamples;
+    }
+
+    /**
+     * Samples the model and builds its lookup table
+     * @param model	    The User Model to compile
+     * @return	The verified lookup table
+     * @throws IllegalStateException	If the interpolation error exceeds the tolerance for some combination of states
+     */
+    public ProbabilityTable compile(UserModel model) {
+        Array2DRowRealMatrix drives = new Array2DRowRealMatrix(this.points.length, 1);
+        double[][] driveData = drives.getDataRef();
+        int size = this.points.length == 1 ? this.points[0] : this.points[0] * this.points[1];
+        float[][] values = new float[ProbabilityTable.COMBINATIONS][];
+        for (TransitionSystemState.TRANSITION_STATES systemState : TransitionSystemState.TRANSITION_STATES.values()) {
+            for (TransitionOccupantState.TRANSITION_STATES occupantState : TransitionOccupantState.TRANSITION_STATES.values()) {
+                for (UserType.USER_TYPES userType : UserType.USER_TYPES.values()) {
+                    float[] table = new float[size];
+                    boolean covered = false;
+                    for (int i = 0; i < size; i++) {
+                        this.setNode(driveData, i);
+                        table[i] = (float) model.calculateActionProbability(userType, occupantState, systemState, drives);
+                        covered |= table[i] != 0;
+                    }
+                    if (covered) {
+                        values[ProbabilityTable.combinationIndex(userType, occupantState, systemState)] = table;
+                    }
+                }
+            }
+        }
+        ProbabilityTable probabilityTable = new ProbabilityTable(model.getName(), model.getParameters().copy(), this.minimum, this.maximum,
+                this.points, values, Double.NaN);
+        probabilityTable.setMaxError(this.verify(model, probabilityTable, drives));
+        return probabilityTable;
+    }
+
+    private void setNode(double[][] driveData, int node) {
+        if (this.points.length == 1) {
+            driveData[0][0] = this.position(0, node);
+        } else {
+            driveData[0][0] = this.position(0, node / this.points[1]);
+            driveData[1][0] = this.position(1, node % this.points[1]);
+        }
+    }
+
+    private double position(int axis, double gridIndex) {
+        return this.minimum[axis] + gridIndex * (this.maximum[axis] - this.minimum[axis]) / (this.points[axis] - 1);
+    }
+
+    private double verify(UserModel model, ProbabilityTable probabilityTable, Array2DRowRealMatrix drives) {
+        double[][] driveData = drives.getDataRef();
+        int cells0 = this.points[0] - 1;
+        int cells1 = this.points.length == 1 ? 1 : this.points[1] - 1;
+        int samples1 = this.points.length == 1 ? 1 : this.verificationSamples;
+        double maxError = 0;
+        for (TransitionSystemState.TRANSITION_STATES systemState : TransitionSystemState.TRANSITION_STATES.values()) {
+            for (TransitionOccupantState.TRANSITION_STATES occupantState : TransitionOccupantState.TRANSITION_STATES.values()) {
+                for (UserType.USER_TYPES userType : UserType.USER_TYPES.values()) {
+                    int combination = ProbabilityTable.combinationIndex(userType, occupantState, systemState);
+                    for (int k0 = 0; k0 < cells0 * this.verificationSamples; k0++) {
+                        driveData[0][0] = this.position(0, (k0 + 0.5) / this.verificationSamples);
+                        for (int k1 = 0; k1 < cells1 * samples1; k1++) {
+                            if (this.points.length > 1) {
+                                driveData[1][0] = this.position(1, (k1 + 0.5) / samples1);
+                            }
+                            double expected = model.calculateActionProbability(userType, occupantState, systemState, drives);
+                            double error = Math.abs(expected - probabilityTable.interpolate(combination, driveData[0][0],
+                                    this.points.length > 1 ? driveData[1][0] : 0));
+                            if (!(error <= this.tolerance)) {
+                                throw new IllegalStateException("Interpolation error " + error + " of " + model.getName() + " exceeds the tolerance for "
+                                        + systemState + "/" + occupantState + "/" + userType + " at drives " + driveData[0][0]
+                                        + (this.points.length > 1 ? ", " + driveData[1][0] : ""));
+                            }
+                            maxError = Math.max(maxError, error);
+                        }
+                    }
+                }
+            }
+        }
+        return maxError;
+    }
+}
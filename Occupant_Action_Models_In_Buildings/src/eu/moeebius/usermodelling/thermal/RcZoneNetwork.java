@@ -0,0 +1,160 @@
+/******************************************************************************
+ * This project has received funding from the European Union's Horizon 2020 
+ * research and innovation programme under grant agreement No 680517 (MOEEBIUS)
+ *
+ * Copyright 2016 Technische Hochschule Nuernberg Georg Simon Ohm. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or  implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *****************************************************************************/
+
+
+package eu.moeebius.usermodelling.thermal;
+
+import eu.moeebius.usermodelling.population.SystemStateBits;
+
+import java.util.Arrays;
+
+/**
+ * Lumped first-order (1R1C) thermal model of many zones, held in struct-of-arrays form. Each zone has a heat capacity C, an
+ * envelope conductance UA towards the outdoor air, an additional ventilation conductance that applies while its window is
+ * open, and constant heat gains Q. Over a time-step with constant outdoor temperature the zone temperature relaxes
+ * exponentially towards its equilibrium Tout + Q / G, with G = UA (+ ventilation conductance if the window is open); this
+ * is integrated exactly, so the step size is not limited by stability.
+ * @author Georgios D. Kontes
+ */
+public class RcZoneNetwork {
+
+    private final int zones;
+    private final double[] temperature;
+    private final double[] capacitance;
+    private final double[] conductance;
+    private final double[] ventilationConductance;
+    private final double[] heatGains;
+
+    /**
+     * Creates a network of identical zones
+     * @param zones	                    The number of zones
+     * @param initialTemperature	    The initial zone air temperature (degC)
+     * @param capacitance	            The heat capacity of a zone (J/K)
+     * @param conductance	            The envelope conductance of a zone (W/K)
+     * @param ventilationConductance	The additional conductance of a zone while its window is open (W/K)
+     * @param heatGains	                The internal and solar heat gains of a zone (W)
+     * @throws IllegalArgumentException	If the capacitance or conductance is not positive, or the ventilation conductance is negative
+     */
+    public RcZoneNetwork(int zones, double initialTemperature, double capacitance, double conductance, double ventilationConductance, double heatGains) {
+        checkZone(capacitance, conductance, ventilationConductance);
+        this.zones = zones;
+        this.temperature = filled(zones, initialTemperature);
+        this.capacitance = filled(zones, capacitance);
+        this.conductance = filled(zones, conductance);
+        this.ventilationConductance = filled(zones, ventilationConductance);
+        this.heatGains = filled(zones, heatGains);
+    }
+
+    /**
+     * Sets the properties of one zone
+     * @param zone	                    The zone index
+     * @param temperature	            The zone air temperature (degC)
+     * @param capacitance	            The heat capacity of the zone (J/K)
+     * @param conductance	            The envelope conductance of the zone (W/K)
+     * @param ventilationConductance	The additional conductance of the zone while its window is open (W/K)
+     * @param heatGains	                The internal and solar heat gains of the zone (W)
+     * @throws IllegalArgumentException	If the capacitance or conductance is not positive, or the ventilation conductance is negative
+     */
+    public void setZone(int zone, double temperature, double capacitance, double conductance, double ventilationConductance, double heatGains) {
+        checkZone(capacitance, conductance, ventilationConductance);
+        this.temperature[zone] = temperature;
+        this.capacitance[zone] = capacitance;
+        this.conductance[zone] = conductance;
+        this.ventilationConductance[zone] = ventilationConductance;
+        this.heatGains[zone] = heatGains;
+    }
+
+    /**
+     * Sets the heat gains of one zone, e.g. from an occupancy or solar schedule
+     * @param zone	        The zone index
+     * @param heatGains	    The internal and solar heat gains of the zone (W)
+     */
+    public void setHeatGains(int zone, double heatGains) {
+        this.heatGains[zone] = heatGains;
+    }
+
+    /**
+     * Returns the number of zones
+     * @return	The number of zones
+     */
+    public int getZones() {
+        return this.zones;
+    }
+
+    /**
+     * Returns the air temperature of a zone
+     * @param zone	The zone index
+     * @return	The zone air temperature (degC)
+     */
+    public double getTemperature(int zone) {
+        return this.temperature[zone];
+    }
+
+    /**
+     * Sets the air temperature of a zone
+     * @param zone	        The zone index
+     * @param temperature	The zone air temperature (degC)
+     */
+    public void setTemperature(int zone, double temperature) {
+        this.temperature[zone] = temperature;
+    }
+
+    /**
+     * Returns the air temperatures of all zones. The array is the live state of the network.
+     * @return	The zone air temperatures (degC), indexed by zone
+     */
+    public double[] getTemperatures() {
+        return this.temperature;
+    }
+
+    /**
+     * Integrates a range of zones over one time-step
+     * @param timeStep	            The time-step (s)
+     * @param outdoorTemperature	The outdoor air temperature during the step (degC)
+     * @param windows	            The window state of the zones (zone index = room index)
+     * @param from	                The first zone (inclusive)
+     * @param to	                The last zone (exclusive)
+     */
+    public void step(double timeStep, double outdoorTemperature, SystemStateBits windows, int from, int to) {
+        for (int zone = from; zone < to; zone++) {
+            double totalConductance = this.conductance[zone];
+            if (windows.isOpen(zone)) {
+                totalConductance += this.ventilationConductance[zone];
+            }
+            double equilibrium = outdoorTemperature + this.heatGains[zone] / totalConductance;
+            double decay = Math.exp(-totalConductance * timeStep / this.capacitance[zone]);
+            this.temperature[zone] = equilibrium + (this.temperature[zone] - equilibrium) * decay;
+        }
+    }
+
+    private static void checkZone(double capacitance, double conductance, double ventilationConductance) {
+        if (!(capacitance > 0) || !(conductance > 0)) {
+            throw new IllegalArgumentException("Heat capacity and envelope conductance must be positive");
+        }
+        if (!(ventilationConductance >= 0)) {
+            throw new IllegalArgumentException("Ventilation conductance must not be negative");
+        }
+    }
+
+    private static double[] filled(int length, double value) {
+        double[] values = new double[length];
+        Arrays.fill(values, value);
+        return values;
+    }
+}